@@ -0,0 +1,54 @@
+package pol;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * General description_________________________________________________________
+ * Agents to whom something happened (e.g., defecated or changed disease
+ * status) in the current step, pushed by the agents themselves so that log
+ * channels read the events instead of scanning the whole population. Events of
+ * a previous step are dropped when the first event of a new step arrives.
+ */
+public class AgentEvents implements java.io.Serializable {
+	private static final long serialVersionUID = -2519934446519958001L;
+
+	private List<Person> agents;
+	private long step;
+
+	public AgentEvents() {
+		this.agents = new ArrayList<Person>();
+		this.step = -1;
+	}
+
+	public void add(Person agent, long step) {
+		if (this.step != step) {
+			agents = new ArrayList<Person>();
+			this.step = step;
+		}
+		agents.add(agent);
+	}
+
+	/**
+	 * @param step
+	 *             only the latest step is kept
+	 * @return agents with an event at the given step in the order of agent
+	 *         ids, each once
+	 */
+	public List<Person> get(long step) {
+		List<Person> result = new ArrayList<Person>();
+		if (this.step != step) {
+			return result;
+		}
+		agents.sort(Comparator.comparingLong(Person::getAgentId));
+		Person previous = null;
+		for (Person agent : agents) {
+			if (agent != previous) {
+				result.add(agent);
+			}
+			previous = agent;
+		}
+		return result;
+	}
+}
@@ -1,8 +1,5 @@
 package pol;
 
-import org.joda.time.LocalDateTime;
-import org.joda.time.Minutes;
-
 import pol.environment.AgentMobility;
 import pol.log.Characteristics;
 import pol.log.ExtLogger;
@@ -41,7 +38,10 @@ public class DefecationNeed implements Need, java.io.Serializable {
 	@Characteristics
 	private double defecationRate;
 	@Skip
-	private LocalDateTime lastTimeDefecated;
+	private long lastDefecatedStep;
+	// the first step at which the pressure builds after the last defecation
+	@Skip
+	private long buildingPressureStep;
 	@Skip
 	private Person agent;
 	private final static ExtLogger logger = ExtLogger.create(DefecationNeed.class);
@@ -77,7 +77,6 @@ public class DefecationNeed implements Need, java.io.Serializable {
 	 */
 	@Override
 	public void update() {
-		int minuteDiff = Minutes.minutesBetween(lastTimeDefecated, agent.getSimulationTime()).getMinutes();
 		switch (this.status) {
 			case JustDefecated:
 				this.status = DefecationStatus.NoNeedToDefecate;
@@ -85,7 +84,8 @@ public class DefecationNeed implements Need, java.io.Serializable {
 
 				break;
 			case NoNeedToDefecate:
-				if (minuteDiff >= (noNeedToDefecateReachTimeInMinutes + keepingNoNeedToDefecateTimeInMinutes)) {
+				// nothing changes until the pressure builds
+				if (agent.getModel().schedule.getSteps() >= buildingPressureStep) {
 					this.status = DefecationStatus.BuildingPressure;
 				}
 				break;
@@ -107,6 +107,81 @@ public class DefecationNeed implements Need, java.io.Serializable {
 		}
 	}
 
+	/**
+	 * @return the step at which the status changes as time passes. Changes
+	 *         caused by the fullness are checked by
+	 *         {@link #canUpdateFullnessOnly()}.
+	 */
+	long getNextUpdateStep() {
+		switch (this.status) {
+			case JustDefecated:
+				return agent.getStepAfterMinutes(0);
+			case NoNeedToDefecate:
+				return Math.max(buildingPressureStep, agent.getStepAfterMinutes(0));
+			default:
+				return Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * @return true if the next {@link #update()} changes the fullness only,
+	 *         given that the status does not change as time passes
+	 */
+	boolean canUpdateFullnessOnly() {
+		switch (this.status) {
+			case JustDefecated:
+				return false;
+			case BuildingPressure:
+				return getNextFullness() > needToDefecateThreshold;
+			case NeedToDefecate:
+				return getNextFullness() > urgentNeedToDefecateThreshold;
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * @return the number of next steps, up to the given one, in which
+	 *         {@link #canUpdateFullnessOnly()} stays true
+	 */
+	long countFullnessOnlyUpdates(long maxSteps) {
+		switch (this.status) {
+			case JustDefecated:
+				return 0;
+			case BuildingPressure:
+			case NeedToDefecate:
+				break;
+			default:
+				return maxSteps;
+		}
+		double current = this.noNeedToDefecate;
+		long count = 0;
+		while (count < maxSteps && canUpdateFullnessOnly() == true) {
+			updateFullness();
+			count++;
+		}
+		this.noNeedToDefecate = current;
+		return count;
+	}
+
+	/**
+	 * Same as {@link #update()} when {@link #canUpdateFullnessOnly()} is true.
+	 */
+	void updateFullness() {
+		this.noNeedToDefecate = getNextFullness();
+	}
+
+	private double getNextFullness() {
+		switch (this.status) {
+			case BuildingPressure:
+				return noNeedToDefecate - noNeedToDefecateDecreasePerStep;
+			case NeedToDefecate:
+				return Math.max(noNeedToDefecate - noNeedToDefecateDecreasePerStep, urgentNeedToDefecateThreshold);
+			default:
+				return noNeedToDefecate;
+		}
+	}
+
 	@Override
 	public void satisfy() {
 		PersonMode currentMode = agent.getCurrentMode();
@@ -133,17 +208,41 @@ public class DefecationNeed implements Need, java.io.Serializable {
 	}
 
 	public void defecated() {
-		lastTimeDefecated = agent.getSimulationTime();
+		agent.stopIdling();
+		lastDefecatedStep = agent.getModel().schedule.getSteps();
+		updateBuildingPressureStep();
 		this.status = DefecationStatus.JustDefecated;
 		noNeedToDefecateIncreasePerStep = (MAX_EMPTINESS - noNeedToDefecate)
 				/ (noNeedToDefecateReachTimeInMinutes / (double) this.agent.getModel()
 						.getMinutePerStep());
 		numberOfDefecationDone++;
+		agent.getModel().agentDefecated(agent);
+	}
+
+	/**
+	 * Finds the first step at which the minutes since the last defecation
+	 * reach the time of no need to defecate.
+	 */
+	private void updateBuildingPressureStep() {
+		double minutes = noNeedToDefecateReachTimeInMinutes + keepingNoNeedToDefecateTimeInMinutes;
+		int minutePerStep = agent.getModel().getMinutePerStep();
+		if (minutePerStep <= 0) {
+			buildingPressureStep = lastDefecatedStep;
+			return;
+		}
+		long steps = (long) Math.ceil(minutes / minutePerStep);
+		// the division may be rounded, the minutes decide
+		while (steps > 0 && (steps - 1) * minutePerStep >= minutes) {
+			steps--;
+		}
+		while (steps * minutePerStep < minutes) {
+			steps++;
+		}
+		buildingPressureStep = lastDefecatedStep + steps;
 	}
 
 	public void kill() {
 		this.agent = null;
-		this.lastTimeDefecated = null;
 	}
 
 	public double getFullness() {
@@ -156,6 +255,7 @@ public class DefecationNeed implements Need, java.io.Serializable {
 	 * @param defecationRate
 	 */
 	public void setDefecationRate(double defecationRate) {
+		agent.stopIdling();
 		this.defecationRate = defecationRate;
 		if (defecationRate > agent.getModel().params.defecationRateUpperBound
 				|| defecationRate < agent.getModel().params.defecationRateLowerBound) {
@@ -170,6 +270,7 @@ public class DefecationNeed implements Need, java.io.Serializable {
 				* defecationRate * 0.65;
 		needToDefecateThreshold = 30 + 20 * defecationRate;
 		urgentNeedToDefecateThreshold = 0;
+		updateBuildingPressureStep();
 	}
 
 	public double getDefecationRate() {
@@ -0,0 +1,199 @@
+package pol;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.ThreadContext;
+
+import pol.environment.SpatialNetwork;
+import pol.log.AsyncLogChannels;
+import pol.log.ReservedLogChannels;
+import pol.utils.Manipulation;
+import pol.utils.ManipulationLoader;
+
+/**
+ * General description_________________________________________________________
+ * Runs many models in one JVM, one for each combination of the given
+ * infection ratios, seeds and manipulation files, e.g. for infection ratio
+ * sweeps. The maps are loaded once and shared by the models (see
+ * SpatialNetwork(SpatialNetwork)), except for models whose manipulation file
+ * changes roads, which load their own. Each model is stepped by one thread and
+ * models run concurrently on the given number of threads.
+ *
+ * Log files of each model are written to its own directory under the output
+ * directory (e.g. output/ir_0.1_seed_1/logs/), and the parameters of the model
+ * are stored there as parameters.properties. The log configuration is chosen
+ * when logging starts, so the runner must be the main class:
+ *
+ * java -Dlog4j2.configurationFactory=pol.log.CustomConfigurationFactory
+ * -Dsimulation.test=c03 -cp pol.jar pol.EnsembleRunner -configuration
+ * modified.properties -until 100 -infectionRatios 0.1,0.2,0.3 -seeds 1,2
+ * -manipulations manipulations.json -threads 4 -output results
+ *
+ * Parameters that are not given are taken from the configuration.
+ */
+public class EnsembleRunner {
+	private static final String DEFAULT_OUTPUT_DIRECTORY = "ensemble";
+	private static final String PARAMETERS_FILE_NAME = "parameters.properties";
+
+	private final String configurationPath;
+	private final double until;
+	private final String outputDirectory;
+
+	public EnsembleRunner(String configurationPath, double until, String outputDirectory) {
+		this.configurationPath = configurationPath;
+		this.until = until;
+		this.outputDirectory = outputDirectory;
+	}
+
+	public static void main(String[] args) throws Exception {
+		// set before any logger is created
+		System.setProperty(ReservedLogChannels.LOG_ROUTING_PROPERTY_NAME, "true");
+
+		String configurationPath = WorldModel.argumentForKey("-configuration", args);
+		String until = WorldModel.argumentForKey("-until", args);
+		String infectionRatios = WorldModel.argumentForKey("-infectionRatios", args);
+		String seeds = WorldModel.argumentForKey("-seeds", args);
+		String manipulations = WorldModel.argumentForKey("-manipulations", args);
+		String threads = WorldModel.argumentForKey("-threads", args);
+		String output = WorldModel.argumentForKey("-output", args);
+
+		WorldParameters params = createParameters(configurationPath);
+		List<Double> ratioList = new ArrayList<Double>();
+		if (infectionRatios != null) {
+			for (String value : infectionRatios.split(",")) {
+				ratioList.add(Double.parseDouble(value.trim()));
+			}
+		} else {
+			ratioList.add(params.infectionRatio);
+		}
+		List<Long> seedList = new ArrayList<Long>();
+		if (seeds != null) {
+			for (String value : seeds.split(",")) {
+				seedList.add(Long.parseLong(value.trim()));
+			}
+		} else {
+			seedList.add(params.seed);
+		}
+		List<String> manipulationList = new ArrayList<String>();
+		if (manipulations != null) {
+			for (String value : manipulations.split(",")) {
+				manipulationList.add(value.trim());
+			}
+		} else {
+			manipulationList.add(params.initialManipulationFilePath);
+		}
+
+		EnsembleRunner runner = new EnsembleRunner(configurationPath,
+				until != null ? Double.parseDouble(until) : Double.POSITIVE_INFINITY,
+				output != null ? output : DEFAULT_OUTPUT_DIRECTORY);
+		runner.run(ratioList, seedList, manipulationList,
+				threads != null ? Integer.parseInt(threads) : Runtime.getRuntime().availableProcessors());
+		System.exit(0);
+	}
+
+	/**
+	 * Runs a model for each combination of the given values and waits until
+	 * all of them finish.
+	 *
+	 * @return the number of models that failed
+	 */
+	public int run(List<Double> infectionRatios, List<Long> seeds, List<String> manipulationFilePaths,
+			int numOfThreads) throws Exception {
+		final SpatialNetwork network = WorldModel.loadSpatialNetwork(createParameters(configurationPath));
+
+		ExecutorService executor = Executors.newFixedThreadPool(numOfThreads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (String manipulationFilePath : manipulationFilePaths) {
+			final boolean sharesNetwork = manipulatesRoads(manipulationFilePath) == false;
+			for (double infectionRatio : infectionRatios) {
+				for (long seed : seeds) {
+					final WorldParameters params = createParameters(configurationPath);
+					params.infectionRatio = infectionRatio;
+					params.seed = seed;
+					params.initialManipulationFilePath = manipulationFilePath;
+					// the ensemble is parallelized over models instead
+					params.numOfStepThreads = 1;
+					String name = "ir_" + infectionRatio + "_seed_" + seed;
+					if (manipulationFilePaths.size() > 1) {
+						name += "_" + new File(manipulationFilePath).getName().replaceFirst("\\.[^.]*$", "");
+					}
+					final String runDirectory = new File(outputDirectory, name).getPath();
+					futures.add(executor.submit(new Runnable() {
+						@Override
+						public void run() {
+							runModel(params, sharesNetwork ? network : null, runDirectory);
+						}
+					}));
+				}
+			}
+		}
+		executor.shutdown();
+
+		int numOfFailures = 0;
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (Exception e) {
+				e.printStackTrace();
+				numOfFailures++;
+			}
+		}
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		// models do not flush the log queues they share with the others
+		if (AsyncLogChannels.flush() == false) {
+			System.err.println("Log files may be incomplete since queued lines are not written.");
+		}
+		System.out.println("Ensemble finished: " + (futures.size() - numOfFailures) + " of " + futures.size()
+				+ " runs succeeded.");
+		return numOfFailures;
+	}
+
+	private void runModel(WorldParameters params, SpatialNetwork network, String runDirectory) {
+		File directory = new File(runDirectory);
+		directory.mkdirs();
+		ThreadContext.put(ReservedLogChannels.LOG_RUN_DIRECTORY_KEY, directory.getPath());
+		try {
+			params.store(new File(directory, PARAMETERS_FILE_NAME).getPath());
+			System.out.println("Run started: " + runDirectory);
+			WorldModel model = new WorldModel(params.seed, params, network);
+			model.start();
+			while (model.schedule.step(model)) {
+				if (model.schedule.getTime() >= until) {
+					break;
+				}
+			}
+			model.finish();
+			System.out.println("Run finished: " + runDirectory);
+		} catch (Exception e) {
+			throw new RuntimeException("Exception occurred while running the simulation in " + runDirectory, e);
+		} finally {
+			ThreadContext.remove(ReservedLogChannels.LOG_RUN_DIRECTORY_KEY);
+		}
+	}
+
+	private static WorldParameters createParameters(String configurationPath) throws Exception {
+		if (configurationPath != null) {
+			return new WorldParameters(configurationPath);
+		}
+		return new WorldParameters();
+	}
+
+	private static boolean manipulatesRoads(String manipulationFilePath) {
+		List<Manipulation> manipulations = ManipulationLoader.loadFromConfig(manipulationFilePath);
+		if (manipulations == null) {
+			return false;
+		}
+		for (Manipulation manipulation : manipulations) {
+			if (Manipulation.ROAD.equalsIgnoreCase(manipulation.getActor())) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
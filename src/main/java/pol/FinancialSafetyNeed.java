@@ -218,7 +218,7 @@ public class FinancialSafetyNeed implements Need, java.io.Serializable {
 						.instructionTypeExists(new ChangeApartmentInstruction(false));
 
 				if (changeJobInstructed == false && changeApartmentInstructed == false) {
-					boolean coin = agent.getModel().random.nextBoolean();
+					boolean coin = agent.getRandom().nextBoolean();
 
 					if (coin == true) { // option 1.
 
@@ -409,6 +409,7 @@ public class FinancialSafetyNeed implements Need, java.io.Serializable {
 
 		// make job assignments
 		job.assignWorker(agent);
+		agent.getModel().updateJobAvailability(job);
 
 		setJob(job);
 		// logging
@@ -425,6 +426,7 @@ public class FinancialSafetyNeed implements Need, java.io.Serializable {
 		agent.getModel().getVisualWorkGraph().addNode(agent.getAgentId() + "");
 
 		this.job.releaseWorker();
+		agent.getModel().updateJobAvailability(this.job);
 		setJob(null);
 	}
 
@@ -605,31 +607,10 @@ public class FinancialSafetyNeed implements Need, java.io.Serializable {
 
 		List<Job> allAvailableJobs = null;
 
-		// a stream to get all available jobs
-		List<Job> jobs = agent.getModel().getAvailableUnfilledJobs();
-
-		// eliminate some jobs based on agent's education-level requirement
-		// strategy
-		if (acceptLowerEducation == true) {
-			jobs = jobs
-					.stream()
-					.filter(p -> p.getEducationRequirement().getValue() <= agent
-							.getEducationLevel().getValue())
-					.collect(Collectors.toList());
-		} else {
-			jobs = jobs
-					.stream()
-					.filter(p -> p.getEducationRequirement().getValue() == agent
-							.getEducationLevel().getValue())
-					.collect(Collectors.toList());
-		}
-
-		if (neighborhoodId >= 0) { // this means a neighborhood is specified, so
-									// let's filter jobs on that neighborhood
-			jobs = jobs.stream()
-					.filter(p -> p.getNeighborhoodId() == neighborhoodId)
-					.collect(Collectors.toList());
-		}
+		// available jobs in the neighborhood (if specified) that fit the
+		// agent's education-level requirement strategy
+		List<Job> jobs = agent.getModel().getAvailableUnfilledJobs(
+				neighborhoodId, agent.getEducationLevel(), acceptLowerEducation);
 
 		if (betterPayingJobs == true) { // get the job pays better than now
 			jobs = jobs
@@ -640,7 +621,7 @@ public class FinancialSafetyNeed implements Need, java.io.Serializable {
 		}
 
 		allAvailableJobs = jobs;
-		CollectionUtil.shuffle(allAvailableJobs, agent.getModel().random);
+		CollectionUtil.shuffle(allAvailableJobs, agent.getRandom());
 
 		switch (criteria) {
 			case FirstAvailable:
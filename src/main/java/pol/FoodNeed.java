@@ -137,6 +137,83 @@ public class FoodNeed implements Need, java.io.Serializable {
 		}
 	}
 
+	/**
+	 * @return the step at which the status changes as time passes. Changes
+	 *         caused by the fullness are checked by
+	 *         {@link #canUpdateFullnessOnly()}.
+	 */
+	long getNextUpdateStep() {
+		int minuteDiff = Minutes.minutesBetween(lastTimeAte,
+				agent.getSimulationTime()).getMinutes();
+		switch (this.status) {
+			case JustAte:
+				// the minute difference becomes greater than the reach time
+				return agent.getStepAfterMinutes((long) Math.floor(fullnessReachTimeInMinutes) + 1 - minuteDiff);
+			case BecameFull:
+				return agent.getStepAfterMinutes(
+						(long) Math.ceil(fullnessReachTimeInMinutes + keepingFullTimeInMinutes) - minuteDiff);
+			default:
+				return Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * @return true if the next {@link #update()} changes the fullness only,
+	 *         given that the status does not change as time passes
+	 */
+	boolean canUpdateFullnessOnly() {
+		switch (this.status) {
+			case BecomingHungry:
+				return getNextFullness() > hungryTreshold;
+			case Hungry:
+				return getNextFullness() > starvingTreshold;
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * @return the number of next steps, up to the given one, in which
+	 *         {@link #canUpdateFullnessOnly()} stays true
+	 */
+	long countFullnessOnlyUpdates(long maxSteps) {
+		switch (this.status) {
+			case BecomingHungry:
+			case Hungry:
+				break;
+			default:
+				return maxSteps;
+		}
+		double current = this.fullness;
+		long count = 0;
+		while (count < maxSteps && canUpdateFullnessOnly() == true) {
+			updateFullness();
+			count++;
+		}
+		this.fullness = current;
+		return count;
+	}
+
+	/**
+	 * Same as {@link #update()} when {@link #canUpdateFullnessOnly()} is true.
+	 */
+	void updateFullness() {
+		this.fullness = getNextFullness();
+	}
+
+	private double getNextFullness() {
+		switch (this.status) {
+			case JustAte:
+				return Math.min(this.fullness + fullnessIncreasePerStep, MAX_FULLNESS);
+			case BecomingHungry:
+				return fullness - fullnessDecreasePerStep;
+			case Hungry:
+				return Math.max(fullness - fullnessDecreasePerStep, starvingTreshold);
+			default:
+				return fullness;
+		}
+	}
+
 	@Override
 	public void satisfy() {
 		PersonMode currentMode = agent.getCurrentMode();
@@ -183,7 +260,7 @@ public class FoodNeed implements Need, java.io.Serializable {
 						&& dailyPlanForToday.hasBeenAtWork() == false;
 
 				if (preConditionToEatHome
-						&& (isWorkdayMorning || model.random.nextBoolean())) {
+						&& (isWorkdayMorning || agent.getRandom().nextBoolean())) {
 					eatAtHome();
 				} else {
 
@@ -300,6 +377,7 @@ public class FoodNeed implements Need, java.io.Serializable {
 	}
 
 	public void justAte() {
+		agent.stopIdling();
 		lastTimeAte = agent.getSimulationTime();
 		this.status = FoodNeedStatus.JustAte;
 		fullnessIncreasePerStep = (MAX_FULLNESS - fullness)
@@ -329,6 +407,7 @@ public class FoodNeed implements Need, java.io.Serializable {
 	 * @param appetite
 	 */
 	public void setAppetite(double appetite) {
+		agent.stopIdling();
 		this.appetite = appetite;
 		if (appetite > agent.getModel().params.appetiteUpperBound
 				|| appetite < agent.getModel().params.appetiteLowerBound) {
@@ -0,0 +1,50 @@
+package pol;
+
+/**
+ * General description_________________________________________________________
+ * The default shedding curve, scale * sheddingRate^2 * t^shape * e^(-rate *
+ * t), where t is the number of days being infectious. The powers and
+ * exponentials of the first days are computed once and the result is the same
+ * as evaluating the formula.
+ */
+
+public class GammaSheddingCurve implements SheddingCurve {
+    private static final long serialVersionUID = -6602311327848212575L;
+    public static final double DEFAULT_SCALE = 10000000;
+    public static final double DEFAULT_SHAPE = 8;
+    public static final double DEFAULT_RATE = 2;
+    private static final int NUM_OF_DAYS_IN_TABLE = 64;
+
+    private final double scale;
+    private final double shape;
+    private final double rate;
+    private final double[] powers;
+    private final double[] exponentials;
+
+    public GammaSheddingCurve() {
+        this(DEFAULT_SCALE, DEFAULT_SHAPE, DEFAULT_RATE);
+    }
+
+    public GammaSheddingCurve(double scale, double shape, double rate) {
+        this.scale = scale;
+        this.shape = shape;
+        this.rate = rate;
+        this.powers = new double[NUM_OF_DAYS_IN_TABLE];
+        this.exponentials = new double[NUM_OF_DAYS_IN_TABLE];
+        for (int day = 0; day < NUM_OF_DAYS_IN_TABLE; day++) {
+            double t = day;
+            powers[day] = Math.pow(t, shape);
+            exponentials[day] = Math.exp(-rate * t);
+        }
+    }
+
+    @Override
+    public double getPathogenLevel(int day, double sheddingRate) {
+        double scale = this.scale * (Math.pow(sheddingRate, 2));
+        if (day >= 0 && day < NUM_OF_DAYS_IN_TABLE) {
+            return (scale * powers[day] * exponentials[day]);
+        }
+        double t = day;
+        return (scale * (Math.pow(t, shape)) * Math.exp(-rate * t));
+    }
+}
@@ -2,6 +2,7 @@ package pol;
 
 import java.util.List;
 
+import pol.environment.BuildingUnit;
 import pol.log.Characteristics;
 import pol.log.Skip;
 import pol.utils.CollectionUtil;
@@ -24,14 +25,18 @@ public class InfectiousDisease extends InfectiousDiseaseAbstract {
     @Characteristics
     private double sheddingRate;
 
+    // the day of infection the pathogen level was computed for, -1 if not yet
+    @Skip
+    private int pathogenLevelDay;
+
     public InfectiousDisease(Person agent) {
         super(agent);
         this.setDiseaseStatus(DiseaseStatus.Susceptible);
-        this.susceptibleStartedTime = agent.getSimulationTime();
+        this.susceptibleStartedStep = getCurrentStep();
 
         this.spreadCounter = 0;
         this.sheddingRate = 0.0;
-
+        this.pathogenLevelDay = -1;
     }
 
     public void resetSpreadCounter() {
@@ -49,23 +54,23 @@ public class InfectiousDisease extends InfectiousDiseaseAbstract {
             case Exposed:
                 if (canBeInfectious()) {
                     this.setDiseaseStatus(DiseaseStatus.Infectious);
-                    this.infectiousStartedTime = agent.getSimulationTime();
+                    this.infectiousStartedStep = getCurrentStep();
                 }
                 break;
             case Infectious:
                 if (canBeRecovered()) {
                     this.setDiseaseStatus(DiseaseStatus.Recovered);
-                    this.recoveredStartedTime = agent.getSimulationTime();
+                    this.recoveredStartedStep = getCurrentStep();
                 }
                 break;
             case Recovered:
                 if (canBeSusceptible()) {
                     resetSpreadCounter();
                     this.setDiseaseStatus(DiseaseStatus.Susceptible);
-                    this.susceptibleStartedTime = agent.getSimulationTime();
-                    this.exposedStartedTime = null;
-                    this.infectiousStartedTime = null;
-                    this.recoveredStartedTime = null;
+                    this.susceptibleStartedStep = getCurrentStep();
+                    this.exposedStartedStep = NOT_STARTED;
+                    this.infectiousStartedStep = NOT_STARTED;
+                    this.recoveredStartedStep = NOT_STARTED;
                 }
                 break;
             case None:
@@ -86,6 +91,9 @@ public class InfectiousDisease extends InfectiousDiseaseAbstract {
     }
 
     public void spreadInfectionToOneAgent(Person anotherAgent) {
+        if (model.getPathogenStore() != null && anotherAgent != null) {
+            model.getPathogenStore().contact(this.agent, anotherAgent, agent.getRandom(), model.schedule.getSteps());
+        }
         if (this.agent.getInfectiousDisease() != null && this.agent.getInfectiousDisease().isInfectious()) {
             this.agent.getInfectiousDisease().infect(anotherAgent);
         } else if (anotherAgent.getInfectiousDisease() != null
@@ -96,11 +104,33 @@ public class InfectiousDisease extends InfectiousDiseaseAbstract {
     }
 
     public void spreadInfectionInCurrentUnit(int numberOfAgentsToInfect) {
-        if (agent.getCurrentUnit() == null) {
+        BuildingUnit unit = agent.getCurrentUnit();
+        if (unit == null) {
+            return;
+        }
+        // with a transmission stage, contacts are only drawn where an infection
+        // can happen and the infection is spread later for all agents at once
+        TransmissionStage stage = model.getTransmissionStage();
+        if (stage != null) {
+            if (stage.canSpread(unit, agent) == true) {
+                List<Person> agentsToInfect = unit.getOccupants().sample(numberOfAgentsToInfect, agent,
+                        agent.getRandom());
+                agent.defer(() -> stage.addContact(unit, agent, agentsToInfect));
+            }
             return;
         }
-        List<Person> agentsInTheSameUnit = agent.getCurrentUnit().getCurrentAgents();
-        spreadInfectionToManyAgents(agentsInTheSameUnit, numberOfAgentsToInfect);
+        spreadInfectionInUnit(unit, numberOfAgentsToInfect);
+    }
+
+    /**
+     * Draws contacts among the other agents in the given unit and spreads the
+     * infection if either side of a contact is infectious.
+     */
+    public void spreadInfectionInUnit(BuildingUnit unit, int numberOfAgentsToInfect) {
+        List<Person> agentsToInfect = unit.getOccupants().sample(numberOfAgentsToInfect, agent, agent.getRandom());
+        for (Person agentToInfect : agentsToInfect) {
+            agent.getInfectiousDisease().spreadInfectionToOneAgent(agentToInfect);
+        }
     }
 
     public void spreadInfectionToManyAgents(List<Person> listOfAgentsToInfect, int numberOfAgentsToInfect) {
@@ -108,7 +138,7 @@ public class InfectiousDisease extends InfectiousDiseaseAbstract {
         if (listOfAgentsToInfect.size() == 0) {
             return;
         }
-        CollectionUtil.shuffle(listOfAgentsToInfect, agent.getModel().random);
+        CollectionUtil.shuffle(listOfAgentsToInfect, agent.getRandom());
         for (int count = 0; count < listOfAgentsToInfect.size() && count < numberOfAgentsToInfect; count++) {
             Person agentToInfect = listOfAgentsToInfect.get(count);
             agent.getInfectiousDisease().spreadInfectionToOneAgent(agentToInfect);
@@ -139,10 +169,35 @@ public class InfectiousDisease extends InfectiousDiseaseAbstract {
             return false;
         }
         this.setDiseaseStatus(DiseaseStatus.Exposed);
-        this.exposedStartedTime = this.agent.getSimulationTime();
+        this.exposedStartedStep = getCurrentStep();
         return true;
     }
 
+    /**
+     * @return the step at which the status or the pathogen level can change,
+     *         that is, the next day of a stage the agent is in
+     */
+    public long getNextUpdateStep() {
+        if (numberOfDaysHasBeenExposed != getNumberOfDays(exposedStartedStep)
+                || numberOfDaysHasBeenInfectious != getNumberOfDays(infectiousStartedStep)
+                || numberOfDaysHasBeenRecovered != getNumberOfDays(recoveredStartedStep)
+                || canBeInfectious() || canBeRecovered() || canBeSusceptible()) {
+            return agent.getStepAfterMinutes(0);
+        }
+        long step = getNextDayStep(exposedStartedStep);
+        step = Math.min(step, getNextDayStep(infectiousStartedStep));
+        step = Math.min(step, getNextDayStep(recoveredStartedStep));
+        return step;
+    }
+
+    private long getNextDayStep(long startStep) {
+        if (startStep == NOT_STARTED) {
+            return Long.MAX_VALUE;
+        }
+        long step = model.getStepOfDay(startStep, getNumberOfDays(startStep) + 1);
+        return Math.max(step, getCurrentStep() + 1);
+    }
+
     private boolean canBeInfectious() {
         return this.status == DiseaseStatus.Exposed
                 && this.numberOfDaysToBeExposed <= this.numberOfDaysHasBeenExposed;
@@ -163,16 +218,34 @@ public class InfectiousDisease extends InfectiousDiseaseAbstract {
     }
 
     public void setSheddingRate(double sheddingRate) {
+        agent.stopIdling();
         this.sheddingRate = sheddingRate;
+        this.pathogenLevelDay = -1;
     }
 
+    /**
+     * Updates the pathogen level from the shedding curve of the model. The
+     * level changes only when the number of days being infectious changes.
+     */
     public void updatePathogenLevel() {
-        double a = 2;
-        double shape = 8;
-        double t = this.numberOfDaysHasBeenInfectious;
-        double scale = 10000000;
-        scale = scale * (Math.pow(this.sheddingRate, 2));
-        this.pathogenLevel = (scale * (Math.pow(t, shape)) * Math.exp(-a * t));
+        if (this.pathogenLevelDay == this.numberOfDaysHasBeenInfectious) {
+            return;
+        }
+        this.pathogenLevel = model.getSheddingCurve().getPathogenLevel(this.numberOfDaysHasBeenInfectious,
+                this.sheddingRate);
+        this.pathogenLevelDay = this.numberOfDaysHasBeenInfectious;
+    }
+
+    @Override
+    public void setPathogenLevel(double pathogenLevel) {
+        super.setPathogenLevel(pathogenLevel);
+        this.pathogenLevelDay = -1;
+    }
+
+    @Override
+    public void updatePathogenLevel(double dose) {
+        super.updatePathogenLevel(dose);
+        this.pathogenLevelDay = -1;
     }
 
     public double getSpreadCounter() {
@@ -1,6 +1,5 @@
 package pol;
 
-import org.joda.time.Days;
 import org.joda.time.LocalDateTime;
 
 import pol.log.Characteristics;
@@ -16,15 +15,17 @@ import pol.log.Skip;
 
 public abstract class InfectiousDiseaseAbstract extends DiseaseAbstract {
     private static final long serialVersionUID = 1247800092072951969L;
+    public static final long NOT_STARTED = -1;
 
+    // steps at which the stages started, NOT_STARTED if not yet
     @Skip
-    protected LocalDateTime susceptibleStartedTime;
+    protected long susceptibleStartedStep;
     @Skip
-    protected LocalDateTime exposedStartedTime;
+    protected long exposedStartedStep;
     @Skip
-    protected LocalDateTime infectiousStartedTime;
+    protected long infectiousStartedStep;
     @Skip
-    protected LocalDateTime recoveredStartedTime;
+    protected long recoveredStartedStep;
 
     @Skip
     protected int numberOfDaysHasBeenExposed;
@@ -54,10 +55,10 @@ public abstract class InfectiousDiseaseAbstract extends DiseaseAbstract {
     public InfectiousDiseaseAbstract(Person agent) {
         super(agent);
         this.status = DiseaseStatus.None;
-        this.susceptibleStartedTime = null;
-        this.exposedStartedTime = null;
-        this.infectiousStartedTime = null;
-        this.recoveredStartedTime = null;
+        this.susceptibleStartedStep = NOT_STARTED;
+        this.exposedStartedStep = NOT_STARTED;
+        this.infectiousStartedStep = NOT_STARTED;
+        this.recoveredStartedStep = NOT_STARTED;
         this.numberOfDaysHasBeenExposed = 0;
         this.numberOfDaysHasBeenInfectious = 0;
         this.numberOfDaysHasBeenRecovered = 0;
@@ -91,7 +92,7 @@ public abstract class InfectiousDiseaseAbstract extends DiseaseAbstract {
     }
 
     protected double getRandomValue() {
-        return agent.getModel().random.nextDouble();
+        return agent.getRandom().nextDouble();
     }
 
     protected void smooth() {
@@ -108,19 +109,24 @@ public abstract class InfectiousDiseaseAbstract extends DiseaseAbstract {
         return value + (0.5 - this.smoothnessRate) * value;
     }
 
-    public int getNumberOfDays(LocalDateTime startTime) {
-        if (startTime == null) {
+    protected long getCurrentStep() {
+        return model.schedule.getSteps();
+    }
+
+    /**
+     * @return whole days since the given step, 0 if the stage has not started
+     */
+    public int getNumberOfDays(long startStep) {
+        if (startStep == NOT_STARTED) {
             return 0;
         }
-        LocalDateTime now = agent.getSimulationTime();
-        int differences = Days.daysBetween(startTime, now).getDays();
-        return differences;
+        return model.getNumberOfDaysBetween(startStep, getCurrentStep());
     }
 
     public void updateDays() {
-        numberOfDaysHasBeenExposed = getNumberOfDays(exposedStartedTime);
-        numberOfDaysHasBeenInfectious = getNumberOfDays(infectiousStartedTime);
-        numberOfDaysHasBeenRecovered = getNumberOfDays(recoveredStartedTime);
+        numberOfDaysHasBeenExposed = getNumberOfDays(exposedStartedStep);
+        numberOfDaysHasBeenInfectious = getNumberOfDays(infectiousStartedStep);
+        numberOfDaysHasBeenRecovered = getNumberOfDays(recoveredStartedStep);
     }
 
     protected boolean isSpreadingPossible() {
@@ -135,8 +141,9 @@ public abstract class InfectiousDiseaseAbstract extends DiseaseAbstract {
         if (!isInfectionPossible()) {
             return false;
         }
+        agent.stopIdling();
         this.status = DiseaseStatus.Exposed;
-        this.exposedStartedTime = this.agent.getSimulationTime();
+        this.exposedStartedStep = getCurrentStep();
         return true;
     }
 
@@ -160,19 +167,39 @@ public abstract class InfectiousDiseaseAbstract extends DiseaseAbstract {
     }
 
     public LocalDateTime getSusceptibleStartedTime() {
-        return this.susceptibleStartedTime;
+        return getTime(this.susceptibleStartedStep);
+    }
+
+    public long getSusceptibleStartedStep() {
+        return this.susceptibleStartedStep;
     }
 
     public LocalDateTime getExposedStartedTime() {
-        return this.exposedStartedTime;
+        return getTime(this.exposedStartedStep);
+    }
+
+    public long getExposedStartedStep() {
+        return this.exposedStartedStep;
     }
 
     public LocalDateTime getInfectiousStartedTime() {
-        return this.infectiousStartedTime;
+        return getTime(this.infectiousStartedStep);
+    }
+
+    public long getInfectiousStartedStep() {
+        return this.infectiousStartedStep;
     }
 
     public LocalDateTime getRecoveredStartedTime() {
-        return this.recoveredStartedTime;
+        return getTime(this.recoveredStartedStep);
+    }
+
+    public long getRecoveredStartedStep() {
+        return this.recoveredStartedStep;
+    }
+
+    private LocalDateTime getTime(long step) {
+        return step == NOT_STARTED ? null : model.getSimulationTime(step);
     }
 
     public int getNumberOfDaysHasBeenExposed() {
@@ -216,7 +243,9 @@ public abstract class InfectiousDiseaseAbstract extends DiseaseAbstract {
     }
 
     public void setDiseaseStatus(DiseaseStatus status) {
+        agent.stopIdling();
         this.status = status;
+        model.diseaseStatusChanged(agent, status);
     }
 
     public boolean isInfectious() {
@@ -240,6 +269,7 @@ public abstract class InfectiousDiseaseAbstract extends DiseaseAbstract {
     }
 
     public void setSmoothnessRate(double smoothnessRate) {
+        agent.stopIdling();
         this.smoothnessRate = smoothnessRate;
         smooth();
     }
@@ -3,6 +3,7 @@ package pol;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -192,7 +193,7 @@ public class LoveNeed implements Need, java.io.Serializable {
 					// We use the scores to calculate a probabilities and choose
 					// one randomly.
 					MersenneTwisterWrapper rng = new MersenneTwisterWrapper(
-							model.random);
+							agent.getRandom());
 
 					int[] singletons = new int[scoreMap.size()];
 					double[] probabilities = new double[scoreMap.size()];
@@ -229,7 +230,7 @@ public class LoveNeed implements Need, java.io.Serializable {
 						// get a visit length between min and max minutes as
 						// specified in model parameters.
 
-						double rate = agent.getModel().random.nextGaussian();
+						double rate = agent.getRandom().nextGaussian();
 
 						// bounding the Gaussian between -3 and 3
 						if (rate < -3) {
@@ -320,17 +321,20 @@ public class LoveNeed implements Need, java.io.Serializable {
 		Network workNetwork = agent.getModel().getWorkNetwork();
 		boolean useWorkNetwork = agent.getModel().params.useWorkNetwork;
 
-		List<Person> currentAgents = new ArrayList<>(agent.getCurrentUnit()
-				.getCurrentAgents()); // get current agents in the building
-
-		currentAgents.remove(agent); // remove itself from the list
-		if (currentAgents.size() > 0) { // if there are more than one except for
+		// current agents in the building except for this agent in a random
+		// order
+		Iterator<Person> currentAgents = agent.getCurrentUnit().getOccupants()
+				.shuffled(agent, agent.getRandom());
+		if (currentAgents.hasNext()) { // if there are more than one except for
 			// this agent.
 
-			CollectionUtil.shuffle(currentAgents, agent.getModel().random);
-
 			// go through current agents one by one
-			for (Person p : currentAgents) {
+			Person firstAgent = null;
+			while (currentAgents.hasNext()) {
+				Person p = currentAgents.next();
+				if (firstAgent == null) {
+					firstAgent = p;
+				}
 
 				// if the current agent is already a friend
 				if (familyFriendNetwork.getEdge(agent.getAgentId(),
@@ -386,7 +390,7 @@ public class LoveNeed implements Need, java.io.Serializable {
 				if (meetingNow() == false) {
 					// now let's pick a person and try to connect with it
 
-					Person agentToConnect = currentAgents.get(0); // assume that
+					Person agentToConnect = firstAgent; // assume that
 																	// this is
 																	// the
 																	// agent,
@@ -410,7 +414,7 @@ public class LoveNeed implements Need, java.io.Serializable {
 						chance = agent.getModel().params.focalClosureProbability;
 					}
 
-					if (agent.getModel().random.nextDouble() < chance) { // let's
+					if (agent.getRandom().nextDouble() < chance) { // let's
 																			// connect
 																			// these
 																			// two
@@ -672,7 +676,7 @@ public class LoveNeed implements Need, java.io.Serializable {
 
 			List<Map.Entry<VisitReason, Double>> shuffledEntries = new ArrayList<>(
 					reasonValue.entrySet());
-			CollectionUtil.shuffle(shuffledEntries, agent.getModel().random);
+			CollectionUtil.shuffle(shuffledEntries, agent.getRandom());
 
 			VisitReason reason = VisitReason.None;
 			double maxValue = Double.MIN_VALUE;
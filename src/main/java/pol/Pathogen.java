@@ -0,0 +1,107 @@
+package pol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import pol.log.ExtLogger;
+
+/**
+ * General description_________________________________________________________
+ * Parameters of a pathogen simulated besides the main infectious disease of
+ * agents, e.g. norovirus or influenza co-circulating with SARS-CoV-2. The
+ * state of agents for these pathogens is kept in {@link PathogenStore}.
+ *
+ * Pathogens are given in WorldParameters.additionalPathogens separated by ';',
+ * each as comma-separated values:
+ *
+ * name, days to be exposed, days to be infectious, days to be recovered,
+ * chance of transmission per contact, number of initially infected agents,
+ * and optionally scale, shape and rate of its shedding curve (see
+ * {@link GammaSheddingCurve}).
+ */
+
+public class Pathogen implements java.io.Serializable {
+    private static final long serialVersionUID = -3316862719813932946L;
+    private static final int NUM_OF_REQUIRED_VALUES = 6;
+    private final static ExtLogger logger = ExtLogger.create(Pathogen.class);
+
+    private final String name;
+    private final int numberOfDaysToBeExposed;
+    private final int numberOfDaysToBeInfectious;
+    private final int numberOfDaysToBeRecovered;
+    private final double chanceOfTransmission;
+    private final int numberOfInitialInfectedAgents;
+    private final SheddingCurve sheddingCurve;
+
+    public Pathogen(String name, int numberOfDaysToBeExposed, int numberOfDaysToBeInfectious,
+            int numberOfDaysToBeRecovered, double chanceOfTransmission, int numberOfInitialInfectedAgents,
+            SheddingCurve sheddingCurve) {
+        this.name = name;
+        this.numberOfDaysToBeExposed = numberOfDaysToBeExposed;
+        this.numberOfDaysToBeInfectious = numberOfDaysToBeInfectious;
+        this.numberOfDaysToBeRecovered = numberOfDaysToBeRecovered;
+        this.chanceOfTransmission = chanceOfTransmission;
+        this.numberOfInitialInfectedAgents = numberOfInitialInfectedAgents;
+        this.sheddingCurve = sheddingCurve;
+    }
+
+    /**
+     * @return pathogens in the given text, entries that cannot be read are
+     *         reported and skipped
+     */
+    public static List<Pathogen> parse(String text) {
+        List<Pathogen> pathogens = new ArrayList<Pathogen>();
+        if (text == null) {
+            return pathogens;
+        }
+        for (String entry : text.split(";")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            String[] values = entry.split(",");
+            try {
+                if (values.length < NUM_OF_REQUIRED_VALUES) {
+                    throw new IllegalArgumentException("too few values");
+                }
+                SheddingCurve curve = values.length >= NUM_OF_REQUIRED_VALUES + 3
+                        ? new GammaSheddingCurve(Double.parseDouble(values[6].trim()),
+                                Double.parseDouble(values[7].trim()), Double.parseDouble(values[8].trim()))
+                        : new GammaSheddingCurve();
+                pathogens.add(new Pathogen(values[0].trim(), Integer.parseInt(values[1].trim()),
+                        Integer.parseInt(values[2].trim()), Integer.parseInt(values[3].trim()),
+                        Double.parseDouble(values[4].trim()), Integer.parseInt(values[5].trim()), curve));
+            } catch (Exception e) {
+                logger.error("Cannot read the pathogen: " + entry, e);
+            }
+        }
+        return pathogens;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getNumberOfDaysToBeExposed() {
+        return numberOfDaysToBeExposed;
+    }
+
+    public int getNumberOfDaysToBeInfectious() {
+        return numberOfDaysToBeInfectious;
+    }
+
+    public int getNumberOfDaysToBeRecovered() {
+        return numberOfDaysToBeRecovered;
+    }
+
+    public double getChanceOfTransmission() {
+        return chanceOfTransmission;
+    }
+
+    public int getNumberOfInitialInfectedAgents() {
+        return numberOfInitialInfectedAgents;
+    }
+
+    public SheddingCurve getSheddingCurve() {
+        return sheddingCurve;
+    }
+}
@@ -0,0 +1,222 @@
+package pol;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ec.util.MersenneTwisterFast;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+
+/**
+ * General description_________________________________________________________
+ * The state of agents for additional pathogens (see {@link Pathogen}) kept in
+ * primitive arrays indexed by agent id, one array per pathogen and attribute,
+ * instead of a disease object per agent and pathogen. The progression of all
+ * agents is updated in one loop per pathogen once per step, with the same
+ * rules as {@link InfectiousDisease}: an agent stays exposed, infectious and
+ * recovered for the given numbers of days, and sheds the level of the
+ * shedding curve of the days it has been infectious until it is susceptible
+ * again.
+ *
+ * Pathogens spread through the same contacts as the main disease: when two
+ * agents meet, an infectious one infects a susceptible one with the chance of
+ * transmission of the pathogen. The transmission stage draws contacts where
+ * any pathogen can spread, not only the main disease.
+ */
+
+public class PathogenStore implements Steppable {
+    private static final long serialVersionUID = 8087210950400624775L;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final byte SUSCEPTIBLE = (byte) DiseaseStatus.Susceptible.ordinal();
+    private static final byte EXPOSED = (byte) DiseaseStatus.Exposed.ordinal();
+    private static final byte INFECTIOUS = (byte) DiseaseStatus.Infectious.ordinal();
+    private static final byte RECOVERED = (byte) DiseaseStatus.Recovered.ordinal();
+    private static final byte NONE = (byte) DiseaseStatus.None.ordinal();
+    private static final DiseaseStatus[] STATUSES = DiseaseStatus.values();
+
+    private final Pathogen[] pathogens;
+    private int size;
+    // [pathogen][agent id]
+    private byte[][] status;
+    private long[][] stageStartedStep;
+    private long[][] infectiousStartedStep;
+    private int[][] pathogenLevelDay;
+    private double[][] sheddingRate;
+    private double[][] pathogenLevel;
+
+    public PathogenStore(List<Pathogen> pathogens) {
+        this.pathogens = pathogens.toArray(new Pathogen[pathogens.size()]);
+        int count = this.pathogens.length;
+        this.size = 0;
+        this.status = new byte[count][INITIAL_CAPACITY];
+        this.stageStartedStep = new long[count][INITIAL_CAPACITY];
+        this.infectiousStartedStep = new long[count][INITIAL_CAPACITY];
+        this.pathogenLevelDay = new int[count][INITIAL_CAPACITY];
+        this.sheddingRate = new double[count][INITIAL_CAPACITY];
+        this.pathogenLevel = new double[count][INITIAL_CAPACITY];
+        for (int p = 0; p < count; p++) {
+            Arrays.fill(status[p], NONE);
+        }
+    }
+
+    /**
+     * Adds an agent as susceptible to all pathogens, or infectious to the
+     * pathogens it is initially infected with.
+     *
+     * @param sheddingRates
+     *                      shedding rate of the agent for each pathogen
+     */
+    public void addAgent(long agentId, double[] sheddingRates, long step) {
+        int index = (int) agentId;
+        ensureCapacity(index + 1);
+        for (int p = 0; p < pathogens.length; p++) {
+            sheddingRate[p][index] = sheddingRates[p];
+            pathogenLevel[p][index] = 0;
+            pathogenLevelDay[p][index] = -1;
+            if (agentId < pathogens[p].getNumberOfInitialInfectedAgents()) {
+                status[p][index] = INFECTIOUS;
+                stageStartedStep[p][index] = step;
+                infectiousStartedStep[p][index] = step;
+            } else {
+                status[p][index] = SUSCEPTIBLE;
+                stageStartedStep[p][index] = step;
+                infectiousStartedStep[p][index] = InfectiousDiseaseAbstract.NOT_STARTED;
+            }
+        }
+        size = Math.max(size, index + 1);
+    }
+
+    private void ensureCapacity(int capacity) {
+        int length = status.length > 0 ? status[0].length : 0;
+        if (capacity <= length) {
+            return;
+        }
+        int newLength = Math.max(capacity, length * 2);
+        for (int p = 0; p < pathogens.length; p++) {
+            status[p] = Arrays.copyOf(status[p], newLength);
+            Arrays.fill(status[p], length, newLength, NONE);
+            stageStartedStep[p] = Arrays.copyOf(stageStartedStep[p], newLength);
+            infectiousStartedStep[p] = Arrays.copyOf(infectiousStartedStep[p], newLength);
+            pathogenLevelDay[p] = Arrays.copyOf(pathogenLevelDay[p], newLength);
+            sheddingRate[p] = Arrays.copyOf(sheddingRate[p], newLength);
+            pathogenLevel[p] = Arrays.copyOf(pathogenLevel[p], newLength);
+        }
+    }
+
+    @Override
+    public void step(SimState state) {
+        WorldModel model = (WorldModel) state;
+        long steps = model.schedule.getSteps();
+        for (int p = 0; p < pathogens.length; p++) {
+            update(model, p, steps);
+        }
+    }
+
+    private void update(WorldModel model, int p, long steps) {
+        Pathogen pathogen = pathogens[p];
+        SheddingCurve curve = pathogen.getSheddingCurve();
+        byte[] status = this.status[p];
+        long[] stageStartedStep = this.stageStartedStep[p];
+        long[] infectiousStartedStep = this.infectiousStartedStep[p];
+        int[] pathogenLevelDay = this.pathogenLevelDay[p];
+        double[] sheddingRate = this.sheddingRate[p];
+        double[] pathogenLevel = this.pathogenLevel[p];
+
+        for (int i = 0; i < size; i++) {
+            if (infectiousStartedStep[i] != InfectiousDiseaseAbstract.NOT_STARTED) {
+                int day = model.getNumberOfDaysBetween(infectiousStartedStep[i], steps);
+                if (day != pathogenLevelDay[i]) {
+                    pathogenLevel[i] = curve.getPathogenLevel(day, sheddingRate[i]);
+                    pathogenLevelDay[i] = day;
+                }
+            }
+            if (status[i] == SUSCEPTIBLE || status[i] == NONE) {
+                continue;
+            }
+            int days = model.getNumberOfDaysBetween(stageStartedStep[i], steps);
+            if (status[i] == EXPOSED && days >= pathogen.getNumberOfDaysToBeExposed()) {
+                status[i] = INFECTIOUS;
+                stageStartedStep[i] = steps;
+                infectiousStartedStep[i] = steps;
+                statusChanged(model, i);
+            } else if (status[i] == INFECTIOUS && days >= pathogen.getNumberOfDaysToBeInfectious()) {
+                status[i] = RECOVERED;
+                stageStartedStep[i] = steps;
+                statusChanged(model, i);
+            } else if (status[i] == RECOVERED && days >= pathogen.getNumberOfDaysToBeRecovered()) {
+                status[i] = SUSCEPTIBLE;
+                stageStartedStep[i] = steps;
+                infectiousStartedStep[i] = InfectiousDiseaseAbstract.NOT_STARTED;
+                pathogenLevel[i] = 0;
+                pathogenLevelDay[i] = -1;
+                statusChanged(model, i);
+            }
+        }
+    }
+
+    /**
+     * Lets the transmission stage recount the agent in its unit.
+     */
+    private static void statusChanged(WorldModel model, int agentId) {
+        Person agent = model.getAgent((long) agentId);
+        if (model.getTransmissionStage() != null && agent != null) {
+            model.getTransmissionStage().update(agent);
+        }
+    }
+
+    /**
+     * Spreads the pathogens between two agents who meet.
+     */
+    public void contact(Person agent, Person anotherAgent, MersenneTwisterFast random, long step) {
+        int a = (int) agent.getAgentId();
+        int b = (int) anotherAgent.getAgentId();
+        if (a >= size || b >= size) {
+            return;
+        }
+        for (int p = 0; p < pathogens.length; p++) {
+            int recipient;
+            if (status[p][a] == INFECTIOUS && status[p][b] == SUSCEPTIBLE) {
+                recipient = b;
+            } else if (status[p][b] == INFECTIOUS && status[p][a] == SUSCEPTIBLE) {
+                recipient = a;
+            } else {
+                continue;
+            }
+            if (random.nextDouble() < pathogens[p].getChanceOfTransmission()) {
+                status[p][recipient] = EXPOSED;
+                stageStartedStep[p][recipient] = step;
+                statusChanged(agent.getModel(), recipient);
+            }
+        }
+    }
+
+    public int getNumberOfPathogens() {
+        return pathogens.length;
+    }
+
+    public Pathogen getPathogen(int pathogen) {
+        return pathogens[pathogen];
+    }
+
+    public DiseaseStatus getStatus(int pathogen, long agentId) {
+        return agentId < size ? STATUSES[status[pathogen][(int) agentId]] : DiseaseStatus.None;
+    }
+
+    public double getPathogenLevel(int pathogen, long agentId) {
+        return agentId < size ? pathogenLevel[pathogen][(int) agentId] : 0;
+    }
+
+    /**
+     * @return the number of agents infectious with the given pathogen
+     */
+    public int getNumberOfInfectiousAgents(int pathogen) {
+        int count = 0;
+        byte[] status = this.status[pathogen];
+        for (int i = 0; i < size; i++) {
+            if (status[i] == INFECTIOUS) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -13,6 +13,8 @@ import org.joda.time.LocalTime;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
 
+import ec.util.MersenneTwisterFast;
+
 import pol.environment.*;
 import pol.log.Characteristics;
 import pol.log.ExtLogger;
@@ -124,6 +126,23 @@ public class Person implements Steppable {
 	@Skip
 	private boolean inInitializationMode = true;
 
+	// random number stream of this agent used when agents are stepped in
+	// parallel (see ParallelAgentStepper), otherwise the model's is used.
+	@Skip
+	private MersenneTwisterFast random;
+	// side effects on other objects that are postponed while the agent is
+	// stepped in parallel with others
+	@Skip
+	private transient List<Runnable> deferredActions;
+	// the first step the agent has to be stepped fully while it is sleeping at
+	// home, or -1 if it is stepped fully every step (see stepIdle())
+	@Skip
+	private long idleUntilStep = -1;
+	// the last step the agent was stepped before it was parked by the
+	// ParallelAgentStepper, or -1 if it is not parked
+	@Skip
+	private long parkedSinceStep = -1;
+
 	/**
 	 * Constructor to call when creating an agent that is single. Use
 	 * {@code Person(WorldModel model, long id, Family family) } for
@@ -204,7 +223,30 @@ public class Person implements Steppable {
 	 */
 	@Override
 	public void step(SimState model) {
-		preStepRoutines();
+		processInstructions();
+		if (stepLocally() == true) {
+			return;
+		}
+		stepSerially();
+	}
+
+	/**
+	 * The part of a step that only changes the state of this agent: needs are
+	 * updated and the agent moves if it is in transport. Effects on other
+	 * objects are passed to {@link #defer(Runnable)}, so this can be run in
+	 * parallel with other agents.
+	 * 
+	 * @return true if the agent is in transport or idle and nothing is left
+	 *         to do in this step
+	 */
+	public boolean stepLocally() {
+		if (idleUntilStep >= 0 && stepIdle() == true) {
+			return true;
+		}
+
+		if (visitReason != null && visitReason != VisitReason.None) {
+			visitReason = VisitReason.None;
+		}
 
 		foodNeed.update(); // this will update the status of the food need
 		defecationNeed.update(); // this will update the status of the defecation need
@@ -219,9 +261,16 @@ public class Person implements Steppable {
 		// no action on transport mode.
 		if (currentMode == PersonMode.Transport) {
 			mobility.transport();
-			return;
+			return true;
 		}
+		return false;
+	}
 
+	/**
+	 * The part of a step where the agent satisfies its needs, which interacts
+	 * with other agents and places.
+	 */
+	public void stepSerially() {
 		sleepNeed.satisfy(); // checks sleeping/waking up schedule
 
 		if (sleepNeed.getStatus() == SleepStatus.Awake) {
@@ -256,6 +305,162 @@ public class Person implements Steppable {
 		if (lifeStatus != LifeStatus.Alive) {
 			this.bury();
 		}
+
+		if (model.params.skipIdleAgentSteps == true) {
+			idleUntilStep = findIdleUntilStep();
+		}
+	}
+
+	/**
+	 * Steps the agent sleeping at home without updating its needs one by one.
+	 * Until {@link #idleUntilStep}, no status of the needs can change and a
+	 * step only changes the fullness values of the food and defecation needs,
+	 * which are updated in the same way as in a full step.
+	 * 
+	 * @return false if the agent has to be stepped fully
+	 */
+	private boolean stepIdle() {
+		if (model.schedule.getSteps() >= idleUntilStep || isIdle() == false
+				|| foodNeed.canUpdateFullnessOnly() == false
+				|| defecationNeed.canUpdateFullnessOnly() == false) {
+			idleUntilStep = -1;
+			return false;
+		}
+		foodNeed.updateFullness();
+		defecationNeed.updateFullness();
+		model.countSkippedAgentStep();
+		return true;
+	}
+
+	private boolean isIdle() {
+		return currentMode == PersonMode.AtHome && lifeStatus == LifeStatus.Alive
+				&& sleepNeed.getStatus() == SleepStatus.Sleeping && instructionQueue.isEmpty() == true
+				&& (visitReason == null || visitReason == VisitReason.None);
+	}
+
+	/**
+	 * @return the first step at which a status of the agent can change, or -1
+	 *         if the agent cannot be idle in the next step
+	 */
+	private long findIdleUntilStep() {
+		if (model.params.timeStepUnit != SimulationTimeStepSetting.MinutePerStep || isIdle() == false) {
+			return -1;
+		}
+		long untilStep = Math.min(Math.min(sleepNeed.getNextUpdateStep(), foodNeed.getNextUpdateStep()),
+				Math.min(defecationNeed.getNextUpdateStep(), infectiousDisease.getNextUpdateStep()));
+		return untilStep > model.schedule.getSteps() + 1 ? untilStep : -1;
+	}
+
+	/**
+	 * Makes the agent be stepped fully from now on. This should be called
+	 * whenever the state of the agent used by {@link #findIdleUntilStep()} is
+	 * changed by others.
+	 */
+	public void stopIdling() {
+		if (idleUntilStep >= 0 && parkedSinceStep >= 0) {
+			model.getAgentStepper().wake(this);
+		}
+		idleUntilStep = -1;
+	}
+
+	/**
+	 * @return the number of next steps in which the agent only sleeps and can
+	 *         be left out, as long as nobody changes its state (see
+	 *         {@link #stepIdle()})
+	 */
+	public long getNumberOfIdleSteps() {
+		if (idleUntilStep < 0) {
+			return 0;
+		}
+		long steps = idleUntilStep - model.schedule.getSteps() - 1;
+		steps = foodNeed.countFullnessOnlyUpdates(steps);
+		return defecationNeed.countFullnessOnlyUpdates(steps);
+	}
+
+	/**
+	 * Marks the agent as left out from the next step on.
+	 */
+	public void park() {
+		parkedSinceStep = model.schedule.getSteps();
+	}
+
+	/**
+	 * Does what {@link #stepIdle()} would have done in the steps the agent was
+	 * left out, before it is stepped again in the current step.
+	 */
+	public void unpark() {
+		for (long step = parkedSinceStep + 1; step < model.schedule.getSteps(); step++) {
+			foodNeed.updateFullness();
+			defecationNeed.updateFullness();
+			model.countSkippedAgentStep();
+		}
+		parkedSinceStep = -1;
+	}
+
+	/**
+	 * @param minutes
+	 *                minutes from now
+	 * @return the first step after the current one at which the given minutes
+	 *         have passed
+	 */
+	long getStepAfterMinutes(long minutes) {
+		long steps = model.schedule.getSteps();
+		int minutePerStep = model.getMinutePerStep();
+		if (minutes <= minutePerStep) {
+			return steps + 1;
+		}
+		return steps + (minutes + minutePerStep - 1) / minutePerStep;
+	}
+
+	/**
+	 * Runs the given action now or, while the agent is stepped in parallel,
+	 * after all agents finish their local steps.
+	 * 
+	 * @param action
+	 */
+	public void defer(Runnable action) {
+		if (deferredActions != null) {
+			deferredActions.add(action);
+		} else {
+			action.run();
+		}
+	}
+
+	/**
+	 * Starts or stops postponing actions passed to {@link #defer(Runnable)}.
+	 * When stopped, the postponed actions are run in the order they were
+	 * deferred.
+	 * 
+	 * @param isDeferring
+	 */
+	public void setDeferring(boolean isDeferring) {
+		if (isDeferring == true) {
+			if (deferredActions == null) {
+				deferredActions = new ArrayList<Runnable>();
+			}
+			return;
+		}
+		List<Runnable> actions = deferredActions;
+		deferredActions = null;
+		if (actions != null) {
+			for (Runnable action : actions) {
+				action.run();
+			}
+		}
+	}
+
+	/**
+	 * Returns the random number generator to be used for the decisions of this
+	 * agent.
+	 * 
+	 * @return
+	 */
+	public MersenneTwisterFast getRandom() {
+		return random != null ? random : model.random;
+	}
+
+	public void setRandom(MersenneTwisterFast random) {
+		this.random = random;
 	}
 
 	@Skip
@@ -356,14 +561,14 @@ public class Person implements Steppable {
 		}
 	}
 
-	private void preStepRoutines() {
+	/**
+	 * Executes an instruction given to the agent, if any. This is the first
+	 * thing the agent does in a step.
+	 */
+	public void processInstructions() {
 		if (instructionQueue.isEmpty() == false) {
 			instructionQueue.processElements(this);
 		}
-
-		if (visitReason != null && visitReason != VisitReason.None) {
-			visitReason = VisitReason.None;
-		}
 	}
 
 	public boolean physiologicalNeedsSatisfied() {
@@ -477,6 +682,7 @@ public class Person implements Steppable {
 
 	// planning methods
 	public void addPlan(LocalDateTime dateTime, DailyPlan plan) {
+		stopIdling();
 		String dateString = DateTimeUtil.getDateString(dateTime);
 		plans.put(dateString, plan);
 
@@ -937,19 +1143,34 @@ public class Person implements Steppable {
 				+ amount + "," + getLocation().getGeometry());
 	}
 
-	public void writeTrajectoryToFile(List<Integer> roads) {
+	/**
+	 * Writes the ids of roads passed in this step.
+	 * 
+	 * @param roads
+	 *            road ids of the path
+	 * @param from
+	 *            index of the first road passed (inclusive)
+	 * @param to
+	 *            index of the last road passed (exclusive)
+	 * @param isReverse
+	 *            if true, the roads were passed from index to - 1 to from
+	 */
+	public void writeTrajectoryToFile(int[] roads, int from, int to, boolean isReverse) {
 		StringBuilder sb = new StringBuilder("{");
 		int pre = Integer.MAX_VALUE;
-		for (int i = 0; i < roads.size(); i++) {
-			if (pre == roads.get(i))
+		int count = to - from;
+		for (int i = 0; i < count; i++) {
+			int road = isReverse ? roads[to - 1 - i] : roads[from + i];
+			if (pre == road)
 				continue;
-			sb.append(roads.get(i));
-			if (i != roads.size() - 1)
+			sb.append(road);
+			if (i != count - 1)
 				sb.append(",");
-			pre = roads.get(i);
+			pre = road;
 		}
 		sb.append("}");
-		logger.evt6(model.schedule.getSteps() + "\t" + agentId + "\t" + getSimulationTime() + "\t" + sb.toString());
+		String line = model.schedule.getSteps() + "\t" + agentId + "\t" + getSimulationTime() + "\t" + sb.toString();
+		defer(() -> logger.evt6(line));
 	}
 
 	public void writeAttributesToFile() {
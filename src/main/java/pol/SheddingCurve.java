@@ -0,0 +1,20 @@
+package pol;
+
+/**
+ * General description_________________________________________________________
+ * A curve of the pathogen level shed by an infectious person over the days of
+ * the infection. The level of a person is the curve scaled by the square of
+ * the shedding rate of the person.
+ */
+
+public interface SheddingCurve extends java.io.Serializable {
+
+    /**
+     * @param day
+     *            number of days the person has been infectious
+     * @param sheddingRate
+     *            shedding rate of the person
+     * @return the pathogen level of the person
+     */
+    double getPathogenLevel(int day, double sheddingRate);
+}
@@ -176,7 +176,7 @@ public class ShelterNeed implements Need, java.io.Serializable {
 					BuildingType.Residental);
 		}
 
-		Building b1 = residentialBuildings.get(agent.getModel().random
+		Building b1 = residentialBuildings.get(agent.getRandom()
 				.nextInt(residentialBuildings.size()));
 		Apartment ghostApt = new Apartment(0, b1);
 		List<MasonGeometry> unitLocations = agent.getModel()
@@ -221,6 +221,7 @@ public class ShelterNeed implements Need, java.io.Serializable {
 		agent.getRentalAdjustment(amount);
 
 		currentShelter.getHousehold().removeMember(agent);
+		agent.getModel().updateApartmentAvailability(currentShelter);
 		currentShelter = null;
 	}
 
@@ -258,6 +259,7 @@ public class ShelterNeed implements Need, java.io.Serializable {
 		}
 
 		apt.getHousehold().addMember(this.agent);
+		agent.getModel().updateApartmentAvailability(apt);
 		setCurrentShelter(apt);
 		agent.setNeighborhoodId(apt.getNeighborhoodId());
 		// logging
@@ -294,15 +296,11 @@ public class ShelterNeed implements Need, java.io.Serializable {
 	private Apartment findApartment(ShelterSearchCriteria criteria, boolean enforceRoommate,
 			double maxMoneyForRental, int neighborhoodId) {
 
+		// a family or an agent who does not want a roommate looks for empty
+		// apartments, others for apartments shared by someone
+		boolean vacant = agent.hasFamily() == true || enforceRoommate == false;
 		List<Apartment> apartments = agent.getModel()
-				.getUsableApartmentsWithAvailableCapacity();
-
-		if (neighborhoodId >= 0) { // this means if a neighborhood is specified,
-									// just keep apartments on that neighborhood
-			apartments = apartments.stream()
-					.filter(p -> p.getNeighborhoodId() == neighborhoodId)
-					.collect(Collectors.toList());
-		}
+				.getUsableApartmentsWithAvailableCapacity(neighborhoodId, vacant);
 
 		if (agent.hasFamily() == true) {
 
@@ -372,7 +370,7 @@ public class ShelterNeed implements Need, java.io.Serializable {
 			case FirstAvailable:
 				affordableApartments = apartmentStream.collect(Collectors.toList());
 
-				return CollectionUtil.getRandomItem(affordableApartments, agent.getModel().random).get();
+				return CollectionUtil.getRandomItem(affordableApartments, agent.getRandom()).get();
 		}
 		return null;
 	}
@@ -15,6 +15,8 @@ import pol.utils.DateTimeUtil;
  */
 public class SleepNeed implements Need, java.io.Serializable {
 	private static final long serialVersionUID = -241168855859043227L;
+	private static final int MILLIS_PER_MINUTE = 60 * 1000;
+	private static final int MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
 	@Skip
 	private Person agent;
 
@@ -75,10 +77,12 @@ public class SleepNeed implements Need, java.io.Serializable {
 
 	//// GT_N#1: Sleep/Wake-up (following two parameters)
 	public void wakeUp() {
+		agent.stopIdling();
 		status = SleepStatus.Awake;
 	}
 
 	public void sleep() {
+		agent.stopIdling();
 		status = SleepStatus.Sleeping;
 	}
 
@@ -97,6 +101,31 @@ public class SleepNeed implements Need, java.io.Serializable {
 				this.getSleepStartTime());
 	}
 
+	/**
+	 * @return the step at which a sleeping agent wakes up or, if it does not
+	 *         wake up today, the first step of tomorrow when the plan of the
+	 *         day is changed
+	 */
+	long getNextUpdateStep() {
+		long steps = agent.getModel().schedule.getSteps();
+		if (status != SleepStatus.Sleeping) {
+			return steps + 1;
+		}
+		int millisPerStep = agent.getModel().getMinutePerStep() * MILLIS_PER_MINUTE;
+		int wakeUpTime = agent.getTodaysPlan().getWakeUpTime().getMillisOfDay();
+		int startTime = this.getSleepStartTime().getMillisOfDay();
+		long step = steps + 1;
+		int time = agent.getSimulationTime().getMillisOfDay() + millisPerStep;
+		for (; time < MILLIS_PER_DAY; step++, time += millisPerStep) {
+			// same as isTimeToWakeUp()
+			if (wakeUpTime > startTime ? time >= wakeUpTime || time <= startTime
+					: time >= wakeUpTime && time <= startTime) {
+				return step;
+			}
+		}
+		return step;
+	}
+
 	public void kill() {
 		this.agent = null;
 		this.sleepStartTime = null;
@@ -112,6 +141,7 @@ public class SleepNeed implements Need, java.io.Serializable {
 	}
 
 	public void setSleepStartTime(LocalTime sleepStartTime) {
+		agent.stopIdling();
 		this.sleepStartTime = sleepStartTime;
 	}
 
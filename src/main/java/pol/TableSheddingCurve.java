@@ -0,0 +1,73 @@
+package pol;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import pol.log.ExtLogger;
+
+/**
+ * General description_________________________________________________________
+ * A shedding curve given as a table of pathogen levels per day, scaled by
+ * sheddingRate^2. The level is zero after the last day of the table.
+ *
+ * The table is read from a text file with one value per line for day 0, 1, 2
+ * and so on, or "day,value" lines. Empty lines and lines starting with '#' are
+ * ignored.
+ */
+
+public class TableSheddingCurve implements SheddingCurve {
+    private static final long serialVersionUID = 4719207652416309914L;
+    private final static ExtLogger logger = ExtLogger.create(TableSheddingCurve.class);
+
+    private final double[] levels;
+
+    public TableSheddingCurve(double[] levels) {
+        this.levels = levels.clone();
+    }
+
+    /**
+     * @return the curve in the given file
+     * @throws IllegalArgumentException
+     *                                  if the file cannot be read
+     */
+    public static TableSheddingCurve load(String fileName) {
+        List<Double> levels = new ArrayList<Double>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] tokens = line.split("[,\\t ]+");
+                if (tokens.length == 1) {
+                    levels.add(Double.parseDouble(tokens[0]));
+                } else {
+                    int day = Integer.parseInt(tokens[0]);
+                    while (levels.size() <= day) {
+                        levels.add(0.0);
+                    }
+                    levels.set(day, Double.parseDouble(tokens[1]));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Cannot read the shedding curve: " + fileName, e);
+            throw new IllegalArgumentException("Cannot read the shedding curve: " + fileName, e);
+        }
+        double[] values = new double[levels.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = levels.get(i);
+        }
+        return new TableSheddingCurve(values);
+    }
+
+    @Override
+    public double getPathogenLevel(int day, double sheddingRate) {
+        if (day < 0 || day >= levels.length) {
+            return 0;
+        }
+        return Math.pow(sheddingRate, 2) * levels[day];
+    }
+}
@@ -0,0 +1,282 @@
+package pol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import pol.environment.BuildingUnit;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+
+/**
+ * General description_________________________________________________________
+ * Spreads infections within building units once per step, only in units where
+ * an infection can happen, instead of letting every agent draw contacts while
+ * satisfying its needs.
+ *
+ * The stage keeps an index of the infectious and susceptible agents of each
+ * unit, with a bit per disease: the main disease is bit 0 and additional
+ * pathogens the following ones. The index is updated when agents arrive at or
+ * leave a unit and when their status of any disease changes, so finding out
+ * whether a unit holds an infectious and a susceptible agent for the same
+ * disease takes constant time.
+ *
+ * When a need spreads the infection (see
+ * {@link InfectiousDisease#spreadInfectionInCurrentUnit(int)}) and nothing can
+ * be transmitted between the agent and the other occupants, nothing is drawn.
+ * Otherwise the other agents of the contact are chosen among the occupants
+ * present at that moment and the contact is recorded in its unit. After all
+ * agents stepped, the stage goes through the units with recorded contacts only
+ * and spreads the infection through each contact in the order they happened,
+ * with the same rules as
+ * {@link InfectiousDisease#spreadInfectionToOneAgent(Person)}.
+ */
+
+public class TransmissionStage implements Steppable {
+    private static final long serialVersionUID = 7405969911436153682L;
+    private static final int INITIAL_CAPACITY = 1024;
+    // the last bit is shared by the pathogens beyond it, which may draw
+    // contacts that have no effect but never misses one
+    private static final int MAX_BIT = Long.SIZE - 1;
+
+    // [agent id] the unit the agent is counted in and the bits it is counted
+    // with there
+    private BuildingUnit[] agentUnits;
+    private long[] infectiousMasks;
+    private long[] susceptibleMasks;
+    private final Map<BuildingUnit, UnitIndex> units;
+    // units with contacts recorded in this step, in the order of the first one
+    private final List<UnitIndex> pendingUnits;
+
+    public TransmissionStage() {
+        this.agentUnits = new BuildingUnit[INITIAL_CAPACITY];
+        this.infectiousMasks = new long[INITIAL_CAPACITY];
+        this.susceptibleMasks = new long[INITIAL_CAPACITY];
+        this.units = new HashMap<BuildingUnit, UnitIndex>();
+        this.pendingUnits = new ArrayList<UnitIndex>();
+    }
+
+    /**
+     * Counts the agent in the unit it arrived at.
+     */
+    public void agentArrives(BuildingUnit unit, Person agent) {
+        int index = (int) agent.getAgentId();
+        ensureCapacity(index + 1);
+        if (agentUnits[index] != null) {
+            agentLeaves(agentUnits[index], agent.getAgentId());
+        }
+        PathogenStore pathogenStore = agent.getModel().getPathogenStore();
+        agentUnits[index] = unit;
+        infectiousMasks[index] = getMask(agent, DiseaseStatus.Infectious, pathogenStore);
+        susceptibleMasks[index] = getMask(agent, DiseaseStatus.Susceptible, pathogenStore);
+        getUnitIndex(unit).add(infectiousMasks[index], susceptibleMasks[index]);
+    }
+
+    /**
+     * Stops counting the agent in the unit it left.
+     */
+    public void agentLeaves(BuildingUnit unit, long agentId) {
+        int index = (int) agentId;
+        if (index >= agentUnits.length || agentUnits[index] != unit) {
+            return;
+        }
+        getUnitIndex(unit).remove(infectiousMasks[index], susceptibleMasks[index]);
+        agentUnits[index] = null;
+        infectiousMasks[index] = 0;
+        susceptibleMasks[index] = 0;
+    }
+
+    /**
+     * Recounts the agent in its unit after its status of the main disease or
+     * of an additional pathogen changed.
+     */
+    public void update(Person agent) {
+        int index = (int) agent.getAgentId();
+        if (index >= agentUnits.length || agentUnits[index] == null) {
+            return;
+        }
+        PathogenStore pathogenStore = agent.getModel().getPathogenStore();
+        long infectious = getMask(agent, DiseaseStatus.Infectious, pathogenStore);
+        long susceptible = getMask(agent, DiseaseStatus.Susceptible, pathogenStore);
+        if (infectious == infectiousMasks[index] && susceptible == susceptibleMasks[index]) {
+            return;
+        }
+        UnitIndex unitIndex = getUnitIndex(agentUnits[index]);
+        unitIndex.remove(infectiousMasks[index], susceptibleMasks[index]);
+        unitIndex.add(infectious, susceptible);
+        infectiousMasks[index] = infectious;
+        susceptibleMasks[index] = susceptible;
+    }
+
+    /**
+     * @return true if the agent can infect or be infected by another agent in
+     *         the unit, for any disease
+     */
+    public boolean canSpread(BuildingUnit unit, Person agent) {
+        UnitIndex unitIndex = units.get(unit);
+        if (unitIndex == null) {
+            return false;
+        }
+        int index = (int) agent.getAgentId();
+        long infectious;
+        long susceptible;
+        if (index < agentUnits.length && agentUnits[index] == unit) {
+            infectious = infectiousMasks[index];
+            susceptible = susceptibleMasks[index];
+        } else {
+            PathogenStore pathogenStore = agent.getModel().getPathogenStore();
+            infectious = getMask(agent, DiseaseStatus.Infectious, pathogenStore);
+            susceptible = getMask(agent, DiseaseStatus.Susceptible, pathogenStore);
+        }
+        return (infectious & unitIndex.getSusceptibleMask()) != 0
+                || (susceptible & unitIndex.getInfectiousMask()) != 0;
+    }
+
+    /**
+     * Records a contact between the agent and the given other agents in the
+     * unit, through which the infection is spread when the stage is stepped.
+     */
+    public void addContact(BuildingUnit unit, Person agent, List<Person> otherAgents) {
+        UnitIndex unitIndex = getUnitIndex(unit);
+        if (unitIndex.hasContacts() == false) {
+            pendingUnits.add(unitIndex);
+        }
+        unitIndex.addContact(agent, otherAgents);
+    }
+
+    @Override
+    public void step(SimState state) {
+        for (UnitIndex unitIndex : pendingUnits) {
+            unitIndex.spreadInfection();
+        }
+        pendingUnits.clear();
+    }
+
+    private UnitIndex getUnitIndex(BuildingUnit unit) {
+        UnitIndex unitIndex = units.get(unit);
+        if (unitIndex == null) {
+            unitIndex = new UnitIndex();
+            units.put(unit, unitIndex);
+        }
+        return unitIndex;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= agentUnits.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, agentUnits.length * 2);
+        agentUnits = Arrays.copyOf(agentUnits, newLength);
+        infectiousMasks = Arrays.copyOf(infectiousMasks, newLength);
+        susceptibleMasks = Arrays.copyOf(susceptibleMasks, newLength);
+    }
+
+    /**
+     * @return bits of the diseases the agent has the given status of
+     */
+    private static long getMask(Person agent, DiseaseStatus status, PathogenStore pathogenStore) {
+        long mask = agent.getInfectiousDisease().getStatus() == status ? 1L : 0L;
+        if (pathogenStore != null) {
+            for (int p = 0; p < pathogenStore.getNumberOfPathogens(); p++) {
+                if (pathogenStore.getStatus(p, agent.getAgentId()) == status) {
+                    mask |= 1L << Math.min(p + 1, MAX_BIT);
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * The numbers of infectious and susceptible agents of a unit for each
+     * disease bit and the contacts recorded in the unit in this step.
+     */
+    private static class UnitIndex implements java.io.Serializable {
+        private static final long serialVersionUID = -2210472036125367394L;
+
+        private int[] infectiousCounts;
+        private int[] susceptibleCounts;
+        // bits with a count above zero
+        private long infectiousMask;
+        private long susceptibleMask;
+        private final List<Person> contactAgents;
+        private final List<List<Person>> contactOtherAgents;
+
+        UnitIndex() {
+            this.infectiousCounts = new int[1];
+            this.susceptibleCounts = new int[1];
+            this.contactAgents = new ArrayList<Person>();
+            this.contactOtherAgents = new ArrayList<List<Person>>();
+        }
+
+        long getInfectiousMask() {
+            return infectiousMask;
+        }
+
+        long getSusceptibleMask() {
+            return susceptibleMask;
+        }
+
+        void add(long infectious, long susceptible) {
+            infectiousCounts = count(infectiousCounts, infectious, 1);
+            susceptibleCounts = count(susceptibleCounts, susceptible, 1);
+            infectiousMask |= infectious;
+            susceptibleMask |= susceptible;
+        }
+
+        void remove(long infectious, long susceptible) {
+            infectiousCounts = count(infectiousCounts, infectious, -1);
+            susceptibleCounts = count(susceptibleCounts, susceptible, -1);
+            infectiousMask = toMask(infectiousCounts, infectiousMask, infectious);
+            susceptibleMask = toMask(susceptibleCounts, susceptibleMask, susceptible);
+        }
+
+        private static int[] count(int[] counts, long mask, int change) {
+            if (mask == 0) {
+                return counts;
+            }
+            int length = Long.SIZE - Long.numberOfLeadingZeros(mask);
+            if (length > counts.length) {
+                counts = Arrays.copyOf(counts, length);
+            }
+            for (long bits = mask; bits != 0; bits &= bits - 1) {
+                counts[Long.numberOfTrailingZeros(bits)] += change;
+            }
+            return counts;
+        }
+
+        private static long toMask(int[] counts, long mask, long changed) {
+            for (long bits = changed; bits != 0; bits &= bits - 1) {
+                int bit = Long.numberOfTrailingZeros(bits);
+                if (counts[bit] <= 0) {
+                    mask &= ~(1L << bit);
+                }
+            }
+            return mask;
+        }
+
+        boolean hasContacts() {
+            return contactAgents.isEmpty() == false;
+        }
+
+        void addContact(Person agent, List<Person> otherAgents) {
+            contactAgents.add(agent);
+            contactOtherAgents.add(otherAgents);
+        }
+
+        void spreadInfection() {
+            for (int i = 0; i < contactAgents.size(); i++) {
+                Person agent = contactAgents.get(i);
+                if (agent.getLifeStatus() != LifeStatus.Alive) {
+                    continue;
+                }
+                for (Person otherAgent : contactOtherAgents.get(i)) {
+                    agent.getInfectiousDisease().spreadInfectionToOneAgent(otherAgent);
+                }
+            }
+            contactAgents.clear();
+            contactOtherAgents.clear();
+        }
+    }
+}
@@ -15,13 +15,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -43,6 +43,7 @@ import org.joda.time.Minutes;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
@@ -54,6 +55,7 @@ import pol.DailyRoutines.RoutineType;
 import pol.db.Cdf;
 import pol.db.Column;
 import pol.environment.Apartment;
+import pol.environment.AvailabilityIndex;
 import pol.environment.Building;
 import pol.environment.BuildingType;
 import pol.environment.BuildingUnit;
@@ -62,11 +64,17 @@ import pol.environment.CensusData;
 import pol.environment.Classroom;
 import pol.environment.DayOfWeek;
 import pol.environment.Job;
+import pol.environment.NearestPlaceIndex;
 import pol.environment.NeighborhoodComposition;
+import pol.environment.PathCache;
 import pol.environment.Pub;
 import pol.environment.Restaurant;
+import pol.environment.SewershedAggregator;
+import pol.environment.SewershedIndex;
+import pol.environment.SewerTransport;
 import pol.environment.SpatialNetwork;
 import pol.environment.Workplace;
+import pol.log.AsyncLogChannels;
 import pol.log.CdfFlatFormatterForRelation;
 import pol.log.CdfMapper;
 import pol.log.CdfMapperBuilder;
@@ -97,9 +105,11 @@ import pol.utils.DateTimeUtil;
 import pol.utils.EventSchedule;
 import pol.utils.Exclusion;
 import pol.utils.GeoUtils;
+import pol.utils.GeometryIndex;
 import pol.utils.Manipulation;
 import pol.utils.ManipulationLoader;
 import pol.utils.MasterScheduler;
+import pol.utils.ParallelAgentStepper;
 import pol.utils.SimulationEvent;
 import pol.utils.SimulationTimeStepSetting;
 import pol.utils.StringUtils;
@@ -141,10 +151,15 @@ public class WorldModel extends SimState {
 	public static final int INTERVENTION_PRIORITY = Integer.MIN_VALUE + 20;
 	public static final int PRE_EVENT_PRIORITY = Integer.MIN_VALUE + 30;
 	public static final int AGENT_PRIORITY = 0;
+	public static final int TRANSMISSION_PRIORITY = AGENT_PRIORITY + 10;
+	public static final int PATHOGEN_PRIORITY = AGENT_PRIORITY + 20;
 	public static final int POST_EVENT_PRIORITY = Integer.MAX_VALUE - 40;
+	public static final int SEWERSHED_PRIORITY = Integer.MAX_VALUE - 35;
+	public static final int SEWER_PRIORITY = Integer.MAX_VALUE - 34;
 	public static final int DATA_COLLECTION_PRIORITY = Integer.MAX_VALUE - 30;
 	public static final int SPATIAL_INDEX_UPDATING_PRIORITY = Integer.MAX_VALUE - 20;
 	public static final int LOGGING_PRIORITY = Integer.MAX_VALUE - 10;
+	public static final int LOG_QUEUE_MONITORING_PRIORITY = Integer.MAX_VALUE - 5;
 
 	// just for visualization and execution time estimation
 	private int day = 0;
@@ -152,12 +167,29 @@ public class WorldModel extends SimState {
 	private long simulationSeed;
 	private int numOfAbondenedAgents = 0;
 	private int numOfDeadAgents = 0;
+	// used only if agents are stepped by multiple threads
+	private ParallelAgentStepper agentStepper;
+	// number of agent steps done without updating needs (see Person.stepIdle)
+	private final LongAdder skippedAgentSteps = new LongAdder();
+	// pathogen load per sewershed, null if there is no sewershed layer
+	private SewershedAggregator sewershedAggregator;
+	// pathogen load at sewer sampling points, null if there is no sewer layer
+	private SewerTransport sewerTransport;
+	private TransmissionStage transmissionStage;
+	private PathogenStore pathogenStore;
+	private SheddingCurve sheddingCurve;
+	// agents who defecated or whose disease status changed in the current
+	// step, reported by the agents so that the population is not scanned
+	private AgentEvents defecatedAgents = new AgentEvents();
+	private AgentEvents diseaseTransitions = new AgentEvents();
+	// agents whose disease status is not None, kept up to date by the agents
+	private Map<Long, Person> agentsWithDisease = new TreeMap<Long, Person>();
 
 	// geography components/settings
 	public static final int WIDTH = 800;
 	public static final int HEIGHT = 800;
 	private GeomVectorField agentLayer = new GeomVectorField(WIDTH, HEIGHT);
-	private SpatialNetwork spatialNetwork = new SpatialNetwork(WIDTH, HEIGHT);
+	private SpatialNetwork spatialNetwork;
 
 	// references to agents/objects
 	private Map<Integer, List<Building>> neighborhoodBuildingMap;
@@ -169,8 +201,16 @@ public class WorldModel extends SimState {
 	private Map<Long, Job> jobs;
 	private Map<Long, Restaurant> restaurants;
 	private Map<Long, Pub> pubs;
+	// spatial indexes used for nearest place search, built on first use
+	private NearestPlaceIndex<Restaurant> restaurantIndex;
+	private NearestPlaceIndex<Pub> pubIndex;
+	// availability indexes used for job and apartment search, built on first
+	// use
+	private AvailabilityIndex<Job> unfilledJobIndex;
+	private AvailabilityIndex<Apartment> apartmentIndex;
 
 	private List<BuildingUnit> buildingUnitsToSupply;
+	private GeometryIndex<BuildingUnit> buildingUnitsToSupplyIndex;
 
 	// social networks
 	private Network friendFamilyNetwork = new Network(true);
@@ -181,6 +221,8 @@ public class WorldModel extends SimState {
 
 	// All reserved logging matter
 	private ReservedLogChannels reservedLog;
+	// queue depths of asynchronous log channels, null if they are synchronous
+	private AsyncLogChannels logChannels;
 
 	private long agentId = 0;
 	// Graphs for social network visualization
@@ -203,6 +245,16 @@ public class WorldModel extends SimState {
 
 	public WorldModel(long seed, WorldParameters params) throws IOException,
 			Exception {
+		this(seed, params, null);
+	}
+
+	/**
+	 * @param network
+	 *            maps loaded by loadSpatialNetwork to be shared with other
+	 *            models, or null to load the maps of the parameters
+	 */
+	public WorldModel(long seed, WorldParameters params, SpatialNetwork network)
+			throws IOException, Exception {
 		super(seed);
 		manipulationScheduler = new MasterScheduler<Manipulation>();
 		logScheduler = new MasterScheduler<LogSchedule>();
@@ -210,15 +262,38 @@ public class WorldModel extends SimState {
 		this.params = params;
 		timeUtil.addEventTime(SimulationEvent.SimulationStart, new DateTime());
 		simulationSeed = seed;
-		spatialNetwork.loadMapLayers(params.maps, "walkways.shp",
-				"buildings.shp", "buildingUnits.shp");
+		if (network == null) {
+			spatialNetwork = loadSpatialNetwork(params);
+		} else {
+			spatialNetwork = new SpatialNetwork(network);
+		}
+		spatialNetwork.createPathCache(params.pathCacheSizeInMB * 1024L * 1024L,
+				PathCache.EvictionPolicy.valueOf(params.pathCacheEvictionPolicy
+						.toUpperCase()));
 		initPlaces();
-		GeoUtils.alignMBRs(spatialNetwork.getAllLayers());
 		initVisualGraph();
 		reservedLog = new ReservedLogChannels(this);
 		startDataCollectionForQoIs();
 	}
 
+	/**
+	 * Loads the maps of the given parameters, which can be shared by models
+	 * with the same maps (see EnsembleRunner).
+	 */
+	public static SpatialNetwork loadSpatialNetwork(WorldParameters params)
+			throws IOException, Exception {
+		SpatialNetwork network = new SpatialNetwork(WIDTH, HEIGHT);
+		network.loadMapLayers(params.maps, "walkways.shp",
+				"buildings.shp", "buildingUnits.shp");
+		network.loadSewershedLayer(params.maps, params.sewershedShapeFile);
+		network.loadSewerNetwork(params.maps, params.sewerShapeFile);
+		if (params.enableContractionHierarchy == true) {
+			network.loadContractionHierarchy();
+		}
+		GeoUtils.alignMBRs(network.getAllLayers());
+		return network;
+	}
+
 	/**
 	 * Start method that creates and initializes agents and objects
 	 */
@@ -228,10 +303,33 @@ public class WorldModel extends SimState {
 		super.start();
 
 		agentLayer.clear(); // clear any existing agents from previous runs
+		if (params.useParallelStepping == true) {
+			// agents are stepped together instead of being scheduled one by one
+			agentStepper = new ParallelAgentStepper(simulationSeed, Math.max(params.numOfStepThreads, 1));
+			schedule.scheduleRepeating(agentStepper, AGENT_PRIORITY, 1);
+		} else {
+			agentStepper = null;
+		}
+		if (params.useTransmissionStage) {
+			transmissionStage = new TransmissionStage();
+			schedule.scheduleRepeating(transmissionStage, TRANSMISSION_PRIORITY, 1);
+		} else {
+			transmissionStage = null;
+		}
+		// created once here since agents use it while stepped in parallel
+		sheddingCurve = createSheddingCurve();
+		List<Pathogen> pathogens = Pathogen.parse(params.additionalPathogens);
+		if (pathogens.isEmpty() == false) {
+			pathogenStore = new PathogenStore(pathogens);
+			schedule.scheduleRepeating(pathogenStore, PATHOGEN_PRIORITY, 1);
+		} else {
+			pathogenStore = null;
+		}
 		addSchedulingAgents();
 		addHumanAgents();
 		addSupplyChainAgents();
-		agentLayer.setMBR(spatialNetwork.getWalkwayLayer().getMBR());
+		// copied since the walkway layer may be shared with other models
+		agentLayer.setMBR(new Envelope(spatialNetwork.getWalkwayLayer().getMBR()));
 
 		timeUtil.addEventTime(SimulationEvent.AgentInitEnd, new DateTime());
 		timeUtil.logTimeSpent(SimulationEvent.AgentInitStart,
@@ -243,8 +341,35 @@ public class WorldModel extends SimState {
 		// priority
 		// lower priority first
 		schedule.scheduleRepeating(logScheduler, LOGGING_PRIORITY, 1);
+		if (AsyncLogChannels.isEnabled()) {
+			logChannels = new AsyncLogChannels();
+			schedule.scheduleRepeating(logChannels, LOG_QUEUE_MONITORING_PRIORITY, 1);
+		} else {
+			logChannels = null;
+		}
 		schedule.scheduleRepeating(agentLayer.scheduleSpatialIndexUpdater(), SPATIAL_INDEX_UPDATING_PRIORITY, 1);
 		schedule.scheduleRepeating(dataCollector, DATA_COLLECTION_PRIORITY, 1);
+		if (spatialNetwork.getSewershedLayer() != null) {
+			// bins are made of whole steps
+			int stepsPerBin = Math.max(
+					(int) Math.round((double) params.sewershedTimeBinInMinutes / getMinutePerStep()), 1);
+			if (stepsPerBin * getMinutePerStep() != params.sewershedTimeBinInMinutes) {
+				logger.warn("Sewershed time bin of " + params.sewershedTimeBinInMinutes
+						+ " minutes is not a multiple of the step. " + stepsPerBin * getMinutePerStep()
+						+ " minutes are used instead.");
+			}
+			sewershedAggregator = new SewershedAggregator(new SewershedIndex(spatialNetwork.getSewershedLayer()),
+					stepsPerBin, pathogenStore);
+			schedule.scheduleRepeating(sewershedAggregator, SEWERSHED_PRIORITY, 1);
+		} else {
+			sewershedAggregator = null;
+		}
+		if (spatialNetwork.getSewerNetwork() != null) {
+			sewerTransport = new SewerTransport(spatialNetwork.getSewerNetwork(), this);
+			schedule.scheduleRepeating(sewerTransport, SEWER_PRIORITY, 1);
+		} else {
+			sewerTransport = null;
+		}
 		schedule.scheduleRepeating(eventScheduler, PRE_EVENT_PRIORITY, 1);
 		schedule.scheduleRepeating(manipulationScheduler, INTERVENTION_PRIORITY, 1);
 		schedule.scheduleRepeating(new Steppable() {
@@ -266,6 +391,7 @@ public class WorldModel extends SimState {
 	@Override
 	public void awakeFromCheckpoint() {
 		super.awakeFromCheckpoint();
+		spatialNetwork.awakeFromCheckpoint();
 		reloadVisualGraph();
 		manipulate(ManipulationLoader
 				.loadFromConfig(params.additionalManipulationFilePath));
@@ -283,9 +409,26 @@ public class WorldModel extends SimState {
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+		logger.info(spatialNetwork.getPreComputedPaths().toString());
+		if (params.skipIdleAgentSteps == true) {
+			logger.info("Skipped agent steps: " + skippedAgentSteps.sum());
+		}
 		timeUtil.addEventTime(SimulationEvent.SimulationEnd, new DateTime());
 		timeUtil.logTimeSpent(SimulationEvent.SimulationStart,
 				SimulationEvent.SimulationEnd, "Total simulation time");
+		if (logChannels != null) {
+			logger.info(logChannels.toString());
+		}
+		if (sewershedAggregator != null) {
+			sewershedAggregator.flush();
+		}
+		reservedLog.finish();
+		// lines still queued by asynchronous log channels are written out. The
+		// queues are shared by all models when logs are routed, so the runner
+		// flushes them once all models finished (see EnsembleRunner).
+		if (ReservedLogChannels.isRouting() == false && AsyncLogChannels.flush() == false) {
+			logger.error("Log files may be incomplete since queued lines are not written.");
+		}
 	}
 
 	// ALL INITIALIZATION-RELATED METHODS - called only during the early phases
@@ -305,6 +448,10 @@ public class WorldModel extends SimState {
 		this.jobs = new TreeMap<Long, Job>();
 		this.restaurants = new TreeMap<Long, Restaurant>();
 		this.pubs = new TreeMap<Long, Pub>();
+		this.restaurantIndex = null;
+		this.pubIndex = null;
+		this.unfilledJobIndex = null;
+		this.apartmentIndex = null;
 
 		// db.Buildings = buildings;
 
@@ -729,6 +876,8 @@ public class WorldModel extends SimState {
 
 		List<MasonGeometry> units = spatialNetwork.getBuildingUnitTable().get((int) bld.getId());
 		pub.setLocation(units.get(bld.getUnits().size() % units.size()));
+		if (pubIndex != null)
+			pubIndex.add(pub);
 
 		updateNearestPubCache();
 	}
@@ -788,6 +937,8 @@ public class WorldModel extends SimState {
 
 			List<MasonGeometry> units = spatialNetwork.getBuildingUnitTable().get((int) bld.getId());
 			pub.setLocation(units.get(bld.getUnits().size() % units.size()));
+			if (pubIndex != null)
+				pubIndex.add(pub);
 		}
 		updateNearestPubCache();
 	}
@@ -866,6 +1017,7 @@ public class WorldModel extends SimState {
 
 	private void addHumanAgents() {
 		agents = new TreeMap<Long, Person>();
+		agentsWithDisease = new TreeMap<Long, Person>();
 
 		// add approx equal number of agents for each neighborhood.
 		Map<Integer, Integer> numOfAgentsPerNeighborhood = numberOfAgentsPerNeighborhood(this.neighborhoodBuildingMap,
@@ -926,13 +1078,20 @@ public class WorldModel extends SimState {
 		agent.getInfectiousDisease().setSheddingRate(initialization.generateSheddingRate());
 		if (agentId < params.numberOfInitialInfectedAgents) {
 			agent.getInfectiousDisease().setDiseaseStatus(DiseaseStatus.Infectious);
-			agent.getInfectiousDisease().exposedStartedTime = agent.getSimulationTime();
-			agent.getInfectiousDisease().infectiousStartedTime = agent.getSimulationTime();
+			agent.getInfectiousDisease().exposedStartedStep = schedule.getSteps();
+			agent.getInfectiousDisease().infectiousStartedStep = schedule.getSteps();
 			System.out.println("Agent #" + agentId + " is initially infected.");
 
 		}
 
 		agent.getInfectiousDisease().setSmoothnessRate(initialization.generateSmoothnessRate());
+		if (pathogenStore != null) {
+			double[] sheddingRates = new double[pathogenStore.getNumberOfPathogens()];
+			for (int p = 0; p < sheddingRates.length; p++) {
+				sheddingRates[p] = initialization.generateSheddingRate();
+			}
+			pathogenStore.addAgent(agentId, sheddingRates, schedule.getSteps());
+		}
 		agent.getFinancialSafetyNeed().depositMoney(initialBalance);
 		agent.setJoviality(joviality);
 		agent.setWalkingSpeed(params.agentWalkingSpeed);
@@ -959,7 +1118,12 @@ public class WorldModel extends SimState {
 		agentLayer.addGeometry(agent.getLocation());
 		agent.jitter();
 
-		Stoppable stp = schedule.scheduleRepeating(agent);
+		Stoppable stp;
+		if (agentStepper != null) {
+			stp = agentStepper.add(agent);
+		} else {
+			stp = schedule.scheduleRepeating(agent);
+		}
 		agent.setStoppable(stp);
 		logger.info("Agent #" + agentId + " added.");
 	}
@@ -1214,50 +1378,36 @@ public class WorldModel extends SimState {
 
 	// PLACE SEARCH METHODS
 
+	/**
+	 * Returns usable restaurants ordered by Euclidean distance to the given
+	 * geometry (ties are broken by id).
+	 */
 	public List<Restaurant> getNearestRestaurants(MasonGeometry geom, int numberOfRestaurants) {
-		List<Restaurant> restaurants = getUsableRestaurants();
-
 		if (restaurants == null) {
 			return null;
 		}
-
-		restaurants.sort(new Comparator<BuildingUnit>() {
-			@Override
-			public int compare(BuildingUnit o1, BuildingUnit o2) {
-				double a = spatialNetwork.getDistance(geom, o1.getLocation());
-				double b = spatialNetwork.getDistance(geom, o2.getLocation());
-				if (a == b)
-					return Long.compare(o1.getId(), o2.getId());
-				return Double.compare(a, b);
-			}
-		});
-
-		return restaurants.size() > numberOfRestaurants ? restaurants.subList(0, numberOfRestaurants) : restaurants;
+		if (restaurantIndex == null) {
+			restaurantIndex = new NearestPlaceIndex<Restaurant>(restaurants.values());
+		}
+		return restaurantIndex.getNearest(geom, numberOfRestaurants);
 	}
 
 	public Restaurant getRestaurant(long id) {
 		return restaurants.get(id);
 	}
 
+	/**
+	 * Returns usable pubs ordered by Euclidean distance to the given geometry
+	 * (ties are broken by id).
+	 */
 	public List<Pub> getNearestPubs(MasonGeometry geom, int numberOfPubs) {
-		List<Pub> pubs = getUsablePubs();
-
 		if (pubs == null) {
 			return null;
 		}
-
-		pubs.sort(new Comparator<Pub>() {
-			@Override
-			public int compare(Pub o1, Pub o2) {
-				double a = spatialNetwork.getDistance(geom, o1.getLocation());
-				double b = spatialNetwork.getDistance(geom, o2.getLocation());
-				if (a == b)
-					return Long.compare(o1.getId(), o2.getId());
-				return Double.compare(a, b);
-			}
-		});
-		return pubs.size() > numberOfPubs ? pubs.subList(0, numberOfPubs)
-				: pubs;
+		if (pubIndex == null) {
+			pubIndex = new NearestPlaceIndex<Pub>(pubs.values());
+		}
+		return pubIndex.getNearest(geom, numberOfPubs);
 	}
 
 	public Pub getPub(long id) {
@@ -1270,22 +1420,17 @@ public class WorldModel extends SimState {
 			return null;
 		}
 
-		double minDistance = Double.MAX_VALUE;
 		double threshold = 10000;
-		BuildingUnit unitToReturn = null;
-
-		for (BuildingUnit unit : buildingUnitsToSupply) {
-
-			double dist = getSpatialNetwork().getDistance(unit.getLocation(),
-					geom);
-			if (dist < minDistance && dist < threshold) {
-				minDistance = dist;
-				unitToReturn = unit;
-			}
+		if (buildingUnitsToSupplyIndex == null) {
+			buildingUnitsToSupplyIndex = new GeometryIndex<BuildingUnit>(buildingUnitsToSupply,
+					unit -> unit.getLocation().getGeometry(),
+					(unit, from) -> getSpatialNetwork().getDistance(unit.getLocation(), from));
 		}
+		BuildingUnit unitToReturn = buildingUnitsToSupplyIndex.nearestWithin(geom, threshold);
 
 		if (unitToReturn != null) {
 			buildingUnitsToSupply.remove(unitToReturn);
+			buildingUnitsToSupplyIndex.remove(unitToReturn);
 		}
 
 		return unitToReturn;
@@ -1294,6 +1439,18 @@ public class WorldModel extends SimState {
 	// PLACE SEARCH METHODS END
 
 	// GETTER/SETTER METHODS
+	/**
+	 * Counts an agent step in which the agent was idle. Agents can be stepped
+	 * in parallel.
+	 */
+	public void countSkippedAgentStep() {
+		skippedAgentSteps.increment();
+	}
+
+	public long getNumberOfSkippedAgentSteps() {
+		return skippedAgentSteps.sum();
+	}
+
 	public int getMinutePerStep() {
 		SimulationTimeStepSetting timeUnit = params.timeStepUnit;
 		if (timeUnit == SimulationTimeStepSetting.MinutePerStep) {
@@ -1307,7 +1464,14 @@ public class WorldModel extends SimState {
 	}
 
 	public LocalDateTime getSimulationTime() {
-		int stepSize = ((Long) this.schedule.getSteps()).intValue();
+		return getSimulationTime(this.schedule.getSteps());
+	}
+
+	/**
+	 * @return the simulation time at the given step
+	 */
+	public LocalDateTime getSimulationTime(long step) {
+		int stepSize = ((Long) step).intValue();
 		int totalTimePassed = stepSize * params.oneStepTime;
 
 		switch (params.timeStepUnit) {
@@ -1324,6 +1488,36 @@ public class WorldModel extends SimState {
 		return new LocalDateTime();
 	}
 
+	/**
+	 * @return the number of whole days between the simulation times of the
+	 *         given steps, the same as Days.daysBetween of the times
+	 */
+	public int getNumberOfDaysBetween(long fromStep, long toStep) {
+		return (int) ((toStep - fromStep) * params.oneStepTime / getTimeUnitsPerDay());
+	}
+
+	/**
+	 * @return the first step at which the given number of days has passed
+	 *         since the given step
+	 */
+	public long getStepOfDay(long fromStep, int days) {
+		long units = days * getTimeUnitsPerDay();
+		return fromStep + (units + params.oneStepTime - 1) / params.oneStepTime;
+	}
+
+	private long getTimeUnitsPerDay() {
+		switch (params.timeStepUnit) {
+			case SecondPerStep:
+				return 24 * 60 * 60;
+			case MinutePerStep:
+				return 24 * 60;
+			case HourPerStep:
+				return 24;
+			default:
+				return 1;
+		}
+	}
+
 	public GeomVectorField getAgentLayer() {
 		return agentLayer;
 	}
@@ -1452,6 +1646,61 @@ public class WorldModel extends SimState {
 				.collect(Collectors.toList());
 	}
 
+	/**
+	 * Returns usable apartments with available capacity in the given
+	 * neighborhood (or in all neighborhoods if it is negative) that are either
+	 * vacant or already shared by someone. The apartments are ordered by id.
+	 * 
+	 * @param neighborhoodId
+	 * @param vacant
+	 * @return
+	 */
+	public List<Apartment> getUsableApartmentsWithAvailableCapacity(int neighborhoodId, boolean vacant) {
+		if (apartmentIndex == null) {
+			apartmentIndex = new AvailabilityIndex<Apartment>();
+			for (Apartment apartment : apartments.values()) {
+				apartmentIndex.update(apartment.getId(), apartment, getApartmentIndexKeys(apartment));
+			}
+		}
+		int state = vacant == true ? APARTMENT_VACANT : APARTMENT_SHARED;
+		List<Apartment> candidates = apartmentIndex.get(AvailabilityIndex
+				.getKey(neighborhoodId >= 0 ? neighborhoodId : AvailabilityIndex.ANY_NEIGHBORHOOD, state));
+		candidates.removeIf(p -> p.isUsable() == false || p.getRemainingPersonCapacity() <= 0);
+		return candidates;
+	}
+
+	/**
+	 * Updates the apartment index after the household of the given apartment
+	 * changes.
+	 * 
+	 * @param apartment
+	 */
+	public void updateApartmentAvailability(Apartment apartment) {
+		if (apartmentIndex != null) {
+			apartmentIndex.update(apartment.getId(), apartment, getApartmentIndexKeys(apartment));
+		}
+	}
+
+	// occupancy states used as keys of the apartment index
+	private static final int APARTMENT_VACANT = 0;
+	private static final int APARTMENT_SHARED = 1;
+
+	private long[] getApartmentIndexKeys(Apartment apartment) {
+		// usability and the family status of members can change without
+		// notice, so they are checked on search
+		int numOfMembers = apartment.getHousehold().getMembers().size();
+		int state;
+		if (numOfMembers == 0) {
+			state = APARTMENT_VACANT;
+		} else if (numOfMembers < apartment.getPersonCapacity()) {
+			state = APARTMENT_SHARED;
+		} else {
+			return new long[0];
+		}
+		return new long[] { AvailabilityIndex.getKey(apartment.getNeighborhoodId(), state),
+				AvailabilityIndex.getKey(AvailabilityIndex.ANY_NEIGHBORHOOD, state) };
+	}
+
 	/**
 	 * Returns all the classrooms whether they are usable or not.
 	 * 
@@ -1501,6 +1750,60 @@ public class WorldModel extends SimState {
 				.collect(Collectors.toList());
 	}
 
+	/**
+	 * Returns unfilled available jobs in the given neighborhood (or in all
+	 * neighborhoods if it is negative) that require the given education level
+	 * or, if acceptLowerEducation is true, a lower one. The jobs are ordered by
+	 * id.
+	 * 
+	 * @param neighborhoodId
+	 * @param educationLevel
+	 * @param acceptLowerEducation
+	 * @return
+	 */
+	public List<Job> getAvailableUnfilledJobs(int neighborhoodId, EducationLevel educationLevel,
+			boolean acceptLowerEducation) {
+		if (unfilledJobIndex == null) {
+			unfilledJobIndex = new AvailabilityIndex<Job>();
+			for (Job job : jobs.values()) {
+				unfilledJobIndex.update(job.getId(), job, getJobIndexKeys(job));
+			}
+		}
+		int nId = neighborhoodId >= 0 ? neighborhoodId : AvailabilityIndex.ANY_NEIGHBORHOOD;
+		List<Long> keys = new ArrayList<Long>();
+		for (EducationLevel level : EducationLevel.values()) {
+			if (level.getValue() == educationLevel.getValue()
+					|| (acceptLowerEducation == true && level.getValue() < educationLevel.getValue())) {
+				keys.add(AvailabilityIndex.getKey(nId, level.getValue()));
+			}
+		}
+		List<Job> candidates = unfilledJobIndex.get(keys.stream().mapToLong(Long::longValue).toArray());
+		candidates.removeIf(p -> p.isAvailable() == false);
+		return candidates;
+	}
+
+	/**
+	 * Updates the job index after the given job is filled or vacated.
+	 * 
+	 * @param job
+	 */
+	public void updateJobAvailability(Job job) {
+		if (unfilledJobIndex != null) {
+			unfilledJobIndex.update(job.getId(), job, getJobIndexKeys(job));
+		}
+	}
+
+	private long[] getJobIndexKeys(Job job) {
+		// usability of workplaces can change without notice, so it is checked
+		// on search
+		if (job.getWorker() != null) {
+			return new long[0];
+		}
+		int education = job.getEducationRequirement().getValue();
+		return new long[] { AvailabilityIndex.getKey(job.getNeighborhoodId(), education),
+				AvailabilityIndex.getKey(AvailabilityIndex.ANY_NEIGHBORHOOD, education) };
+	}
+
 	/**
 	 * Returns all the pubs whether they are available or not.
 	 * 
@@ -1545,17 +1848,112 @@ public class WorldModel extends SimState {
 	}
 
 	public List<Person> getAgentsPoopin() {
-		return this.agents.values().stream()
-				.filter(p -> p.getCurrentUnit() != null
-						&& p.getDefecationNeed().getStatus() == DefecationStatus.JustDefecated)
-				.collect(Collectors.toList());
+		return getAgentsDefecatedAt(schedule.getSteps());
+	}
+
+	/**
+	 * Records that the agent defecated in the current step.
+	 */
+	void agentDefecated(Person agent) {
+		defecatedAgents.add(agent, schedule.getSteps());
 	}
 
+	/**
+	 * @param step
+	 *             only the current step is kept
+	 * @return agents in a unit who defecated at the given step and have not
+	 *         been updated since, in the order of agent ids
+	 */
+	public List<Person> getAgentsDefecatedAt(long step) {
+		List<Person> result = new ArrayList<Person>();
+		for (Person agent : defecatedAgents.get(step)) {
+			if (agent.getCurrentUnit() != null
+					&& agent.getDefecationNeed().getStatus() == DefecationStatus.JustDefecated) {
+				result.add(agent);
+			}
+		}
+		return result;
+	}
+
+	public SewershedAggregator getSewershedAggregator() {
+		return sewershedAggregator;
+	}
+
+	public SewerTransport getSewerTransport() {
+		return sewerTransport;
+	}
+
+	/**
+	 * @return the stepper of agents, or null if agents are scheduled one by
+	 *         one
+	 */
+	public ParallelAgentStepper getAgentStepper() {
+		return agentStepper;
+	}
+
+	public TransmissionStage getTransmissionStage() {
+		return transmissionStage;
+	}
+
+	/**
+	 * @return the state of additional pathogens, null if there is none
+	 */
+	public PathogenStore getPathogenStore() {
+		return pathogenStore;
+	}
+
+	/**
+	 * Keeps the indexes of agents by disease status up to date and records the
+	 * transition for the DiseasesStatus log.
+	 */
+	public void diseaseStatusChanged(final Person agent, final DiseaseStatus status) {
+		agent.defer(() -> {
+			if (status != DiseaseStatus.None) {
+				agentsWithDisease.put(agent.getAgentId(), agent);
+			} else {
+				agentsWithDisease.remove(agent.getAgentId());
+			}
+			diseaseTransitions.add(agent, schedule.getSteps());
+			if (transmissionStage != null) {
+				transmissionStage.update(agent);
+			}
+		});
+	}
+
+	/**
+	 * @return the shedding curve read from params.sheddingCurveFile or the
+	 *         default one
+	 */
+	private SheddingCurve createSheddingCurve() {
+		if (params.sheddingCurveFile != null && params.sheddingCurveFile.isEmpty() == false) {
+			return TableSheddingCurve.load(params.sheddingCurveFile);
+		}
+		return new GammaSheddingCurve();
+	}
+
+	public SheddingCurve getSheddingCurve() {
+		return sheddingCurve;
+	}
+
+	/**
+	 * @return agents with a disease status in the first hour of a day, or only
+	 *         the agents whose status changed in this step if
+	 *         params.writeDiseaseStatusTransitionsOnly is set
+	 */
 	public List<Person> getAgentsDiseases() {
-		return this.agents.values().stream()
-				.filter(p -> p.getModel().getSimulationTime().getHourOfDay() == 0
-						&& p.getInfectiousDisease().getStatus() != DiseaseStatus.None)
-				.collect(Collectors.toList());
+		if (params.writeDiseaseStatusTransitionsOnly) {
+			List<Person> result = new ArrayList<Person>();
+			for (Person agent : diseaseTransitions.get(schedule.getSteps())) {
+				if (agent.getInfectiousDisease().getStatus() != DiseaseStatus.None) {
+					result.add(agent);
+				}
+			}
+			return result;
+		}
+		if (getSimulationTime().getHourOfDay() != 0) {
+			return new ArrayList<Person>();
+		}
+		return new ArrayList<Person>(agentsWithDisease.values());
 	}
 
 	/**
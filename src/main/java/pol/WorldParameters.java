@@ -49,6 +49,19 @@ public class WorldParameters extends AnnotatedPropertied {
 	public static final int NUM_OF_AGENT_INTERESTS = 10;
 	public static final double BASE_RENT_RATE = 500;
 	public static final String DEFAULT_MAPS = "atlanta";
+	public static final String SEWERSHED_SHAPE_FILE = "sewersheds.shp";
+	public static final int SEWERSHED_TIME_BIN_IN_MINUTES = 60;
+	public static final boolean WRITE_POOPIN_EVENTS = true;
+	public static final boolean WRITE_DISEASE_STATUS_TRANSITIONS_ONLY = false;
+	public static final boolean WRITE_COLUMNAR_TABLES = false;
+	public static final int AGENT_STATE_KEYFRAME_PERIOD = 0;
+	public static final String SEWER_SHAPE_FILE = "sewers.shp";
+	public static final double SEWER_FLOW_VELOCITY = 0.6;
+	public static final double SEWER_DECAY_RATE_PER_HOUR = 0.02;
+	public static final double SEWER_FLOW_PER_CAPITA_IN_LITERS_PER_DAY = 200;
+	public static final int SEWER_SAMPLING_INTERVAL_IN_MINUTES = 60;
+	public static final String SHEDDING_CURVE_FILE = "";
+	public static final String ADDITIONAL_PATHOGENS = "";
 
 	// MODEL
 	public static final int BASE_AGENT_AGE = 18;
@@ -62,6 +75,13 @@ public class WorldParameters extends AnnotatedPropertied {
 	public static final int PREPARATION_TIME_IN_MINUTES = 10;
 	public static final boolean SHOW_AGENT_INTEREST_COLOR = false;
 	public static final boolean ENABLE_PRECOMPUTING_PATHS = false;
+	public static final boolean ENABLE_CONTRACTION_HIERARCHY = false;
+	public static final int PATH_CACHE_SIZE_IN_MB = 512;
+	public static final String PATH_CACHE_EVICTION_POLICY = "LRU";
+	public static final boolean USE_PARALLEL_STEPPING = false;
+	public static final int NUM_OF_STEP_THREADS = 1;
+	public static final boolean SKIP_IDLE_AGENT_STEPS = false;
+	public static final boolean USE_TRANSMISSION_STAGE = false;
 	public static final double AGENT_WALKING_SPEED = 1.4;
 	public static final double RES_CHARGE_LOWER_BOUND = 4.0;
 	public static final double RES_CHARGE_UPPER_BOUND = 6.0;
@@ -186,6 +206,23 @@ public class WorldParameters extends AnnotatedPropertied {
 	@EditableProperty(group = "Init", description = "Show agent interest color", lower = "true", upper = "false", readOnly = false)
 	public boolean showAgentInterestColor;
 	public boolean enablePrecomputingPaths;
+	// answer path queries with a contraction hierarchy saved next to the map
+	public boolean enableContractionHierarchy;
+	// memory budget and eviction policy (LRU or LFU) of pre-computed paths
+	public int pathCacheSizeInMB;
+	public String pathCacheEvictionPolicy;
+	// agents are stepped together in a fixed order with their own random
+	// numbers instead of one by one in the schedule, which gives the same
+	// results for any number of threads
+	public boolean useParallelStepping;
+	// number of threads stepping agents when useParallelStepping is enabled
+	public int numOfStepThreads;
+	// agents sleeping at home are stepped cheaply until their state can change,
+	// or not stepped at all until then with useParallelStepping
+	public boolean skipIdleAgentSteps;
+	// infections in units are spread once per step around infectious agents
+	// instead of by every agent satisfying its needs
+	public boolean useTransmissionStage;
 	@EditableProperty(group = "Init", description = "Agent walking speed", lower = "1.0", upper = "3.0", readOnly = false)
 	public double agentWalkingSpeed;
 
@@ -210,6 +247,34 @@ public class WorldParameters extends AnnotatedPropertied {
 	public int maximumSiteVisitLengthInMinutes;
 	public double baseRentRate;
 	public String maps;
+	// sewershed polygons in the map directory used to aggregate pathogen load
+	public String sewershedShapeFile;
+	public int sewershedTimeBinInMinutes;
+	// whether a Poopin row is written per defecation
+	public boolean writePoopinEvents;
+	// DiseasesStatus lists agents whose status changed in a step instead of
+	// all agents in the first hour of every day
+	public boolean writeDiseaseStatusTransitionsOnly;
+	// Checkin, Poopin and DiseasesStatus are written as typed columns (see
+	// ColumnarTableWriter) instead of TSV
+	public boolean writeColumnarTables;
+	// if positive, AgentStates are written as deltas with all agents every
+	// given number of steps (see IterativeLogSchedule and DeltaLogReader)
+	public int agentStateKeyframePeriod;
+	// sewer pipes in the map directory drawn in the direction of the flow
+	public String sewerShapeFile;
+	// meters per second
+	public double sewerFlowVelocity;
+	// first-order decay rate of pathogen load in the sewer
+	public double sewerDecayRatePerHour;
+	public double sewerFlowPerCapitaInLitersPerDay;
+	public int sewerSamplingIntervalInMinutes;
+	// pathogen levels per day of infection (see TableSheddingCurve), the
+	// gamma-like default curve is used if empty
+	public String sheddingCurveFile;
+	// pathogens simulated besides the main disease, separated by ';' (see
+	// Pathogen), e.g. "norovirus,1,3,60,0.05,5"
+	public String additionalPathogens;
 
 	// Network parameters
 	@EditableProperty(group = "Behavior", description = "Focal closure probability", lower = "0.0", upper = "1.0", readOnly = false)
@@ -408,6 +473,19 @@ public class WorldParameters extends AnnotatedPropertied {
 		additionalAgentAgeMax = ADDITIONAL_AGENT_AGE_MAX;
 		baseRentRate = BASE_RENT_RATE;
 		maps = DEFAULT_MAPS;
+		sewershedShapeFile = SEWERSHED_SHAPE_FILE;
+		sewershedTimeBinInMinutes = SEWERSHED_TIME_BIN_IN_MINUTES;
+		writePoopinEvents = WRITE_POOPIN_EVENTS;
+		writeDiseaseStatusTransitionsOnly = WRITE_DISEASE_STATUS_TRANSITIONS_ONLY;
+		writeColumnarTables = WRITE_COLUMNAR_TABLES;
+		agentStateKeyframePeriod = AGENT_STATE_KEYFRAME_PERIOD;
+		sewerShapeFile = SEWER_SHAPE_FILE;
+		sewerFlowVelocity = SEWER_FLOW_VELOCITY;
+		sewerDecayRatePerHour = SEWER_DECAY_RATE_PER_HOUR;
+		sewerFlowPerCapitaInLitersPerDay = SEWER_FLOW_PER_CAPITA_IN_LITERS_PER_DAY;
+		sewerSamplingIntervalInMinutes = SEWER_SAMPLING_INTERVAL_IN_MINUTES;
+		sheddingCurveFile = SHEDDING_CURVE_FILE;
+		additionalPathogens = ADDITIONAL_PATHOGENS;
 
 		maximumAllowedRentalSalaryRatio = MAXIMUM_ALLOWED_RENTAL_SALARY_RATIO;
 		maxDaysToBeHomeless = MAX_DAYS_TO_BE_HOMELESS;
@@ -417,6 +495,13 @@ public class WorldParameters extends AnnotatedPropertied {
 		preparationTimeInMinutes = PREPARATION_TIME_IN_MINUTES;
 		showAgentInterestColor = SHOW_AGENT_INTEREST_COLOR;
 		enablePrecomputingPaths = ENABLE_PRECOMPUTING_PATHS;
+		enableContractionHierarchy = ENABLE_CONTRACTION_HIERARCHY;
+		pathCacheSizeInMB = PATH_CACHE_SIZE_IN_MB;
+		pathCacheEvictionPolicy = PATH_CACHE_EVICTION_POLICY;
+		useParallelStepping = USE_PARALLEL_STEPPING;
+		numOfStepThreads = NUM_OF_STEP_THREADS;
+		skipIdleAgentSteps = SKIP_IDLE_AGENT_STEPS;
+		useTransmissionStage = USE_TRANSMISSION_STAGE;
 		agentWalkingSpeed = AGENT_WALKING_SPEED;
 
 		// disease parameters
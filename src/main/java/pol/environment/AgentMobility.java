@@ -1,16 +1,9 @@
 package pol.environment;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.joda.time.LocalDateTime;
 import org.joda.time.Seconds;
 
-import sim.util.geo.GeomPlanarGraphDirectedEdge;
-import sim.util.geo.GeomPlanarGraphEdge;
-
 import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.linearref.LengthIndexedLine;
 
 import pol.JournalRecord;
 import pol.Person;
@@ -45,8 +38,9 @@ public class AgentMobility implements java.io.Serializable {
 	// How much to move the agent by in each step(); may become negative if
 	// agent is moving from the end to the start of current line.
 	private double moveRate = basemoveRate;
-	// Used by agent to walk along line segment;
-	private transient LengthIndexedLine segment = null;
+	// Used by agent to keep the position on the path without creating
+	// objects
+	private Coordinate position = new Coordinate();
 	double startIndex = 0.0; // start position of current line
 	double endIndex = 0.0; // end position of current line
 	double currentIndex = 0.0; // current location along line
@@ -57,7 +51,7 @@ public class AgentMobility implements java.io.Serializable {
 	private boolean isForward = true; // we don't need to change the path if the
 										// direction of the path is reverse
 
-	ArrayList<GeomPlanarGraphDirectedEdge> path = new ArrayList<GeomPlanarGraphDirectedEdge>(); // path
+	PathGeometry pathGeometry = null; // path
 
 	// to calculate travel distance
 	private LocalDateTime previousTime;
@@ -95,7 +89,8 @@ public class AgentMobility implements java.io.Serializable {
 
 		PrecomputedPath precomputedPath = agent.getModel().getSpatialNetwork()
 				.getPath(travel, savePath);
-		path = precomputedPath.getPath();
+		// per-edge lengths, offsets and road ids are computed once per travel
+		pathGeometry = new PathGeometry(precomputedPath.getPath());
 		currentPathIndex = 0;
 		startIndex = 0.0;
 		isForward = precomputedPath.isForward();
@@ -126,113 +121,57 @@ public class AgentMobility implements java.io.Serializable {
 	public boolean transport() {
 		LocalDateTime currentTime = agent.getSimulationTime();
 		boolean isArrived = true;
-		Coordinate position = null;
-		List<Integer> pass = new ArrayList<>();
 
 		// If the start and end node are identical, we just arrive and don't
 		// need to
 		// calculate
-		if (path.size() > 0) {
+		if (pathGeometry != null && pathGeometry.size() > 0) {
 			// time interval in second
 			double intervalSecond = (double) Seconds.secondsBetween(
 					previousTime, currentTime).getSeconds();
 			// We assume moveRate is speed of agent.
 			// We don't consider about traffic in this logic at this moment.
-			double accumulatedIndex = startIndex;
-			double lengthOfRoad = 0.0;
-			double weight = 1.0;
-			double difference = 0.0;
 			currentIndex += intervalSecond * moveRate * walkingSpeed;
+			int size = pathGeometry.size();
 			int i = currentPathIndex;
+			int firstPassed;
 			if (isForward) {
 				if (startIndex == 0.0)
 					i = 0;
-				for (; i < path.size(); i++) {
+				firstPassed = i;
+				for (; i < size; i++) {
 					currentPathIndex = i;
-					startIndex = accumulatedIndex;
-					// We assume this edge will be GeomPlanarGraphEdge
-					GeomPlanarGraphDirectedEdge dE = path.get(i);
-					GeomPlanarGraphEdge edge = (GeomPlanarGraphEdge) dE
-							.getEdge();
-					// if weight of edge exists, we will consider it.
-					if (edge.hasAttribute("weight")) {
-						weight = edge.getDoubleAttribute("weight");
-						// Simply multiply the length with weight;
-						lengthOfRoad = edge.getLine().getLength() * weight;
-					} else {
-						lengthOfRoad = edge.getLine().getLength();
-					}
-					pass.add(edge.getIntegerAttribute("id"));
-					if (currentIndex < accumulatedIndex + lengthOfRoad) {
+					startIndex = pathGeometry.getForwardOffset(i);
+					if (currentIndex < pathGeometry.getForwardOffset(i + 1)) {
 						// we found the current position in the path
-						segment = new LengthIndexedLine(edge.getLine());
-						if (dE.getEdgeDirection()) {
-							difference = currentIndex - accumulatedIndex;
-							if (edge.hasAttribute("weight")) {
-								difference /= weight;
-							}
-							position = segment.extractPoint(difference);
-						} else {
-							// backward
-							difference = segment.getEndIndex()
-									- (currentIndex - accumulatedIndex);
-							if (edge.hasAttribute("weight")) {
-								difference /= weight;
-							}
-							position = segment.extractPoint(difference);
-						}
+						pathGeometry.extractPoint(i, currentIndex - startIndex,
+								true, position);
 						isArrived = false;
-						agent.writeTrajectoryToFile(pass);
+						agent.writeTrajectoryToFile(pathGeometry.getRoadIds(),
+								firstPassed, i + 1, false);
 						break;
 					}
-					accumulatedIndex += lengthOfRoad;
-					position = path.get(i).getToNode().getCoordinate();
 				}
 			} else {
 				// reverse
 				if (startIndex == 0.0)
-					i = path.size() - 1;
+					i = size - 1;
+				firstPassed = i;
 				for (; i > 0; i--) {
 					currentPathIndex = i;
-					startIndex = accumulatedIndex;
+					startIndex = pathGeometry.getReverseOffset(i);
 					// We assume all edges are bidirectional and each direction
 					// of an edge has the
 					// same weight.
-					GeomPlanarGraphDirectedEdge dE = path.get(i);
-					GeomPlanarGraphEdge edge = (GeomPlanarGraphEdge) dE
-							.getEdge();
-					if (edge.hasAttribute("weight")) {
-						weight = edge.getDoubleAttribute("weight");
-						// Simply multiply the length with weight;
-						lengthOfRoad = edge.getLine().getLength() * weight;
-					} else {
-						lengthOfRoad = edge.getLine().getLength();
-					}
-					pass.add(edge.getIntegerAttribute("id"));
-					if (currentIndex < accumulatedIndex + lengthOfRoad) {
+					if (currentIndex < pathGeometry.getReverseEndOffset(i)) {
 						// we found the current position in the path
-						segment = new LengthIndexedLine(edge.getLine());
-						if (!dE.getEdgeDirection()) {
-							difference = currentIndex - accumulatedIndex;
-							if (edge.hasAttribute("weight")) {
-								difference /= weight;
-							}
-							position = segment.extractPoint(difference);
-						} else {
-							// backward
-							difference = segment.getEndIndex()
-									- (currentIndex - accumulatedIndex);
-							if (edge.hasAttribute("weight")) {
-								difference /= weight;
-							}
-							position = segment.extractPoint(difference);
-						}
+						pathGeometry.extractPoint(i, currentIndex - startIndex,
+								false, position);
 						isArrived = false;
-						agent.writeTrajectoryToFile(pass);
+						agent.writeTrajectoryToFile(pathGeometry.getRoadIds(),
+								i, firstPassed + 1, true);
 						break;
 					}
-					accumulatedIndex += lengthOfRoad;
-					position = path.get(i).getFromNode().getCoordinate();
 				}
 			}
 		}
@@ -240,6 +179,7 @@ public class AgentMobility implements java.io.Serializable {
 		if (isArrived) {
 			// reset currentIndex
 			currentIndex = 0.0;
+			pathGeometry = null;
 			currentPathIndex = 0;
 			startIndex = 0.0;
 
@@ -256,7 +196,11 @@ public class AgentMobility implements java.io.Serializable {
 			// The agent arrived at the destination and current mode will change
 			agent.setCurrentMode(destinationMode);
 			agent.setCurrentUnit(destinationUnit);
-			destinationUnit.agentArrives(agent, plannedVisitLength);
+			// other agents may be stepped at the same time, so the place is
+			// updated after they finish
+			final BuildingUnit unit = destinationUnit;
+			final double visitLength = plannedVisitLength;
+			agent.defer(() -> unit.agentArrives(agent, visitLength));
 
 			agent.moveTo(destinationUnit.getLocation().geometry.getCoordinate());
 			agent.jitter();
@@ -0,0 +1,124 @@
+package pol.environment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * General description_________________________________________________________
+ * An index that keeps items (e.g., unfilled jobs or apartments with room) in
+ * buckets so that searches read only the buckets they are interested in
+ * instead of filtering all items. A bucket key combines a neighborhood id and
+ * an attribute such as an education requirement or an occupancy state. An
+ * item can be in several buckets, e.g. in the bucket of its neighborhood and
+ * in the bucket of all neighborhoods ({@link #ANY_NEIGHBORHOOD}).
+ *
+ * Items are kept sorted by id in each bucket and the results are always in the
+ * order of id, same as iterating over the maps of WorldModel. Hence, random
+ * choices made on the results do not change.
+ *
+ * The owner updates the buckets of an item whenever the state that decides
+ * its buckets changes.
+ */
+public class AvailabilityIndex<T> implements java.io.Serializable {
+	private static final long serialVersionUID = 4474150925963826052L;
+	public static final int ANY_NEIGHBORHOOD = -1;
+	private static final long[] NO_KEYS = new long[0];
+
+	private final Map<Long, TreeMap<Long, T>> buckets;
+	private final Map<Long, long[]> keysOfItems;
+
+	public AvailabilityIndex() {
+		this.buckets = new HashMap<Long, TreeMap<Long, T>>();
+		this.keysOfItems = new HashMap<Long, long[]>();
+	}
+
+	/**
+	 * @return a bucket key of the given neighborhood and attribute
+	 */
+	public static long getKey(int neighborhoodId, int attribute) {
+		return ((long) neighborhoodId << 32) | (attribute & 0xffffffffL);
+	}
+
+	/**
+	 * Puts the item into the given buckets only, removing it from the buckets
+	 * it was in before. If no key is given, the item is removed from the
+	 * index.
+	 */
+	public void update(long id, T item, long... keys) {
+		long[] oldKeys = keysOfItems.get(id);
+		if (oldKeys == null) {
+			oldKeys = NO_KEYS;
+		}
+		for (long key : oldKeys) {
+			if (contains(keys, key) == false) {
+				TreeMap<Long, T> bucket = buckets.get(key);
+				bucket.remove(id);
+				if (bucket.isEmpty()) {
+					buckets.remove(key);
+				}
+			}
+		}
+		for (long key : keys) {
+			if (contains(oldKeys, key) == false) {
+				TreeMap<Long, T> bucket = buckets.get(key);
+				if (bucket == null) {
+					bucket = new TreeMap<Long, T>();
+					buckets.put(key, bucket);
+				}
+				bucket.put(id, item);
+			}
+		}
+		if (keys.length == 0) {
+			keysOfItems.remove(id);
+		} else {
+			keysOfItems.put(id, keys.clone());
+		}
+	}
+
+	public void remove(long id) {
+		update(id, null, NO_KEYS);
+	}
+
+	/**
+	 * @return items in the given buckets ordered by id
+	 */
+	public List<T> get(long... keys) {
+		if (keys.length == 1) {
+			TreeMap<Long, T> bucket = buckets.get(keys[0]);
+			return bucket == null ? new ArrayList<T>() : new ArrayList<T>(bucket.values());
+		}
+		TreeMap<Long, T> merged = new TreeMap<Long, T>();
+		for (long key : keys) {
+			TreeMap<Long, T> bucket = buckets.get(key);
+			if (bucket != null) {
+				merged.putAll(bucket);
+			}
+		}
+		return new ArrayList<T>(merged.values());
+	}
+
+	/**
+	 * @return the number of items in the given bucket
+	 */
+	public int size(long key) {
+		TreeMap<Long, T> bucket = buckets.get(key);
+		return bucket == null ? 0 : bucket.size();
+	}
+
+	public Collection<Long> getKeys() {
+		return buckets.keySet();
+	}
+
+	private static boolean contains(long[] keys, long key) {
+		for (long k : keys) {
+			if (k == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -66,6 +66,8 @@ public abstract class BuildingUnit implements java.io.Serializable {
 	@Skip
 	private Map<Long, Visit> visitMap;
 	@Skip
+	private OccupantSet occupants;
+	@Skip
 	private Map<Long, Double> nearestRestaurantCostMap;
 	@Skip
 	private Map<Long, Double> nearestPubDistanceMap;
@@ -82,6 +84,7 @@ public abstract class BuildingUnit implements java.io.Serializable {
 		this.neighborhoodId = building.getNeighborhoodId();
 		this.visitMap = new TreeMap<Long, Visit>();
 		this.meetingMap = new TreeMap<Long, Meeting>();
+		this.occupants = new OccupantSet();
 		this.meetingIdIndexCounter = 0;
 		this.type = type;
 		// new variable for logging
@@ -100,6 +103,21 @@ public abstract class BuildingUnit implements java.io.Serializable {
 		return agents;
 	}
 
+	/**
+	 * @return agents currently in this unit, used to choose random agents
+	 *         without building a list
+	 */
+	public OccupantSet getOccupants() {
+		if (occupants == null) {
+			// checkpoints written before occupants were kept
+			occupants = new OccupantSet();
+			for (long id : visitMap.keySet()) {
+				occupants.add(model.getAgent(id));
+			}
+		}
+		return occupants;
+	}
+
 	/**
 	 * This method removes the given agent from meetings and visit lists
 	 * 
@@ -112,6 +130,10 @@ public abstract class BuildingUnit implements java.io.Serializable {
 
 		if (visitMap.containsKey(agentId) == true) {
 			visitMap.remove(agentId);
+			getOccupants().remove(agentId);
+			if (model.getTransmissionStage() != null) {
+				model.getTransmissionStage().agentLeaves(this, agentId);
+			}
 		}
 		numOfAgents = visitMap.size();
 	}
@@ -122,6 +144,10 @@ public abstract class BuildingUnit implements java.io.Serializable {
 
 	public void agentArrives(Person agent, double visitLength) {
 		visitMap.put(agent.getAgentId(), new Visit(agent.getSimulationTime(), visitLength));
+		getOccupants().add(agent);
+		if (model.getTransmissionStage() != null) {
+			model.getTransmissionStage().agentArrives(this, agent);
+		}
 		numOfAgents = visitMap.size();
 	}
 
@@ -142,6 +168,10 @@ public abstract class BuildingUnit implements java.io.Serializable {
 			}
 		}
 		visitMap.remove(agent.getAgentId());
+		getOccupants().remove(agent.getAgentId());
+		if (model.getTransmissionStage() != null) {
+			model.getTransmissionStage().agentLeaves(this, agent.getAgentId());
+		}
 		numOfAgents = visitMap.size();
 		numOfVisits++;
 	}
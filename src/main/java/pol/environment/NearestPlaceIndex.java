@@ -0,0 +1,245 @@
+package pol.environment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import sim.util.geo.MasonGeometry;
+
+/**
+ * General description_________________________________________________________
+ * A k-d tree over the locations of building units (e.g., pubs or restaurants)
+ * used for finding the k nearest usable units. Units can be added after the
+ * tree is built; usability is checked while searching so that closing or
+ * reopening a building does not require any update.
+ *
+ * The result is ordered by Euclidean distance and then by unit id, same as
+ * sorting all usable units with SpatialNetwork.getDistance.
+ */
+public class NearestPlaceIndex<T extends BuildingUnit> implements java.io.Serializable {
+	private static final long serialVersionUID = 6064120766395094216L;
+	private static final int LEAF_SIZE = 8;
+
+	private KdNode<T> root;
+	private int size;
+
+	public NearestPlaceIndex(Collection<? extends T> units) {
+		List<Entry<T>> entries = new ArrayList<Entry<T>>(units.size());
+		for (T unit : units) {
+			entries.add(new Entry<T>(unit));
+		}
+		size = entries.size();
+		root = build(entries, 0, entries.size(), 0);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a unit. Its location should be set beforehand.
+	 */
+	public void add(T unit) {
+		Entry<T> entry = new Entry<T>(unit);
+		size++;
+		if (root == null) {
+			root = new KdNode<T>(0);
+		}
+		KdNode<T> node = root;
+		while (true) {
+			node.expand(entry.x, entry.y);
+			if (node.entries != null) {
+				node.entries.add(entry);
+				if (node.entries.size() > LEAF_SIZE * 2) {
+					node.split();
+				}
+				return;
+			}
+			node = entry.coordinate(node.axis) < node.split ? node.left : node.right;
+		}
+	}
+
+	/**
+	 * Returns the k nearest usable units to the given geometry, ordered by
+	 * distance and id.
+	 */
+	public List<T> getNearest(MasonGeometry geom, int k) {
+		Coordinate origin = geom.getGeometry().getCoordinate();
+		// the farthest of the current candidates is at the head
+		PriorityQueue<Candidate<T>> candidates = new PriorityQueue<Candidate<T>>(Math.max(k, 1),
+				Collections.reverseOrder());
+		if (k > 0) {
+			search(root, origin.x, origin.y, k, candidates);
+		}
+		List<Candidate<T>> sorted = new ArrayList<Candidate<T>>(candidates);
+		Collections.sort(sorted);
+		List<T> result = new ArrayList<T>(sorted.size());
+		for (Candidate<T> candidate : sorted) {
+			result.add(candidate.unit);
+		}
+		return result;
+	}
+
+	private void search(KdNode<T> node, double x, double y, int k, PriorityQueue<Candidate<T>> candidates) {
+		if (node == null || node.isEmpty()) {
+			return;
+		}
+		if (candidates.size() == k && node.minDistance(x, y) > candidates.peek().distance) {
+			return;
+		}
+		if (node.entries != null) {
+			for (Entry<T> entry : node.entries) {
+				if (entry.unit.isUsable() == false) {
+					continue;
+				}
+				Candidate<T> candidate = new Candidate<T>(entry.unit, distance(x, y, entry.x, entry.y));
+				if (candidates.size() < k) {
+					candidates.add(candidate);
+				} else if (candidate.compareTo(candidates.peek()) < 0) {
+					candidates.poll();
+					candidates.add(candidate);
+				}
+			}
+			return;
+		}
+		double value = node.axis == 0 ? x : y;
+		if (value < node.split) {
+			search(node.left, x, y, k, candidates);
+			search(node.right, x, y, k, candidates);
+		} else {
+			search(node.right, x, y, k, candidates);
+			search(node.left, x, y, k, candidates);
+		}
+	}
+
+	/**
+	 * Same as SpatialNetwork.getDistance
+	 */
+	private static double distance(double x1, double y1, double x2, double y2) {
+		return Math.sqrt(Math.pow(x1 - x2, 2) + Math.pow(y1 - y2, 2));
+	}
+
+	private static <T extends BuildingUnit> KdNode<T> build(List<Entry<T>> entries, int from, int to, int depth) {
+		KdNode<T> node = new KdNode<T>(depth % 2);
+		for (int i = from; i < to; i++) {
+			node.expand(entries.get(i).x, entries.get(i).y);
+		}
+		if (to - from <= LEAF_SIZE) {
+			node.entries = new ArrayList<Entry<T>>(entries.subList(from, to));
+			return node;
+		}
+		final int axis = node.axis;
+		Collections.sort(entries.subList(from, to), new Comparator<Entry<T>>() {
+			@Override
+			public int compare(Entry<T> o1, Entry<T> o2) {
+				return Double.compare(o1.coordinate(axis), o2.coordinate(axis));
+			}
+		});
+		int middle = (from + to) >>> 1;
+		node.split = entries.get(middle).coordinate(axis);
+		// entries equal to the split value go to the right
+		while (middle > from && entries.get(middle - 1).coordinate(axis) == node.split) {
+			middle--;
+		}
+		if (middle == from) {
+			node.entries = new ArrayList<Entry<T>>(entries.subList(from, to));
+			return node;
+		}
+		node.entries = null;
+		node.left = build(entries, from, middle, depth + 1);
+		node.right = build(entries, middle, to, depth + 1);
+		return node;
+	}
+
+	private static final class Entry<T extends BuildingUnit> implements java.io.Serializable {
+		private static final long serialVersionUID = 1L;
+		final T unit;
+		final double x;
+		final double y;
+
+		Entry(T unit) {
+			Coordinate coord = unit.getLocation().getGeometry().getCoordinate();
+			this.unit = unit;
+			this.x = coord.x;
+			this.y = coord.y;
+		}
+
+		double coordinate(int axis) {
+			return axis == 0 ? x : y;
+		}
+	}
+
+	private static final class KdNode<T extends BuildingUnit> implements java.io.Serializable {
+		private static final long serialVersionUID = 1L;
+		final int axis;
+		double split;
+		KdNode<T> left;
+		KdNode<T> right;
+		// not null for leaves
+		List<Entry<T>> entries;
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+
+		KdNode(int axis) {
+			this.axis = axis;
+			this.entries = new ArrayList<Entry<T>>();
+		}
+
+		boolean isEmpty() {
+			return minX > maxX;
+		}
+
+		void expand(double x, double y) {
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+		}
+
+		/**
+		 * Lower bound of the distance from the given point to any entry in
+		 * this node. It never exceeds the distance computed by distance().
+		 */
+		double minDistance(double x, double y) {
+			double dx = x < minX ? minX - x : (x > maxX ? x - maxX : 0);
+			double dy = y < minY ? minY - y : (y > maxY ? y - maxY : 0);
+			return distance(dx, dy, 0, 0);
+		}
+
+		void split() {
+			List<Entry<T>> all = entries;
+			KdNode<T> node = build(all, 0, all.size(), axis);
+			if (node.entries != null) {
+				return; // all entries have the same coordinate
+			}
+			this.split = node.split;
+			this.left = node.left;
+			this.right = node.right;
+			this.entries = null;
+		}
+	}
+
+	private static final class Candidate<T extends BuildingUnit> implements Comparable<Candidate<T>> {
+		final T unit;
+		final double distance;
+
+		Candidate(T unit, double distance) {
+			this.unit = unit;
+			this.distance = distance;
+		}
+
+		@Override
+		public int compareTo(Candidate<T> o) {
+			if (distance == o.distance)
+				return Long.compare(unit.getId(), o.unit.getId());
+			return Double.compare(distance, o.distance);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package pol.environment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import ec.util.MersenneTwisterFast;
+import pol.Person;
+
+/**
+ * General description_________________________________________________________
+ * The agents currently in a building unit kept in an array, so that an agent
+ * is added or removed in constant time (the last agent takes the place of the
+ * removed one) and random agents can be chosen without looking up ids or
+ * copying and shuffling the whole list.
+ *
+ * Choosing k agents is a partial Fisher-Yates shuffle of the array: only the
+ * first k positions are shuffled and the cost depends on k rather than on the
+ * number of agents. The order of the array changes while choosing, which does
+ * not matter for a set.
+ */
+public class OccupantSet implements java.io.Serializable {
+	private static final long serialVersionUID = -4140591453963092218L;
+	private static final int INITIAL_CAPACITY = 4;
+
+	private Person[] occupants;
+	private int size;
+	// positions of agents in the array
+	private final Map<Long, Integer> positions;
+
+	public OccupantSet() {
+		this.occupants = new Person[INITIAL_CAPACITY];
+		this.size = 0;
+		this.positions = new HashMap<Long, Integer>();
+	}
+
+	public void add(Person agent) {
+		if (positions.containsKey(agent.getAgentId())) {
+			return;
+		}
+		if (size == occupants.length) {
+			Person[] larger = new Person[occupants.length * 2];
+			System.arraycopy(occupants, 0, larger, 0, size);
+			occupants = larger;
+		}
+		occupants[size] = agent;
+		positions.put(agent.getAgentId(), size);
+		size++;
+	}
+
+	public void remove(long agentId) {
+		Integer position = positions.remove(agentId);
+		if (position == null) {
+			return;
+		}
+		size--;
+		if (position != size) {
+			occupants[position] = occupants[size];
+			positions.put(occupants[position].getAgentId(), position);
+		}
+		occupants[size] = null;
+	}
+
+	/**
+	 * @return the agent at the given position, positions change when agents
+	 *         are removed or chosen
+	 */
+	public Person get(int position) {
+		return occupants[position];
+	}
+
+	public boolean contains(Person agent) {
+		return positions.containsKey(agent.getAgentId());
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Chooses up to k agents other than the excluded one without replacement.
+	 *
+	 * @param k
+	 *                 number of agents to choose
+	 * @param excluded
+	 *                 an agent not to choose, e.g. the one who chooses (can be
+	 *                 null)
+	 * @param random
+	 * @return chosen agents in a random order
+	 */
+	public List<Person> sample(int k, Person excluded, MersenneTwisterFast random) {
+		int n = size;
+		Integer position = excluded == null ? null : positions.get(excluded.getAgentId());
+		if (position != null) {
+			swap(position, size - 1);
+			n--;
+		}
+		int count = Math.max(Math.min(k, n), 0);
+		List<Person> result = new ArrayList<Person>(count);
+		for (int i = 0; i < count; i++) {
+			swap(i, i + random.nextInt(n - i));
+			result.add(occupants[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Visits agents other than the excluded one in a random order. Only the
+	 * visited part is shuffled, so a visit ending early costs less than a
+	 * shuffle of all agents. Later changes of the set are not reflected.
+	 *
+	 * @param excluded
+	 *                 an agent not to visit (can be null)
+	 * @param random
+	 */
+	public Iterator<Person> shuffled(Person excluded, MersenneTwisterFast random) {
+		final Person[] copy = new Person[size];
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			if (occupants[i] != excluded) {
+				copy[n++] = occupants[i];
+			}
+		}
+		final int length = n;
+		return new Iterator<Person>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < length;
+			}
+
+			@Override
+			public Person next() {
+				if (next >= length) {
+					throw new NoSuchElementException();
+				}
+				int j = next + random.nextInt(length - next);
+				Person chosen = copy[j];
+				copy[j] = copy[next];
+				copy[next++] = chosen;
+				return chosen;
+			}
+		};
+	}
+
+	private void swap(int i, int j) {
+		if (i == j) {
+			return;
+		}
+		Person temp = occupants[i];
+		occupants[i] = occupants[j];
+		occupants[j] = temp;
+		positions.put(occupants[i].getAgentId(), i);
+		positions.put(occupants[j].getAgentId(), j);
+	}
+}
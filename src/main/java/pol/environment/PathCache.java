@@ -0,0 +1,468 @@
+package pol.environment;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import pol.utils.IndexedAStar;
+
+/**
+ * General description_________________________________________________________
+ * A bounded cache of pre-computed paths. Paths are keyed on the packed ids of
+ * their origin and destination junctions and the cache keeps an estimate of the
+ * memory it uses. When the estimate goes over the budget, paths are evicted
+ * according to the eviction policy (least recently or least frequently used).
+ * An inverted index from edge ids to cached paths is maintained so that the
+ * paths passing an updated edge can be removed without scanning the cache.
+ */
+public class PathCache implements java.io.Serializable {
+	private static final long serialVersionUID = -2871733364196208213L;
+
+	// estimated bytes of a cached path without its edges: PrecomputedPath and
+	// the bookkeeping of this cache (tables, heap)
+	private static final long BYTES_PER_PATH = 120;
+	// reference of a path in the inverted index
+	private static final long BYTES_PER_EDGE_REFERENCE = 8;
+	private static final long EMPTY = -1L;
+
+	public enum EvictionPolicy {
+		LRU, // least recently used
+		LFU // least frequently used, ties broken by recency
+	}
+
+	private final long budget;
+	private final EvictionPolicy policy;
+
+	// open addressing table from packed key to entry slot
+	private long[] tableKeys;
+	private int[] tableSlots;
+
+	// entries
+	private long[] keys;
+	private PrecomputedPath[] paths;
+	private int[] versions;
+	private long[] sizes;
+	private long[] frequencies;
+	private long[] lastAccess;
+	private int[] freeSlots;
+	private int numOfFreeSlots;
+	private int numOfSlots;
+	private int size;
+
+	// eviction order: a binary heap of entry slots
+	private int[] heap;
+	private int[] heapIndex;
+
+	// inverted index: edge id -> (slot << 32 | version) of the paths on it
+	private long[][] edgeEntries;
+	private int[] edgeEntryCount;
+
+	private long usedBytes;
+	// bytes of the encoded edges and of the same edges as lists
+	private long encodedBytes;
+	private long listBytes;
+	private long clock;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	/**
+	 * @param budget
+	 *            maximum number of bytes to be used by cached paths
+	 * @param policy
+	 * @param numOfEdges
+	 *            number of edges of the network (edge ids are in [0,
+	 *            numOfEdges))
+	 */
+	public PathCache(long budget, EvictionPolicy policy, int numOfEdges) {
+		this.budget = budget;
+		this.policy = policy;
+		this.edgeEntries = new long[numOfEdges][];
+		this.edgeEntryCount = new int[numOfEdges];
+		allocate(16);
+	}
+
+	private void allocate(int capacity) {
+		tableKeys = new long[capacity * 2];
+		Arrays.fill(tableKeys, EMPTY);
+		tableSlots = new int[capacity * 2];
+		keys = new long[capacity];
+		paths = new PrecomputedPath[capacity];
+		versions = new int[capacity];
+		sizes = new long[capacity];
+		frequencies = new long[capacity];
+		lastAccess = new long[capacity];
+		freeSlots = new int[capacity];
+		heap = new int[capacity];
+		heapIndex = new int[capacity];
+		numOfFreeSlots = 0;
+		numOfSlots = 0;
+		size = 0;
+	}
+
+	public static long getKey(int from, int to) {
+		return ((long) from << 32) | (to & 0xffffffffL);
+	}
+
+	/**
+	 * @return the cached path or null. A hit is counted if the path exists.
+	 */
+	public PrecomputedPath get(int from, int to) {
+		int slot = find(getKey(from, to));
+		if (slot < 0) {
+			return null;
+		}
+		hits++;
+		frequencies[slot]++;
+		lastAccess[slot] = ++clock;
+		siftDown(heapIndex[slot]);
+		return paths[slot];
+	}
+
+	public boolean contains(int from, int to) {
+		return find(getKey(from, to)) >= 0;
+	}
+
+	/**
+	 * Counts a lookup that was not answered by the cache.
+	 */
+	public void countMiss() {
+		misses++;
+	}
+
+	/**
+	 * Stores a path. Least valuable paths are evicted until the budget is met.
+	 * The edge ids of the path are used for the inverted index.
+	 */
+	public void put(int from, int to, PrecomputedPath path) {
+		long key = getKey(from, to);
+		remove(key);
+		int[] edgeIds = path.getEdgeIds();
+		if (edgeIds == null) {
+			edgeIds = new int[0];
+		}
+		long bytes = BYTES_PER_PATH + path.getEncodedBytes()
+				+ BYTES_PER_EDGE_REFERENCE * edgeIds.length;
+		if (bytes > budget) {
+			return;
+		}
+		while (usedBytes + bytes > budget && size > 0) {
+			removeSlot(heap[0]);
+			evictions++;
+		}
+
+		int slot = newSlot();
+		keys[slot] = key;
+		paths[slot] = path;
+		versions[slot]++;
+		sizes[slot] = bytes;
+		frequencies[slot] = 1;
+		lastAccess[slot] = ++clock;
+		usedBytes += bytes;
+		encodedBytes += path.getEncodedBytes();
+		listBytes += PrecomputedPath.getListBytes(path.size());
+		insertKey(key, slot);
+
+		heap[size] = slot;
+		heapIndex[slot] = size;
+		size++;
+		siftUp(size - 1);
+
+		long ref = ((long) slot << 32) | (versions[slot] & 0xffffffffL);
+		for (int edge : edgeIds) {
+			addEdgeEntry(edge, ref);
+		}
+	}
+
+	/**
+	 * Removes all the paths passing the given edge.
+	 *
+	 * @return packed keys of the removed paths
+	 */
+	public Set<Long> invalidate(int edge) {
+		Set<Long> removed = new HashSet<Long>();
+		if (edge < 0 || edge >= edgeEntries.length || edgeEntries[edge] == null) {
+			return removed;
+		}
+		long[] entries = edgeEntries[edge];
+		int count = edgeEntryCount[edge];
+		edgeEntries[edge] = null;
+		edgeEntryCount[edge] = 0;
+		for (int i = 0; i < count; i++) {
+			int slot = (int) (entries[i] >>> 32);
+			if (isAlive(entries[i])) {
+				removed.add(keys[slot]);
+				removeSlot(slot);
+				invalidations++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Sets the edge table of all the cached paths, e.g. when it was rebuilt
+	 * after a checkpoint.
+	 */
+	public void setEdgeTable(IndexedAStar edgeTable) {
+		for (int i = 0; i < size; i++) {
+			paths[heap[i]].setEdgeTable(edgeTable);
+		}
+	}
+
+	public void clear() {
+		allocate(16);
+		Arrays.fill(edgeEntries, null);
+		Arrays.fill(edgeEntryCount, 0);
+		usedBytes = 0;
+		encodedBytes = 0;
+		listBytes = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getUsedBytes() {
+		return usedBytes;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @return approximate number of bytes saved by storing the edges of the
+	 *         cached paths as encoded edge ids instead of lists of edges
+	 */
+	public long getSavedBytes() {
+		return listBytes - encodedBytes;
+	}
+
+	public EvictionPolicy getPolicy() {
+		return policy;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	public long getInvalidations() {
+		return invalidations;
+	}
+
+	@Override
+	public String toString() {
+		long lookups = hits + misses;
+		double hitRatio = lookups == 0 ? 0 : (double) hits / lookups;
+		return "Path cache (" + policy + "): " + size + " paths, "
+				+ (usedBytes / 1024) + "/" + (budget / 1024) + " KB, hits: "
+				+ hits + ", misses: " + misses + ", hit ratio: "
+				+ Math.round(hitRatio * 10000) / 100.0 + "%, evictions: "
+				+ evictions + ", invalidations: " + invalidations
+				+ ", edges: " + (encodedBytes / 1024) + " KB encoded instead of "
+				+ (listBytes / 1024) + " KB as lists (saved "
+				+ (getSavedBytes() / 1024) + " KB)";
+	}
+
+	private void remove(long key) {
+		int slot = find(key);
+		if (slot >= 0) {
+			removeSlot(slot);
+		}
+	}
+
+	private void removeSlot(int slot) {
+		removeKey(keys[slot]);
+		int index = heapIndex[slot];
+		size--;
+		if (index != size) {
+			int last = heap[size];
+			heap[index] = last;
+			heapIndex[last] = index;
+			siftDown(index);
+			siftUp(heapIndex[last]);
+		}
+		usedBytes -= sizes[slot];
+		encodedBytes -= paths[slot].getEncodedBytes();
+		listBytes -= PrecomputedPath.getListBytes(paths[slot].size());
+		paths[slot] = null;
+		// outdates the references in the inverted index
+		versions[slot]++;
+		freeSlots[numOfFreeSlots++] = slot;
+	}
+
+	private boolean isAlive(long ref) {
+		int slot = (int) (ref >>> 32);
+		return paths[slot] != null && versions[slot] == (int) ref;
+	}
+
+	private void addEdgeEntry(int edge, long ref) {
+		if (edge < 0 || edge >= edgeEntries.length) {
+			return;
+		}
+		long[] entries = edgeEntries[edge];
+		int count = edgeEntryCount[edge];
+		if (entries == null) {
+			entries = new long[4];
+			edgeEntries[edge] = entries;
+		} else if (count == entries.length) {
+			// drop references to removed paths before growing
+			int alive = 0;
+			for (int i = 0; i < count; i++) {
+				if (isAlive(entries[i])) {
+					entries[alive++] = entries[i];
+				}
+			}
+			count = alive;
+			if (count > entries.length / 2) {
+				entries = Arrays.copyOf(entries, entries.length * 2);
+				edgeEntries[edge] = entries;
+			}
+		}
+		entries[count++] = ref;
+		edgeEntryCount[edge] = count;
+	}
+
+	private int newSlot() {
+		if (numOfFreeSlots > 0) {
+			return freeSlots[--numOfFreeSlots];
+		}
+		if (numOfSlots == keys.length) {
+			grow();
+		}
+		return numOfSlots++;
+	}
+
+	private void grow() {
+		int capacity = keys.length * 2;
+		keys = Arrays.copyOf(keys, capacity);
+		paths = Arrays.copyOf(paths, capacity);
+		versions = Arrays.copyOf(versions, capacity);
+		sizes = Arrays.copyOf(sizes, capacity);
+		frequencies = Arrays.copyOf(frequencies, capacity);
+		lastAccess = Arrays.copyOf(lastAccess, capacity);
+		freeSlots = Arrays.copyOf(freeSlots, capacity);
+		heap = Arrays.copyOf(heap, capacity);
+		heapIndex = Arrays.copyOf(heapIndex, capacity);
+
+		long[] oldKeys = tableKeys;
+		int[] oldSlots = tableSlots;
+		tableKeys = new long[capacity * 2];
+		Arrays.fill(tableKeys, EMPTY);
+		tableSlots = new int[capacity * 2];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				insertKey(oldKeys[i], oldSlots[i]);
+			}
+		}
+	}
+
+	// Hash table (linear probing)___________________________________________
+
+	private int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 33) & (tableKeys.length - 1);
+	}
+
+	private int find(long key) {
+		int i = hash(key);
+		while (tableKeys[i] != EMPTY) {
+			if (tableKeys[i] == key) {
+				return tableSlots[i];
+			}
+			i = (i + 1) & (tableKeys.length - 1);
+		}
+		return -1;
+	}
+
+	private void insertKey(long key, int slot) {
+		int i = hash(key);
+		while (tableKeys[i] != EMPTY) {
+			i = (i + 1) & (tableKeys.length - 1);
+		}
+		tableKeys[i] = key;
+		tableSlots[i] = slot;
+	}
+
+	private void removeKey(long key) {
+		int mask = tableKeys.length - 1;
+		int i = hash(key);
+		while (tableKeys[i] != key) {
+			if (tableKeys[i] == EMPTY) {
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		// backward shift deletion
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (tableKeys[j] == EMPTY) {
+				break;
+			}
+			int k = hash(tableKeys[j]);
+			if ((i <= j) ? (i < k && k <= j) : (i < k || k <= j)) {
+				continue;
+			}
+			tableKeys[i] = tableKeys[j];
+			tableSlots[i] = tableSlots[j];
+			i = j;
+		}
+		tableKeys[i] = EMPTY;
+	}
+
+	// Eviction heap________________________________________________________
+
+	/**
+	 * @return true if slot a should be evicted before slot b
+	 */
+	private boolean before(int a, int b) {
+		if (policy == EvictionPolicy.LFU && frequencies[a] != frequencies[b]) {
+			return frequencies[a] < frequencies[b];
+		}
+		return lastAccess[a] < lastAccess[b];
+	}
+
+	private void siftUp(int i) {
+		int slot = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(slot, heap[parent])) {
+				break;
+			}
+			heap[i] = heap[parent];
+			heapIndex[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = slot;
+		heapIndex[slot] = i;
+	}
+
+	private void siftDown(int i) {
+		int slot = heap[i];
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && before(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!before(heap[child], slot)) {
+				break;
+			}
+			heap[i] = heap[child];
+			heapIndex[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = slot;
+		heapIndex[slot] = i;
+	}
+}
@@ -0,0 +1,167 @@
+package pol.environment;
+
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import sim.util.geo.GeomPlanarGraphDirectedEdge;
+import sim.util.geo.GeomPlanarGraphEdge;
+
+/**
+ * General description_________________________________________________________
+ * Per-edge geometry of a path that an agent travels on. The weighted length,
+ * road id, direction and line coordinates of each edge as well as the
+ * cumulative offsets in both travel directions are computed once when the
+ * travel begins, so that the position of the agent can be found on each step
+ * without reading edge attributes or creating objects.
+ *
+ * Offsets are accumulated in the order the edges are passed, which is the same
+ * order the lengths were summed up during the travel before, hence positions
+ * are identical.
+ */
+public class PathGeometry implements java.io.Serializable {
+	private static final long serialVersionUID = -5310405716452830139L;
+
+	private final int size;
+	private final int[] roadIds;
+	// weighted length of edges
+	private final double[] lengths;
+	private final double[] weights;
+	private final boolean[] isWeighted;
+	private final boolean[] edgeDirections;
+	private final Coordinate[][] lines;
+	private final double[] lineLengths;
+	// forwardOffsets[i] is the sum of lengths of edges 0..i-1
+	private final double[] forwardOffsets;
+	// reverseOffsets[i] is the sum of lengths of edges size-1..i+1
+	private final double[] reverseOffsets;
+
+	public PathGeometry(List<GeomPlanarGraphDirectedEdge> path) {
+		size = path.size();
+		roadIds = new int[size];
+		lengths = new double[size];
+		weights = new double[size];
+		isWeighted = new boolean[size];
+		edgeDirections = new boolean[size];
+		lines = new Coordinate[size][];
+		lineLengths = new double[size];
+		forwardOffsets = new double[size + 1];
+		reverseOffsets = new double[Math.max(size, 1)];
+
+		for (int i = 0; i < size; i++) {
+			// We assume this edge will be GeomPlanarGraphEdge
+			GeomPlanarGraphDirectedEdge dE = path.get(i);
+			GeomPlanarGraphEdge edge = (GeomPlanarGraphEdge) dE.getEdge();
+			lineLengths[i] = edge.getLine().getLength();
+			// if weight of edge exists, we will consider it.
+			if (edge.hasAttribute("weight")) {
+				isWeighted[i] = true;
+				weights[i] = edge.getDoubleAttribute("weight");
+				// Simply multiply the length with weight;
+				lengths[i] = lineLengths[i] * weights[i];
+			} else {
+				weights[i] = 1.0;
+				lengths[i] = lineLengths[i];
+			}
+			roadIds[i] = edge.getIntegerAttribute("id");
+			edgeDirections[i] = dE.getEdgeDirection();
+			lines[i] = edge.getLine().getCoordinates();
+		}
+
+		for (int i = 0; i < size; i++) {
+			forwardOffsets[i + 1] = forwardOffsets[i] + lengths[i];
+		}
+		for (int i = size - 1; i > 0; i--) {
+			reverseOffsets[i - 1] = reverseOffsets[i] + lengths[i];
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int[] getRoadIds() {
+		return roadIds;
+	}
+
+	public double getForwardOffset(int i) {
+		return forwardOffsets[i];
+	}
+
+	public double getReverseOffset(int i) {
+		return reverseOffsets[i];
+	}
+
+	/**
+	 * @return sum of weighted lengths of edges i..size-1 passed in the reverse
+	 *         order, i.e. the offset at the end of edge i
+	 */
+	public double getReverseEndOffset(int i) {
+		return reverseOffsets[i] + lengths[i];
+	}
+
+	/**
+	 * Finds the coordinate on edge i after moving the given (weighted)
+	 * distance on it.
+	 *
+	 * @param i
+	 * @param distance
+	 *            distance from where the agent entered the edge
+	 * @param isForward
+	 *            whether the edge is passed in the forward order of the path
+	 * @param target
+	 *            coordinate to be set
+	 */
+	public void extractPoint(int i, double distance, boolean isForward,
+			Coordinate target) {
+		double difference;
+		if (edgeDirections[i] == isForward) {
+			difference = distance;
+		} else {
+			// backward
+			difference = lineLengths[i] - distance;
+		}
+		if (isWeighted[i]) {
+			difference /= weights[i];
+		}
+		extractPoint(lines[i], lineLengths[i], difference, target);
+	}
+
+	/**
+	 * Same as LengthIndexedLine.extractPoint for a line string, except that the
+	 * result is written into the given coordinate.
+	 */
+	private static void extractPoint(Coordinate[] line, double lineLength,
+			double index, Coordinate target) {
+		double forwardLength = index;
+		if (index < 0.0) {
+			forwardLength = lineLength + index;
+		}
+		if (forwardLength <= 0.0) {
+			target.setCoordinate(line[0]);
+			return;
+		}
+		double totalLength = 0.0;
+		for (int v = 0; v < line.length - 1; v++) {
+			Coordinate p0 = line[v];
+			Coordinate p1 = line[v + 1];
+			double segmentLength = p1.distance(p0);
+			if (totalLength + segmentLength > forwardLength) {
+				double fraction = (forwardLength - totalLength) / segmentLength;
+				if (fraction <= 0.0) {
+					target.setCoordinate(p0);
+				} else if (fraction >= 1.0) {
+					target.setCoordinate(p1);
+				} else {
+					target.x = (p1.x - p0.x) * fraction + p0.x;
+					target.y = (p1.y - p0.y) * fraction + p0.y;
+					target.z = (p1.z - p0.z) * fraction + p0.z;
+				}
+				return;
+			}
+			totalLength += segmentLength;
+		}
+		// the index is longer than the line
+		target.setCoordinate(line[line.length - 1]);
+	}
+}
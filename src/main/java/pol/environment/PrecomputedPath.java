@@ -1,19 +1,37 @@
 package pol.environment;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
+import pol.utils.IndexedAStar;
 import sim.util.geo.GeomPlanarGraphDirectedEdge;
 
 /**
  * General description_________________________________________________________
  * This class is used to store pre-computed paths for fast access later.
  * 
+ * The edges of a path are stored as indexes into the edge table of the walkway
+ * network (see {@link IndexedAStar#getEdge(int)}) instead of a list of edge
+ * objects. When it makes the path smaller, the indexes are delta encoded and
+ * packed as variable length integers.
+ * 
  * @author Hamdi Kavak (hkavak at gmu.edu)
  * 
  */
 public class PrecomputedPath implements java.io.Serializable {
 	private static final long serialVersionUID = 5586993133673885356L;
+	// approximate sizes of an empty ArrayList with its backing array
+	private static final long LIST_OVERHEAD_BYTES = 40;
+	private static final long BYTES_PER_REFERENCE = 4;
+	private static final long ARRAY_OVERHEAD_BYTES = 16;
+
+	private transient IndexedAStar edgeTable;
+	// only one of them is used
+	private int[] edgeIds;
+	private byte[] packedEdgeIds;
+	// used when the path has edges that are not in the edge table
 	private ArrayList<GeomPlanarGraphDirectedEdge> path;
+	private int size;
 	private double length;
 	private boolean isForward;
 
@@ -21,16 +39,106 @@ public class PrecomputedPath implements java.io.Serializable {
 
 	}
 
+	public PrecomputedPath(IndexedAStar edgeTable) {
+		this.edgeTable = edgeTable;
+	}
+
+	/**
+	 * Sets the edge table the edge indexes refer to, which is not saved in
+	 * checkpoints.
+	 */
+	public void setEdgeTable(IndexedAStar edgeTable) {
+		this.edgeTable = edgeTable;
+	}
+
+	/**
+	 * Returns the edges of this path. The list is decoded on demand.
+	 */
 	public ArrayList<GeomPlanarGraphDirectedEdge> getPath() {
-		return path;
+		if (path != null || (edgeIds == null && packedEdgeIds == null)) {
+			return path;
+		}
+		int[] ids = getEdgeIds();
+		ArrayList<GeomPlanarGraphDirectedEdge> edges = new ArrayList<GeomPlanarGraphDirectedEdge>(
+				ids.length);
+		for (int i = 0; i < ids.length; i++) {
+			edges.add(edgeTable.getEdge(ids[i]));
+		}
+		return edges;
 	}
 
 	public void setPath(ArrayList<GeomPlanarGraphDirectedEdge> path) {
-		this.path = path;
+		this.edgeIds = null;
+		this.packedEdgeIds = null;
+		this.path = null;
+		this.size = path == null ? 0 : path.size();
+		if (path == null || edgeTable == null) {
+			this.path = path;
+			return;
+		}
+		int[] ids = new int[path.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = edgeTable.getEdgeId(path.get(i));
+			if (ids[i] < 0) {
+				this.path = path;
+				return;
+			}
+		}
+		setEdgeIds(ids);
+	}
+
+	/**
+	 * Stores the given edge indexes, packed if it saves memory.
+	 */
+	public void setEdgeIds(int[] ids) {
+		this.path = null;
+		this.size = ids.length;
+		byte[] packed = pack(ids);
+		if (packed.length < ids.length * 4) {
+			this.packedEdgeIds = packed;
+			this.edgeIds = null;
+		} else {
+			this.packedEdgeIds = null;
+			this.edgeIds = ids;
+		}
+	}
+
+	/**
+	 * @return indexes of the edges of this path in the edge table or null if
+	 *         the path is not encoded
+	 */
+	public int[] getEdgeIds() {
+		if (edgeIds != null) {
+			return edgeIds.clone();
+		}
+		if (packedEdgeIds != null) {
+			return unpack(packedEdgeIds, size);
+		}
+		return null;
+	}
+
+	public int size() {
+		return size;
 	}
 
 	public boolean contains(GeomPlanarGraphDirectedEdge edge) {
-		return path.contains(edge);
+		if (path != null) {
+			return path.contains(edge);
+		}
+		if (edgeTable == null) {
+			return false;
+		}
+		int id = edgeTable.getEdgeId(edge);
+		int[] ids = getEdgeIds();
+		if (id < 0 || ids == null) {
+			return false;
+		}
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] == id) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	public boolean isForward() {
@@ -49,4 +157,64 @@ public class PrecomputedPath implements java.io.Serializable {
 		this.length = length;
 	}
 
+	/**
+	 * @return approximate number of bytes used for the edges of this path
+	 */
+	public long getEncodedBytes() {
+		if (packedEdgeIds != null) {
+			return ARRAY_OVERHEAD_BYTES + packedEdgeIds.length;
+		}
+		if (edgeIds != null) {
+			return ARRAY_OVERHEAD_BYTES + 4L * edgeIds.length;
+		}
+		return getListBytes(size);
+	}
+
+	/**
+	 * @return approximate number of bytes an ArrayList of the given number of
+	 *         edges uses
+	 */
+	public static long getListBytes(int numOfEdges) {
+		return LIST_OVERHEAD_BYTES + BYTES_PER_REFERENCE * numOfEdges;
+	}
+
+	/**
+	 * Zigzag encoded deltas written as variable length integers (7 bits per
+	 * byte).
+	 */
+	private static byte[] pack(int[] ids) {
+		byte[] buffer = new byte[ids.length * 5];
+		int position = 0;
+		int previous = 0;
+		for (int i = 0; i < ids.length; i++) {
+			int delta = ids[i] - previous;
+			previous = ids[i];
+			int value = (delta << 1) ^ (delta >> 31);
+			while ((value & ~0x7f) != 0) {
+				buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			buffer[position++] = (byte) value;
+		}
+		return Arrays.copyOf(buffer, position);
+	}
+
+	private static int[] unpack(byte[] packed, int size) {
+		int[] ids = new int[size];
+		int position = 0;
+		int previous = 0;
+		for (int i = 0; i < size; i++) {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = packed[position++];
+				value |= (b & 0x7f) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			previous += (value >>> 1) ^ -(value & 1);
+			ids[i] = previous;
+		}
+		return ids;
+	}
 }
@@ -0,0 +1,371 @@
+package pol.environment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.planargraph.Edge;
+import com.vividsolutions.jts.planargraph.Node;
+
+import pol.LifeStatus;
+import pol.PathogenStore;
+import pol.Person;
+import pol.WorldModel;
+import pol.WorldParameters;
+import pol.log.ExtLogger;
+import pol.utils.GeometryIndex;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim.util.geo.GeomPlanarGraph;
+import sim.util.geo.GeomPlanarGraphEdge;
+import sim.util.geo.MasonGeometry;
+
+/**
+ * General description_________________________________________________________
+ * Transports the pathogen load of defecations through the sewer network to
+ * the sampling points, which are the outfalls of the network (e.g., treatment
+ * plants). A load enters the sewer at the node nearest to the building unit of
+ * the agent and flows downstream along the pipes. The time to reach a sampling
+ * point is the sum of pipe lengths over the flow velocity, and the load decays
+ * in the meantime with a first-order rate.
+ *
+ * Travel times and decayed fractions from every node to the sampling points
+ * downstream are computed once. In a step, loads are summed per entry node and
+ * then added to a ring buffer of each sampling point at the step they arrive,
+ * so the cost depends on the number of nodes receiving loads and the number of
+ * steps rather than the number of defecations.
+ *
+ * At the end of every sampling interval one row per sampling point is
+ * produced:
+ *
+ * time (start of the interval), sampling point, X, Y, pathogen load arrived,
+ * concentration (load per liter of wastewater of the population served at
+ * the end of the interval), followed by the load and the concentration of
+ * each additional pathogen, if any
+ */
+public class SewerTransport implements Steppable {
+	private static final long serialVersionUID = -1810470318843207781L;
+	private final static ExtLogger logger = ExtLogger.create(SewerTransport.class);
+	public static final String HEADER = "time\tsamplingPoint\tx\ty\tpathogenLoad\tconcentration";
+	private static final double MINUTES_PER_DAY = 24 * 60;
+
+	private final Coordinate[] nodes;
+	private final GeometryIndex<Integer> nodeIndex;
+	private final int[] samplingPoints;
+	// sampling points downstream of a node, steps to reach them and fractions
+	// of the load remaining after decay
+	private final int[][] targets;
+	private final int[][] delays;
+	private final double[][] fractions;
+	private final int stepsPerInterval;
+	private final double litersPerCapitaPerDay;
+	private final PathogenStore pathogenStore;
+
+	// loads of the main disease (0) and of additional pathogens (1 and more)
+	// in-flight loads of each sampling point indexed by the arrival step
+	// modulo the length of the buffer
+	private final double[][][] inFlight;
+	private final double[][] loads;
+	private final double[][] nodeLoads;
+	private final int[] loadedNodes;
+	private final boolean[] isLoaded;
+	private int numOfLoadedNodes;
+	private final double[] population;
+	private final Map<Long, Integer> nodesOfUnits;
+	private String intervalStartTime;
+	private List<String> rows;
+
+	/**
+	 * @param network
+	 *                pipes drawn in the direction of the flow
+	 * @param model
+	 *                the model whose agents are already placed
+	 */
+	public SewerTransport(GeomPlanarGraph network, WorldModel model) {
+		WorldParameters params = model.params;
+		int minutePerStep = model.getMinutePerStep();
+		// intervals are made of whole steps
+		this.stepsPerInterval = Math.max(
+				(int) Math.round((double) params.sewerSamplingIntervalInMinutes / minutePerStep), 1);
+		if (stepsPerInterval * minutePerStep != params.sewerSamplingIntervalInMinutes) {
+			logger.warn("Sewer sampling interval of " + params.sewerSamplingIntervalInMinutes
+					+ " minutes is not a multiple of the step. " + stepsPerInterval * minutePerStep
+					+ " minutes are used instead.");
+		}
+		this.litersPerCapitaPerDay = params.sewerFlowPerCapitaInLitersPerDay;
+		this.pathogenStore = model.getPathogenStore();
+		int numOfChannels = 1 + (pathogenStore == null ? 0 : pathogenStore.getNumberOfPathogens());
+
+		// number nodes in the order of the graph
+		Map<Node, Integer> ids = new IdentityHashMap<Node, Integer>();
+		List<Coordinate> coordinates = new ArrayList<Coordinate>();
+		for (Iterator<?> it = network.nodeIterator(); it.hasNext();) {
+			Node node = (Node) it.next();
+			ids.put(node, coordinates.size());
+			coordinates.add(node.getCoordinate());
+		}
+		this.nodes = coordinates.toArray(new Coordinate[coordinates.size()]);
+
+		// the first pipe starting at a node is the one its flow takes
+		int[] downstream = new int[nodes.length];
+		double[] minutesToDownstream = new double[nodes.length];
+		boolean[] hasInflow = new boolean[nodes.length];
+		boolean[] hasIgnoredPipes = new boolean[nodes.length];
+		Arrays.fill(downstream, -1);
+		for (Iterator<?> it = network.edgeIterator(); it.hasNext();) {
+			Edge edge = (Edge) it.next();
+			LineString line = ((GeomPlanarGraphEdge) edge).getLine();
+			Node from = edge.getDirEdge(0).getFromNode();
+			Node to = edge.getDirEdge(0).getToNode();
+			if (from.getCoordinate().equals2D(line.getCoordinateN(0)) == false) {
+				Node temp = from;
+				from = to;
+				to = temp;
+			}
+			int source = ids.get(from);
+			int target = ids.get(to);
+			if (downstream[source] < 0 && source != target) {
+				downstream[source] = target;
+				minutesToDownstream[source] = line.getLength() / params.sewerFlowVelocity / 60.0;
+				hasInflow[target] = true;
+			} else if (source != target) {
+				hasIgnoredPipes[source] = true;
+			}
+		}
+
+		int[] samplingPointOfNode = new int[nodes.length];
+		List<Integer> outfalls = new ArrayList<Integer>();
+		for (int i = 0; i < nodes.length; i++) {
+			samplingPointOfNode[i] = -1;
+			if (downstream[i] < 0 && hasInflow[i]) {
+				samplingPointOfNode[i] = outfalls.size();
+				outfalls.add(i);
+			}
+		}
+		this.samplingPoints = new int[outfalls.size()];
+		for (int i = 0; i < samplingPoints.length; i++) {
+			samplingPoints[i] = outfalls.get(i);
+		}
+
+		this.targets = new int[nodes.length][];
+		this.delays = new int[nodes.length][];
+		this.fractions = new double[nodes.length][];
+		double decayRatePerMinute = params.sewerDecayRatePerHour / 60.0;
+		int maxDelay = 0;
+		boolean[] visited = new boolean[nodes.length];
+		List<Integer> path = new ArrayList<Integer>();
+		for (int i = 0; i < nodes.length; i++) {
+			List<int[]> found = new ArrayList<int[]>();
+			List<Double> decayed = new ArrayList<Double>();
+			double minutes = 0;
+			int current = i;
+			path.clear();
+			while (current >= 0 && visited[current] == false) {
+				visited[current] = true;
+				path.add(current);
+				if (samplingPointOfNode[current] >= 0) {
+					int delay = (int) Math.round(minutes / minutePerStep);
+					found.add(new int[] { samplingPointOfNode[current], delay });
+					decayed.add(Math.exp(-decayRatePerMinute * minutes));
+					maxDelay = Math.max(maxDelay, delay);
+				}
+				minutes += minutesToDownstream[current];
+				current = downstream[current];
+			}
+			for (int node : path) {
+				visited[node] = false;
+			}
+			targets[i] = new int[found.size()];
+			delays[i] = new int[found.size()];
+			fractions[i] = new double[found.size()];
+			for (int j = 0; j < found.size(); j++) {
+				targets[i][j] = found.get(j)[0];
+				delays[i][j] = found.get(j)[1];
+				fractions[i][j] = decayed.get(j);
+			}
+		}
+
+		int numOfIgnoringNodes = 0;
+		int numOfUnsampledNodes = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			if (hasIgnoredPipes[i] == true) {
+				numOfIgnoringNodes++;
+			}
+			if (targets[i].length == 0) {
+				numOfUnsampledNodes++;
+			}
+		}
+		if (numOfIgnoringNodes > 0) {
+			logger.warn(numOfIgnoringNodes + " sewer nodes have more than one outgoing pipe. "
+					+ "Only the first pipe of each is followed.");
+		}
+		if (numOfUnsampledNodes > 0) {
+			logger.warn(numOfUnsampledNodes + " of " + nodes.length + " sewer nodes reach no sampling point "
+					+ "(e.g., isolated nodes or cycles). Loads entering the sewer there are dropped.");
+		}
+
+		GeometryFactory factory = new GeometryFactory();
+		final Point[] points = new Point[nodes.length];
+		List<Integer> indexes = new ArrayList<Integer>(nodes.length);
+		for (int i = 0; i < nodes.length; i++) {
+			points[i] = factory.createPoint(nodes[i]);
+			indexes.add(i);
+		}
+		this.nodeIndex = new GeometryIndex<Integer>(indexes, i -> points[i],
+				(i, from) -> points[i].distance(from.getGeometry()));
+
+		this.inFlight = new double[numOfChannels][samplingPoints.length][maxDelay + 1];
+		this.loads = new double[numOfChannels][samplingPoints.length];
+		this.nodeLoads = new double[numOfChannels][nodes.length];
+		this.loadedNodes = new int[nodes.length];
+		this.isLoaded = new boolean[nodes.length];
+		this.population = new double[samplingPoints.length];
+		this.nodesOfUnits = new HashMap<Long, Integer>();
+		this.rows = new ArrayList<String>();
+		updatePopulation(model);
+	}
+
+	/**
+	 * @return the header of rows including the additional pathogens
+	 */
+	public String getHeader() {
+		StringBuilder header = new StringBuilder(HEADER);
+		for (int c = 1; c < loads.length; c++) {
+			String name = pathogenStore.getPathogen(c - 1).getName();
+			header.append("\tpathogenLoad_").append(name).append("\tconcentration_").append(name);
+		}
+		return header.toString();
+	}
+
+	/**
+	 * Counts the population served by each sampling point from the shelters of
+	 * alive agents, which change as agents move and die.
+	 */
+	private void updatePopulation(WorldModel model) {
+		Arrays.fill(population, 0);
+		for (Person agent : model.getAgents()) {
+			if (agent.getLifeStatus() == LifeStatus.Alive && agent.getShelter() != null) {
+				for (int target : targets[getNode(agent.getShelter())]) {
+					population[target]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the sewer node nearest to the given unit
+	 */
+	private int getNode(BuildingUnit unit) {
+		Integer node = nodesOfUnits.get(unit.getId());
+		if (node == null) {
+			node = nodeIndex.nearest(unit.getLocation());
+			nodesOfUnits.put(unit.getId(), node);
+		}
+		return node;
+	}
+
+	@Override
+	public void step(SimState state) {
+		WorldModel model = (WorldModel) state;
+		long steps = model.schedule.getSteps();
+		if (intervalStartTime == null) {
+			long intervalStartStep = steps - steps % stepsPerInterval;
+			intervalStartTime = model.params.initialSimulationTime
+					.plusMinutes((int) (intervalStartStep * model.getMinutePerStep()))
+					.toString(ISODateTimeFormat.dateTimeNoMillis());
+		}
+
+		for (Person agent : model.getAgentsPoopin()) {
+			int node = getNode(agent.getCurrentUnit());
+			if (isLoaded[node] == false) {
+				isLoaded[node] = true;
+				loadedNodes[numOfLoadedNodes++] = node;
+			}
+			nodeLoads[0][node] += agent.getInfectiousDisease().getPathogenLevel();
+			for (int c = 1; c < nodeLoads.length; c++) {
+				nodeLoads[c][node] += pathogenStore.getPathogenLevel(c - 1, agent.getAgentId());
+			}
+		}
+
+		// send loads downstream
+		int length = samplingPoints.length > 0 ? inFlight[0][0].length : 1;
+		for (int i = 0; i < numOfLoadedNodes; i++) {
+			int node = loadedNodes[i];
+			for (int j = 0; j < targets[node].length; j++) {
+				int arrival = (int) ((steps + delays[node][j]) % length);
+				for (int c = 0; c < nodeLoads.length; c++) {
+					inFlight[c][targets[node][j]][arrival] += nodeLoads[c][node] * fractions[node][j];
+				}
+			}
+			for (int c = 0; c < nodeLoads.length; c++) {
+				nodeLoads[c][node] = 0;
+			}
+			isLoaded[node] = false;
+		}
+		numOfLoadedNodes = 0;
+
+		// loads arriving at this step
+		int slot = (int) (steps % length);
+		for (int c = 0; c < loads.length; c++) {
+			for (int i = 0; i < samplingPoints.length; i++) {
+				loads[c][i] += inFlight[c][i][slot];
+				inFlight[c][i][slot] = 0;
+			}
+		}
+
+		if ((steps + 1) % stepsPerInterval == 0) {
+			updatePopulation(model);
+			closeInterval(model.getMinutePerStep());
+		}
+	}
+
+	private void closeInterval(int minutePerStep) {
+		double days = stepsPerInterval * minutePerStep / MINUTES_PER_DAY;
+		for (int i = 0; i < samplingPoints.length; i++) {
+			Coordinate coordinate = nodes[samplingPoints[i]];
+			double liters = population[i] * litersPerCapitaPerDay * days;
+			StringBuilder row = new StringBuilder();
+			row.append(intervalStartTime).append("\t").append(i).append("\t").append(coordinate.x).append("\t")
+					.append(coordinate.y);
+			for (int c = 0; c < loads.length; c++) {
+				double concentration = liters > 0 ? loads[c][i] / liters : 0;
+				row.append("\t").append(loads[c][i]).append("\t").append(concentration);
+			}
+			rows.add(row.toString());
+		}
+		for (double[] values : loads) {
+			Arrays.fill(values, 0);
+		}
+		intervalStartTime = null;
+	}
+
+	/**
+	 * @return rows of the intervals closed since the last call
+	 */
+	public List<String> pollRows() {
+		List<String> result = rows;
+		rows = new ArrayList<String>();
+		return result;
+	}
+
+	public int getNumberOfSamplingPoints() {
+		return samplingPoints.length;
+	}
+
+	/**
+	 * @return the location of the given sampling point
+	 */
+	public MasonGeometry getSamplingPoint(int samplingPoint) {
+		return new MasonGeometry(new GeometryFactory().createPoint(nodes[samplingPoints[samplingPoint]]));
+	}
+}
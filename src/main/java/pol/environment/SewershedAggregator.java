@@ -0,0 +1,172 @@
+package pol.environment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import pol.PathogenStore;
+import pol.Person;
+import pol.WorldModel;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+
+/**
+ * General description_________________________________________________________
+ * Aggregates the pathogen load of defecations per sewershed and per time bin
+ * within the simulation, so that the wastewater signal of a catchment does not
+ * need to be computed from the Poopin log afterwards. Each defecation is mapped
+ * to the catchment covering the location of the agent and its pathogen level
+ * is added to the arrays of the current bin. When a bin is over, one row per
+ * catchment is produced:
+ *
+ * time (start of the bin), sewershed id, number of defecations, pathogen load
+ *
+ * followed by the pathogen load of each additional pathogen, if any.
+ * Defecations outside all catchments are reported with the id -1 if there are
+ * any. The rows are taken by the log channel with {@link #pollRows()}. The
+ * last bin is closed by {@link #flush()} when the simulation finishes, even if
+ * it is not over.
+ */
+public class SewershedAggregator implements Steppable {
+	private static final long serialVersionUID = 3021795046117512896L;
+	public static final String HEADER = "time\tsewershedId\tevents\tpathogenLoad";
+
+	private final SewershedIndex index;
+	private final int stepsPerBin;
+	private final PathogenStore pathogenStore;
+	// the last element is for defecations outside all catchments
+	private final double[] loads;
+	private final int[] events;
+	// [additional pathogen][catchment]
+	private final double[][] pathogenLoads;
+	private String binStartTime;
+	private List<String> rows;
+
+	public SewershedAggregator(SewershedIndex index, int stepsPerBin) {
+		this(index, stepsPerBin, null);
+	}
+
+	/**
+	 * @param pathogenStore
+	 *                      additional pathogens whose loads are also aggregated
+	 *                      (can be null)
+	 */
+	public SewershedAggregator(SewershedIndex index, int stepsPerBin, PathogenStore pathogenStore) {
+		this.index = index;
+		this.stepsPerBin = Math.max(stepsPerBin, 1);
+		this.pathogenStore = pathogenStore;
+		this.loads = new double[index.size() + 1];
+		this.events = new int[index.size() + 1];
+		int numOfPathogens = pathogenStore == null ? 0 : pathogenStore.getNumberOfPathogens();
+		this.pathogenLoads = new double[numOfPathogens][index.size() + 1];
+		this.rows = new ArrayList<String>();
+	}
+
+	/**
+	 * @return the header of rows including the additional pathogens
+	 */
+	public String getHeader() {
+		StringBuilder header = new StringBuilder(HEADER);
+		for (int p = 0; p < pathogenLoads.length; p++) {
+			header.append("\tpathogenLoad_").append(pathogenStore.getPathogen(p).getName());
+		}
+		return header.toString();
+	}
+
+	@Override
+	public void step(SimState state) {
+		WorldModel model = (WorldModel) state;
+		long steps = model.schedule.getSteps();
+		if (binStartTime == null) {
+			binStartTime = getBinStartTime(model, steps);
+		}
+		for (Person agent : model.getAgentsPoopin()) {
+			int catchment = add(agent.getLocation().getGeometry().getCoordinate(),
+					agent.getInfectiousDisease().getPathogenLevel());
+			for (int p = 0; p < pathogenLoads.length; p++) {
+				pathogenLoads[p][catchment] += pathogenStore.getPathogenLevel(p, agent.getAgentId());
+			}
+		}
+		if ((steps + 1) % stepsPerBin == 0) {
+			closeBin();
+		}
+	}
+
+	/**
+	 * Adds the pathogen load of a defecation at the given location to the
+	 * current bin.
+	 *
+	 * @return the index of the catchment in the arrays
+	 */
+	public int add(Coordinate location, double pathogenLevel) {
+		int catchment = index.locate(location);
+		if (catchment == SewershedIndex.OUTSIDE) {
+			catchment = loads.length - 1;
+		}
+		loads[catchment] += pathogenLevel;
+		events[catchment]++;
+		return catchment;
+	}
+
+	/**
+	 * Closes the current bin if it has started, e.g. the last bin of a
+	 * simulation that finishes before the bin is over.
+	 */
+	public void flush() {
+		if (binStartTime != null) {
+			closeBin();
+		}
+	}
+
+	private void closeBin() {
+		for (int i = 0; i < index.size(); i++) {
+			rows.add(binStartTime + "\t" + index.getId(i) + "\t" + events[i] + "\t" + loads[i]
+					+ getPathogenLoads(i));
+		}
+		int outside = loads.length - 1;
+		if (events[outside] > 0) {
+			rows.add(binStartTime + "\t" + SewershedIndex.OUTSIDE + "\t" + events[outside] + "\t" + loads[outside]
+					+ getPathogenLoads(outside));
+		}
+		Arrays.fill(loads, 0);
+		Arrays.fill(events, 0);
+		for (double[] values : pathogenLoads) {
+			Arrays.fill(values, 0);
+		}
+		binStartTime = null;
+	}
+
+	private String getPathogenLoads(int catchment) {
+		if (pathogenLoads.length == 0) {
+			return "";
+		}
+		StringBuilder values = new StringBuilder();
+		for (double[] pathogenLoad : pathogenLoads) {
+			values.append("\t").append(pathogenLoad[catchment]);
+		}
+		return values.toString();
+	}
+
+	private String getBinStartTime(WorldModel model, long steps) {
+		long binStartStep = steps - steps % stepsPerBin;
+		return model.params.initialSimulationTime.plusMinutes((int) (binStartStep * model.getMinutePerStep()))
+				.toString(ISODateTimeFormat.dateTimeNoMillis());
+	}
+
+	/**
+	 * @return rows of the bins closed since the last call
+	 */
+	public List<String> pollRows() {
+		List<String> result = rows;
+		rows = new ArrayList<String>();
+		return result;
+	}
+
+	public SewershedIndex getIndex() {
+		return index;
+	}
+}
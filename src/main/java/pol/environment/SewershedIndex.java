@@ -0,0 +1,98 @@
+package pol.environment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+import sim.field.geo.GeomVectorField;
+import sim.util.geo.MasonGeometry;
+
+/**
+ * General description_________________________________________________________
+ * A spatial index of sewershed (or manhole catchment) polygons used to find
+ * the catchment a location drains into. Polygons are packed into an STR-tree
+ * and the candidates whose bounding boxes contain the location are tested with
+ * prepared geometries.
+ *
+ * Catchments are numbered from 0 in the order of the layer. If polygons
+ * overlap, the one with the lowest number is returned.
+ */
+public class SewershedIndex implements java.io.Serializable {
+	private static final long serialVersionUID = -5329137853061850712L;
+	private static final String ID_ATTRIBUTE = "id";
+	public static final int OUTSIDE = -1;
+
+	private final List<Geometry> geometries;
+	private final int[] ids;
+	// neither is serializable, so they are rebuilt after a checkpoint is read
+	private transient STRtree tree;
+	private transient PreparedGeometry[] prepared;
+	private transient GeometryFactory factory;
+
+	/**
+	 * @param layer
+	 *              sewershed polygons. The integer attribute "id" is used as
+	 *              the id of a catchment if it exists, otherwise its number.
+	 */
+	public SewershedIndex(GeomVectorField layer) {
+		this.geometries = new ArrayList<Geometry>(layer.getGeometries().size());
+		this.ids = new int[layer.getGeometries().size()];
+		for (Object obj : layer.getGeometries()) {
+			MasonGeometry geo = (MasonGeometry) obj;
+			int index = geometries.size();
+			ids[index] = geo.hasAttribute(ID_ATTRIBUTE) ? geo.getIntegerAttribute(ID_ATTRIBUTE) : index;
+			geometries.add(geo.getGeometry());
+		}
+	}
+
+	public int size() {
+		return geometries.size();
+	}
+
+	/**
+	 * @return the id of the catchment with the given number
+	 */
+	public int getId(int catchment) {
+		return ids[catchment];
+	}
+
+	/**
+	 * @return the number of the catchment covering the given location, or
+	 *         {@link #OUTSIDE}
+	 */
+	public int locate(Coordinate coordinate) {
+		if (tree == null) {
+			build();
+		}
+		Point point = factory.createPoint(coordinate);
+		int result = OUTSIDE;
+		for (Object obj : tree.query(new Envelope(coordinate))) {
+			int index = (Integer) obj;
+			if ((result == OUTSIDE || index < result) && prepared[index].covers(point)) {
+				result = index;
+			}
+		}
+		return result;
+	}
+
+	private void build() {
+		factory = new GeometryFactory();
+		prepared = new PreparedGeometry[geometries.size()];
+		STRtree tree = new STRtree();
+		for (int i = 0; i < geometries.size(); i++) {
+			Geometry geometry = geometries.get(i);
+			prepared[i] = PreparedGeometryFactory.prepare(geometry);
+			tree.insert(geometry.getEnvelopeInternal(), i);
+		}
+		tree.build();
+		this.tree = tree;
+	}
+}
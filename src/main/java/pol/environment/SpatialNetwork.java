@@ -17,20 +17,22 @@ import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 
-import org.apache.commons.collections4.MapIterator;
 import org.apache.commons.collections4.keyvalue.MultiKey;
-import org.apache.commons.collections4.map.MultiKeyMap;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.planargraph.Node;
 
 import pol.WorldModel;
 import pol.utils.AStar;
+import pol.utils.ContractionHierarchy;
 import pol.utils.GeoUtils;
+import pol.utils.GeometryIndex;
+import pol.utils.IndexedAStar;
 import sim.field.geo.GeomVectorField;
 import sim.io.geo.ShapeFileImporter;
 import sim.util.geo.GeomPlanarGraph;
 import sim.util.geo.GeomPlanarGraphDirectedEdge;
+import sim.util.geo.GeomPlanarGraphEdge;
 import sim.util.geo.MasonGeometry;
 
 /**
@@ -44,18 +46,28 @@ import sim.util.geo.MasonGeometry;
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class SpatialNetwork implements java.io.Serializable {
 	private static final long serialVersionUID = 3481862190046428709L;
-	private static final double OFFSET_DIST = 60.0;
-	private MultiKeyMap preComputedPaths;
+	private PathCache preComputedPaths;
 	private GeomPlanarGraph walkwayNetwork;
+	// not serializable, rebuilt from the walkway network on restore
+	private transient IndexedAStar pathFinder;
+	private transient ContractionHierarchy contractionHierarchy;
+	// whether getPath uses the contraction hierarchy, which is reloaded on
+	// restore
+	private boolean isContractionHierarchyEnabled;
+	private URL walkwayShapeFileURL;
 	private GeomVectorField walkwayLayer;
 	private GeomVectorField buildingLayer;
 	private GeomVectorField buildingUnitLayer;
 	private GeomVectorField bombLayer;
+	private GeomVectorField sewershedLayer;
+	private GeomVectorField sewerLayer;
+	private GeomPlanarGraph sewerNetwork;
+	// nearest neighbor index of the walkway layer
+	private GeometryIndex<MasonGeometry> walkwayIndex;
 	private Map<Integer, List<MasonGeometry>> buildingUnitTable;
 	private Map<MultiKey, MasonGeometry> nearestJunctionTable;
 
 	public SpatialNetwork(int width, int height) {
-		preComputedPaths = new MultiKeyMap();
 		walkwayLayer = new GeomVectorField(width, height);
 		buildingLayer = new GeomVectorField(width, height);
 		buildingUnitLayer = new GeomVectorField(width, height);
@@ -64,6 +76,30 @@ public class SpatialNetwork implements java.io.Serializable {
 		walkwayNetwork = new GeomPlanarGraph();
 	}
 
+	/**
+	 * Creates a network sharing the layers, indexes and walkway network of a
+	 * loaded one so that models run together (see EnsembleRunner) load the
+	 * maps once. Pre-computed paths and nearest junctions change during a run,
+	 * so they are kept per network. Road manipulations change the edges of the
+	 * shared walkway network; a model manipulating roads needs its own one.
+	 */
+	public SpatialNetwork(SpatialNetwork network) {
+		walkwayNetwork = network.walkwayNetwork;
+		pathFinder = network.pathFinder;
+		contractionHierarchy = network.contractionHierarchy;
+		isContractionHierarchyEnabled = network.isContractionHierarchyEnabled;
+		walkwayShapeFileURL = network.walkwayShapeFileURL;
+		walkwayLayer = network.walkwayLayer;
+		buildingLayer = network.buildingLayer;
+		buildingUnitLayer = network.buildingUnitLayer;
+		sewershedLayer = network.sewershedLayer;
+		sewerLayer = network.sewerLayer;
+		sewerNetwork = network.sewerNetwork;
+		walkwayIndex = network.walkwayIndex;
+		buildingUnitTable = network.buildingUnitTable;
+		nearestJunctionTable = new HashMap<MultiKey, MasonGeometry>();
+	}
+
 	/*
 	 * If running from jar extract the resources from JAR
 	 */
@@ -155,6 +191,7 @@ public class SpatialNetwork implements java.io.Serializable {
 			URL geometry = Paths.get(walkwayPath).toUri().toURL();
 			System.out.println(geometry);
 			ShapeFileImporter.read(geometry, walkwayLayer);
+			walkwayShapeFileURL = geometry;
 
 			String buildingPath = base + buildingShapeFilePath;
 			geometry = Paths.get(buildingPath).toUri().toURL();
@@ -171,6 +208,7 @@ public class SpatialNetwork implements java.io.Serializable {
 			URL geometry = WorldModel.class.getResource(walkwayShapeFilePath);
 			System.out.println(geometry);
 			ShapeFileImporter.read(geometry, walkwayLayer);
+			walkwayShapeFileURL = geometry;
 
 			geometry = WorldModel.class.getResource(buildingShapeFilePath);
 			System.out.println(geometry);
@@ -183,8 +221,113 @@ public class SpatialNetwork implements java.io.Serializable {
 		}
 
 		createBuildingUnitTable();
+		walkwayIndex = GeometryIndex.create(walkwayLayer);
 
 		walkwayNetwork.createFromGeomField(walkwayLayer);
+		// nodes are indexed once so that A* can search on primitive arrays
+		pathFinder = new IndexedAStar(walkwayNetwork);
+	}
+
+	/**
+	 * Rebuilds what is not saved in checkpoints. Node and edge ids of the path
+	 * finder only depend on the walkway network, so they match the ones of
+	 * the pre-computed paths and of a saved contraction hierarchy.
+	 */
+	public void awakeFromCheckpoint() {
+		pathFinder = new IndexedAStar(walkwayNetwork);
+		preComputedPaths.setEdgeTable(pathFinder);
+		if (isContractionHierarchyEnabled) {
+			loadContractionHierarchy();
+		}
+	}
+
+	/**
+	 * Reads the sewershed polygons from the map directory, next to the walkway
+	 * shapefile. The layer is optional.
+	 * 
+	 * @return false if there is no such shapefile
+	 */
+	public boolean loadSewershedLayer(String directory, String sewershedShapeFile) {
+		sewershedLayer = readOptionalLayer(directory, sewershedShapeFile);
+		return sewershedLayer != null;
+	}
+
+	/**
+	 * Reads the sewer pipes from the map directory and builds the sewer
+	 * network the same way as the walkway network. Pipes are expected to be
+	 * drawn in the direction of the flow. The layer is optional.
+	 * 
+	 * @return false if there is no such shapefile
+	 */
+	public boolean loadSewerNetwork(String directory, String sewerShapeFile) {
+		sewerLayer = readOptionalLayer(directory, sewerShapeFile);
+		if (sewerLayer == null) {
+			sewerNetwork = null;
+			return false;
+		}
+		sewerNetwork = new GeomPlanarGraph();
+		sewerNetwork.createFromGeomField(sewerLayer);
+		return true;
+	}
+
+	private GeomVectorField readOptionalLayer(String directory, String shapeFile) {
+		String shapeFilePath = "/" + directory + "/" + shapeFile;
+		try {
+			URL codeBase = WorldModel.class.getProtectionDomain().getCodeSource()
+					.getLocation();
+			URL geometry;
+			if (codeBase.getPath().endsWith(".jar")) {
+				// extracted by loadMapLayers
+				String base = Paths.get("").toAbsolutePath().toString();
+				File file = Paths.get(base + shapeFilePath).toFile();
+				geometry = file.exists() ? file.toURI().toURL() : null;
+			} else {
+				geometry = WorldModel.class.getResource(shapeFilePath);
+			}
+			if (geometry == null) {
+				System.out.println("No optional shapefile: " + shapeFilePath);
+				return null;
+			}
+			System.out.println("Reading shapefile: " + geometry);
+			GeomVectorField layer = new GeomVectorField(walkwayLayer.fieldWidth, walkwayLayer.fieldHeight);
+			ShapeFileImporter.read(geometry, layer);
+			return layer;
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * (Re)creates the cache of pre-computed paths with the given memory budget
+	 * in bytes. The model creates it once the network is loaded or copied.
+	 */
+	public void createPathCache(long budget, PathCache.EvictionPolicy policy) {
+		preComputedPaths = new PathCache(budget, policy,
+				pathFinder.getNumberOfEdges());
+	}
+
+	/**
+	 * Builds the contraction hierarchy of the walkway network or reads it from
+	 * the file next to the walkway shapefile (e.g. walkways.ch) if it was built
+	 * for the same network before. Once loaded, getPath uses it instead of A*.
+	 */
+	public void loadContractionHierarchy() {
+		File file = null;
+		try {
+			if (walkwayShapeFileURL != null
+					&& "file".equals(walkwayShapeFileURL.getProtocol())) {
+				File shapeFile = new File(walkwayShapeFileURL.toURI());
+				String name = shapeFile.getName().replaceFirst("\\.shp$", "")
+						+ ".ch";
+				file = new File(shapeFile.getParentFile(), name);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		contractionHierarchy = ContractionHierarchy.loadOrBuild(pathFinder,
+				file);
+		isContractionHierarchyEnabled = true;
 	}
 
 	private void createBuildingUnitTable() {
@@ -210,52 +353,47 @@ public class SpatialNetwork implements java.io.Serializable {
 		MultiKey origin = getNearestKey(travel.getOrigin());
 		MultiKey destination = getNearestKey(travel.getDestination());
 
-		MultiKey fromTo = getKey(origin, destination);
-		MultiKey toFrom = getKey(destination, origin);
-
-		if (preComputedPaths.containsKey(fromTo) == true) { // if this route has
-															// already been
-															// generated
-			path = (PrecomputedPath) preComputedPaths.get(fromTo);
+		// For simplicity, we assume that the geometry returned by
+		// findNearestGeometry method is a line string.
+		// Also, we assume that the first coordinate will be one of node in
+		// the spatial network.
+		MasonGeometry startPoint = nearestJunctionTable.get(origin);
+		Node startNode = walkwayNetwork.findNode(startPoint.getGeometry()
+				.getCoordinates()[0]);
+		MasonGeometry endPoint = nearestJunctionTable.get(destination);
+		Node endNode = walkwayNetwork.findNode(endPoint.getGeometry()
+				.getCoordinates()[0]);
+		int from = startNode == null ? -1 : pathFinder.getNodeId(startNode);
+		int to = endNode == null ? -1 : pathFinder.getNodeId(endNode);
+		boolean isCacheable = from >= 0 && to >= 0;
+
+		PrecomputedPath cached = null;
+		if (isCacheable && (cached = preComputedPaths.get(from, to)) != null) {
+			// if this route has already been generated
+			path = cached;
 			path.setForward(true);
-		} else if (preComputedPaths.containsKey(toFrom) == true) { // if this
-																	// route has
-																	// already
-																	// been
-																	// generated
-																	// but in
-																	// the
-																	// reverse
-																	// order
-			path = (PrecomputedPath) preComputedPaths.get(toFrom);
+		} else if (isCacheable
+				&& (cached = preComputedPaths.get(to, from)) != null) {
+			// if this route has already been generated but in the reverse
+			// order
+			path = cached;
 			path.setForward(false);
 		} else { // this origin-destination pair was not seen before. let's
 					// generate the shortest path and store it.
+			preComputedPaths.countMiss();
+			// edges are stored as indexes into the edge table of the network
+			path = new PrecomputedPath(pathFinder);
 
-			// System.out.println("Path to be generated.");
-			// double t = System.currentTimeMillis();
-
-			MasonGeometry startPoint = nearestJunctionTable.get(origin);
-			// For simplicity, we assume that the geometry returned by
-			// findNearestGeometry
-			// method is a line string
-			// Also, we assume that the first coordinate will be one of node in
-			// the spatial
-			// network.
-			Node startNode = walkwayNetwork.findNode(startPoint.getGeometry()
-					.getCoordinates()[0]);
-			MasonGeometry endPoint = nearestJunctionTable.get(destination);
-			Node endNode = walkwayNetwork.findNode(endPoint.getGeometry()
-					.getCoordinates()[0]);
-			// System.out.print("Nearest time: " + (System.currentTimeMillis() -
-			// t));
-
-			AStar algorithm = new AStar();
 			// find a path
 			// NOTE: if the network is not a connected graph, the path can be
 			// empty.
-			ArrayList<GeomPlanarGraphDirectedEdge> pathToReturn = algorithm
-					.astarPath(startNode, endNode);
+			ArrayList<GeomPlanarGraphDirectedEdge> pathToReturn;
+			if (contractionHierarchy != null) {
+				pathToReturn = contractionHierarchy.shortestPath(startNode,
+						endNode);
+			} else {
+				pathToReturn = pathFinder.astarPath(startNode, endNode);
+			}
 			// System.out.println(", AStar computing time: " +
 			// (System.currentTimeMillis() - t));
 
@@ -275,16 +413,12 @@ public class SpatialNetwork implements java.io.Serializable {
 			path.setPath(pathToReturn);
 			path.setForward(true);
 
-			if (savePath == true) {
+			if (savePath == true && isCacheable) {
 				// store the path
-				this.preComputedPaths.put(fromTo, path);
+				this.preComputedPaths.put(from, to, path);
 			}
 		}
 
-		if (path.getPath() == null) {
-			System.out.println("Path is null");
-		}
-
 		return path;
 	}
 
@@ -296,8 +430,7 @@ public class SpatialNetwork implements java.io.Serializable {
 			nearest = nearestJunctionTable.get(key);
 			return getKey(nearest);
 		}
-		// To optimize NN, we use initial distance
-		nearest = GeoUtils.findNearestGeometry(geo, walkwayLayer, OFFSET_DIST);
+		nearest = GeoUtils.findNearestGeometry(geo, walkwayIndex);
 		key = getKey(nearest);
 
 		nearestJunctionTable.put(key, nearest);
@@ -389,32 +522,39 @@ public class SpatialNetwork implements java.io.Serializable {
 	 * Clears all the pre-computed paths
 	 */
 	public void clearPrecomputedPaths() {
-		MapIterator iter = preComputedPaths.mapIterator();
-
-		while (iter.hasNext()) {
-			iter.next();
-			iter.remove();
-		}
-		/*
-		 * preComputedPaths.clear();
-		 * preComputedPaths = null;
-		 */
-		preComputedPaths = new MultiKeyMap();
+		preComputedPaths.clear();
 	}
 
 	/**
 	 * Remove all paths containing a given edge.
 	 * 
 	 * @param edge
+	 * @return packed junction ids (see PathCache.getKey) of removed paths
 	 */
 	public Set update(GeomPlanarGraphDirectedEdge edge) {
+		if (contractionHierarchy != null) {
+			// the hierarchy keeps the weights it was built with
+			System.out.println(
+					"Edge is updated. Contraction hierarchy is disabled.");
+			contractionHierarchy = null;
+			isContractionHierarchyEnabled = false;
+		}
+		return preComputedPaths.invalidate(pathFinder.getEdgeId(edge));
+	}
+
+	/**
+	 * Remove all paths containing either direction of a given road.
+	 * 
+	 * @param edge
+	 */
+	public Set update(GeomPlanarGraphEdge edge) {
 		Set removeList = new HashSet();
-		for (Object obj : preComputedPaths.keySet()) {
-			PrecomputedPath path = (PrecomputedPath) preComputedPaths.get(obj);
-			if (path.contains(edge))
-				removeList.add(obj);
+		for (int i = 0; i < 2; i++) {
+			if (edge.getDirEdge(i) instanceof GeomPlanarGraphDirectedEdge) {
+				removeList.addAll(update(
+						(GeomPlanarGraphDirectedEdge) edge.getDirEdge(i)));
+			}
 		}
-		removeList.forEach(o -> preComputedPaths.remove(o));
 		return removeList;
 	}
 
@@ -422,6 +562,14 @@ public class SpatialNetwork implements java.io.Serializable {
 		return walkwayNetwork;
 	}
 
+	public IndexedAStar getPathFinder() {
+		return pathFinder;
+	}
+
+	public GeometryIndex<MasonGeometry> getWalkwayIndex() {
+		return walkwayIndex;
+	}
+
 	public GeomVectorField getWalkwayLayer() {
 		return walkwayLayer;
 	}
@@ -434,11 +582,32 @@ public class SpatialNetwork implements java.io.Serializable {
 		return buildingUnitLayer;
 	}
 
+	/**
+	 * @return sewershed polygons or null if they are not loaded
+	 */
+	public GeomVectorField getSewershedLayer() {
+		return sewershedLayer;
+	}
+
+	/**
+	 * @return sewer pipes or null if they are not loaded
+	 */
+	public GeomVectorField getSewerLayer() {
+		return sewerLayer;
+	}
+
+	/**
+	 * @return the network of sewer pipes or null if it is not loaded
+	 */
+	public GeomPlanarGraph getSewerNetwork() {
+		return sewerNetwork;
+	}
+
 	public Map<Integer, List<MasonGeometry>> getBuildingUnitTable() {
 		return buildingUnitTable;
 	}
 
-	public MultiKeyMap getPreComputedPaths() {
+	public PathCache getPreComputedPaths() {
 		return preComputedPaths;
 	}
 
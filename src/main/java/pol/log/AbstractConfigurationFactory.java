@@ -45,6 +45,8 @@ public abstract class AbstractConfigurationFactory extends ConfigurationFactory
 		loggerBuilder = builder.newRootLogger(Level.ALL);
 		loggerBuilder.add(builder.newAppenderRef("Stdout").addAttribute("level", Level.INFO));
 
+		boolean routing = ReservedLogChannels.isRouting();
+		boolean asyncChannels = AsyncLogChannels.isEnabled();
 		Level[] levels = Level.values();
 		Arrays.sort(levels, new Comparator<Level>() {
 			@Override
@@ -58,12 +60,22 @@ public abstract class AbstractConfigurationFactory extends ConfigurationFactory
 			Setting params = getSetting(lv);
 			if ((lv.compareTo(Level.TRACE) > 0 || lv.compareTo(Level.INFO) == 0)
 					&& lv.intLevel() != Integer.MAX_VALUE && params != null) {
-				appenderBuilder = builder.newAppender(lv.name(), params.outputType).addAttribute("fileName",
-						params.fileName());
+				// data channels are written by a background thread if enabled
+				boolean async = asyncChannels && lv.compareTo(Level.INFO) != 0;
+				String writerName = async ? lv.name() + "Writer" : lv.name();
+				if (routing) {
+					// one appender per run directory, created on the first event
+					appenderBuilder = builder.newAppender(lv.name() + "Run", params.outputType)
+							.addAttribute("fileName", params.routedFileName());
+				} else {
+					appenderBuilder = builder.newAppender(writerName, params.outputType).addAttribute("fileName",
+							params.fileName());
+				}
 				if (params.outputType.equals("File")) {
 					// nothing to do
 				} else if (params.outputType.equals("RollingFile")) {
-					appenderBuilder.addAttribute("filePattern", params.filePattern());
+					appenderBuilder.addAttribute("filePattern",
+							routing ? params.routedFilePattern() : params.filePattern());
 					comBuilder = builder.newComponent("Policies").addComponent(builder
 							.newComponent("SizeBasedTriggeringPolicy").addAttribute("size", params.size + " MB"));
 					appenderBuilder.addComponent(comBuilder);
@@ -71,16 +83,42 @@ public abstract class AbstractConfigurationFactory extends ConfigurationFactory
 							.addComponent(builder.newComponent("DefaultRolloverStrategy").addAttribute("max", "1000"));
 				}
 				appenderBuilder.addAttribute("append", "false");
+				if (async) {
+					// flushed by the background thread when its queue becomes empty
+					appenderBuilder.addAttribute("immediateFlush", false);
+					appenderBuilder.addAttribute("bufferedIO", true);
+					appenderBuilder.addAttribute("bufferSize", AsyncLogChannels.FILE_BUFFER_SIZE);
+				}
 				if (lv.compareTo(Level.INFO) == 0) {
 					appenderBuilder
 							.add(builder.newLayout("PatternLayout").addAttribute("pattern", "[%p] %c %M - %msg%n"));
 				} else {
 					appenderBuilder.add(builder.newLayout("PatternLayout").addAttribute("pattern", "%msg%n"));
-					appenderBuilder.add(builder.newFilter("ThresholdFilter", Filter.Result.DENY, Filter.Result.NEUTRAL)
-							.addAttribute("Level", levels[i - 1].name()));
+					if (async == false) {
+						appenderBuilder.add(builder.newFilter("ThresholdFilter", Filter.Result.DENY,
+								Filter.Result.NEUTRAL).addAttribute("Level", levels[i - 1].name()));
+					}
 				}
 
-				builder.add(appenderBuilder);
+				if (routing) {
+					AppenderComponentBuilder routingBuilder = builder.newAppender(writerName, "Routing");
+					routingBuilder.addComponent(builder.newComponent("Routes")
+							.addAttribute("pattern", "$${ctx:" + ReservedLogChannels.LOG_RUN_DIRECTORY_KEY + "}")
+							.addComponent(builder.newComponent("Route").addComponent(appenderBuilder)));
+					builder.add(routingBuilder);
+				} else {
+					builder.add(appenderBuilder);
+				}
+				if (async) {
+					// events of other levels are filtered out before they are queued
+					AppenderComponentBuilder asyncBuilder = builder.newAppender(lv.name(), "Async")
+							.addAttribute("bufferSize", AsyncLogChannels.getQueueSize())
+							.addAttribute("blocking", true);
+					asyncBuilder.addComponent(builder.newAppenderRef(writerName));
+					asyncBuilder.add(builder.newFilter("ThresholdFilter", Filter.Result.DENY, Filter.Result.NEUTRAL)
+							.addAttribute("Level", levels[i - 1].name()));
+					builder.add(asyncBuilder);
+				}
 				loggerBuilder.add(builder.newAppenderRef(lv.name()).addAttribute("level", lv.name()));
 			}
 		}
@@ -17,15 +17,35 @@ public abstract class AbstractFormatter implements OutputFormatter,
 	private Supplier<String> suffix;
 
 	public String print(Object value) {
-		String text = format(value);
+		String text = printWithoutPrefix(value);
 		String tmp;
 		if (prefix != null && (tmp = prefix.get()) != null)
 			text = tmp + text;
+		return text;
+	}
+
+	/**
+	 * @return the text of the value followed by the suffix, i.e. print(value)
+	 *         without printPrefix()
+	 */
+	public String printWithoutPrefix(Object value) {
+		String text = format(value);
+		String tmp;
 		if (suffix != null && (tmp = suffix.get()) != null)
 			text += tmp;
 		return text;
 	}
 
+	/**
+	 * @return the current prefix, or an empty string if there is none
+	 */
+	public String printPrefix() {
+		String tmp;
+		if (prefix != null && (tmp = prefix.get()) != null)
+			return tmp;
+		return "";
+	}
+
 	protected abstract String format(Object value);
 
 	public Supplier<String> getPrefix() {
@@ -0,0 +1,153 @@
+package pol.log;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AbstractOutputStreamAppender;
+import org.apache.logging.log4j.core.appender.AsyncAppender;
+import org.apache.logging.log4j.core.appender.routing.RoutingAppender;
+import org.apache.logging.log4j.core.config.AppenderControl;
+
+import pol.log.ReservedLogChannels.Setting;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+
+/**
+ * General description_________________________________________________________
+ * Asynchronous output of log channels. If enabled (the default, disable with
+ * -Dlog.async=false), each data channel of ReservedLogChannels gets a bounded
+ * queue and a background thread that writes the queued lines to the file in
+ * large buffered writes and flushes it whenever the queue becomes empty. The
+ * simulation only formats lines and puts them in the queue, and it waits if
+ * the queue of a channel is full. The queue size can be set with
+ * -Dlog.async.queueSize.
+ *
+ * Once stepped, it keeps the largest number of queued lines seen per channel
+ * and how many times a queue was full, which are reported by toString().
+ */
+public class AsyncLogChannels implements Steppable {
+	private static final long serialVersionUID = -4405627125516040375L;
+	public static final String ASYNC_PROPERTY_NAME = "log.async";
+	public static final String QUEUE_SIZE_PROPERTY_NAME = "log.async.queueSize";
+	public static final int DEFAULT_QUEUE_SIZE = 16384;
+	public static final int FILE_BUFFER_SIZE = 256 * 1024;
+	private static final long FLUSH_TIMEOUT_IN_MILLIS = 30000;
+	private final static ExtLogger logger = ExtLogger.create();
+
+	// channel name -> largest number of queued lines
+	private final Map<String, Integer> maxQueueDepths = new TreeMap<String, Integer>();
+	// channel name -> number of steps in which the queue was full
+	private final Map<String, Integer> numOfFullQueues = new TreeMap<String, Integer>();
+
+	public static boolean isEnabled() {
+		return "false".equalsIgnoreCase(System.getProperty(ASYNC_PROPERTY_NAME)) == false;
+	}
+
+	public static int getQueueSize() {
+		String size = System.getProperty(QUEUE_SIZE_PROPERTY_NAME);
+		return size != null ? Integer.parseInt(size) : DEFAULT_QUEUE_SIZE;
+	}
+
+	@Override
+	public void step(SimState state) {
+		for (Map.Entry<String, Integer> entry : getQueueDepths().entrySet()) {
+			String name = entry.getKey();
+			int depth = entry.getValue();
+			maxQueueDepths.merge(name, depth, Math::max);
+			if (depth >= getQueueSize()) {
+				numOfFullQueues.merge(name, 1, Integer::sum);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of lines queued per channel
+	 */
+	public static Map<String, Integer> getQueueDepths() {
+		Map<String, Integer> depths = new TreeMap<String, Integer>();
+		for (Appender appender : getAppenders().values()) {
+			if (appender instanceof AsyncAppender) {
+				AsyncAppender async = (AsyncAppender) appender;
+				depths.put(getChannelName(async),
+						async.getQueueCapacity() - async.getQueueRemainingCapacity());
+			}
+		}
+		return depths;
+	}
+
+	/**
+	 * Waits until all queued lines are taken by the background threads and
+	 * flushes the files of all channels.
+	 * 
+	 * @return false if lines of a channel were still queued after the timeout
+	 *         or the wait was interrupted
+	 */
+	public static boolean flush() {
+		Map<String, Appender> appenders = getAppenders();
+		long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_IN_MILLIS;
+		boolean isFlushed = true;
+		for (Appender appender : appenders.values()) {
+			if (appender instanceof AsyncAppender) {
+				AsyncAppender async = (AsyncAppender) appender;
+				while (async.getQueueRemainingCapacity() < async.getQueueCapacity()) {
+					if (System.currentTimeMillis() > deadline) {
+						logger.warn("Log channel " + getChannelName(async) + " is not flushed in time. "
+								+ (async.getQueueCapacity() - async.getQueueRemainingCapacity())
+								+ " lines are still queued.");
+						isFlushed = false;
+						break;
+					}
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						logger.warn("Flushing log channels is interrupted.");
+						return false;
+					}
+				}
+			}
+		}
+		for (Appender appender : appenders.values()) {
+			flush(appender);
+		}
+		return isFlushed;
+	}
+
+	private static void flush(Appender appender) {
+		if (appender instanceof AbstractOutputStreamAppender) {
+			((AbstractOutputStreamAppender<?>) appender).getManager().flush();
+		} else if (appender instanceof RoutingAppender) {
+			for (AppenderControl control : ((RoutingAppender) appender).getAppenders().values()) {
+				flush(control.getAppender());
+			}
+		}
+	}
+
+	private static Map<String, Appender> getAppenders() {
+		org.apache.logging.log4j.spi.LoggerContext context = LogManager.getContext(false);
+		if (context instanceof LoggerContext) {
+			return ((LoggerContext) context).getConfiguration().getAppenders();
+		}
+		return new TreeMap<String, Appender>();
+	}
+
+	private static String getChannelName(AsyncAppender appender) {
+		Level level = Level.getLevel(appender.getName());
+		Setting setting = level != null ? ReservedLogChannels.get(level) : null;
+		return setting != null ? setting.name : appender.getName();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("Log queues (max depth/full steps of " + getQueueSize() + "):");
+		for (Map.Entry<String, Integer> entry : maxQueueDepths.entrySet()) {
+			sb.append(" ").append(entry.getKey()).append("=").append(entry.getValue()).append("/")
+					.append(numOfFullQueues.getOrDefault(entry.getKey(), 0));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,190 @@
+package pol.log;
+
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import org.joda.time.LocalDateTime;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * General description_________________________________________________________
+ * Extracts the value of a column from an object, either as an object or
+ * appended to a line as text without creating objects for primitive values.
+ * Nothing is appended if there is no value.
+ */
+abstract class ColumnExtractor implements java.io.Serializable {
+	private static final long serialVersionUID = 5008345745291853817L;
+
+	abstract Object get(Object object);
+
+	abstract void appendTo(StringBuilder sb, Object object);
+
+	/**
+	 * Any value, appended as its string.
+	 */
+	static class ObjectExtractor extends ColumnExtractor {
+		private static final long serialVersionUID = -7429013458212384707L;
+		private final Function<Object, Object> function;
+
+		ObjectExtractor(Function<Object, Object> function) {
+			this.function = function;
+		}
+
+		@Override
+		Object get(Object object) {
+			return function.apply(object);
+		}
+
+		@Override
+		void appendTo(StringBuilder sb, Object object) {
+			Object value = function.apply(object);
+			if (value instanceof LocalDateTime) {
+				sb.append(((LocalDateTime) value).toString(ISODateTimeFormat.dateTimeNoMillis()));
+			} else if (value != null) {
+				sb.append(value);
+			}
+		}
+	}
+
+	static class LongExtractor extends ColumnExtractor {
+		private static final long serialVersionUID = 2964391781021958424L;
+		private final Predicate<Object> hasValue;
+		private final ToLongFunction<Object> function;
+
+		LongExtractor(Predicate<Object> hasValue, ToLongFunction<Object> function) {
+			this.hasValue = hasValue;
+			this.function = function;
+		}
+
+		@Override
+		Object get(Object object) {
+			return hasValue == null || hasValue.test(object) ? (Object) function.applyAsLong(object) : null;
+		}
+
+		@Override
+		void appendTo(StringBuilder sb, Object object) {
+			if (hasValue == null || hasValue.test(object)) {
+				sb.append(function.applyAsLong(object));
+			}
+		}
+	}
+
+	static class DoubleExtractor extends ColumnExtractor {
+		private static final long serialVersionUID = -1400531396402547013L;
+		private final Predicate<Object> hasValue;
+		private final ToDoubleFunction<Object> function;
+
+		DoubleExtractor(Predicate<Object> hasValue, ToDoubleFunction<Object> function) {
+			this.hasValue = hasValue;
+			this.function = function;
+		}
+
+		@Override
+		Object get(Object object) {
+			return hasValue == null || hasValue.test(object) ? (Object) function.applyAsDouble(object) : null;
+		}
+
+		@Override
+		void appendTo(StringBuilder sb, Object object) {
+			if (hasValue == null || hasValue.test(object)) {
+				sb.append(function.applyAsDouble(object));
+			}
+		}
+	}
+
+	/**
+	 * A few distinct values such as enums or classes, appended as their names
+	 * (simple names for classes) which are remembered per value.
+	 */
+	static class LabelExtractor extends ColumnExtractor {
+		private static final long serialVersionUID = 8424573207016813380L;
+		private static final int CACHE_SIZE = 16;
+		private final Function<Object, Object> function;
+		private transient Object[] values;
+		private transient String[] labels;
+		private transient int next;
+
+		LabelExtractor(Function<Object, Object> function) {
+			this.function = function;
+		}
+
+		@Override
+		Object get(Object object) {
+			return getLabel(function.apply(object));
+		}
+
+		@Override
+		void appendTo(StringBuilder sb, Object object) {
+			String label = getLabel(function.apply(object));
+			if (label != null) {
+				sb.append(label);
+			}
+		}
+
+		private String getLabel(Object value) {
+			if (value == null) {
+				return null;
+			}
+			if (values == null) {
+				values = new Object[CACHE_SIZE];
+				labels = new String[CACHE_SIZE];
+			}
+			for (int i = 0; i < CACHE_SIZE; i++) {
+				if (values[i] == value) {
+					return labels[i];
+				}
+			}
+			String label = value instanceof Class ? ((Class<?>) value).getSimpleName() : value.toString();
+			values[next] = value;
+			labels[next] = label;
+			next = (next + 1) % CACHE_SIZE;
+			return label;
+		}
+	}
+
+	/**
+	 * Times given as simulation steps, negative if there is no time, appended
+	 * in ISO format without milliseconds. Formatted times are remembered per
+	 * step since many rows have the same time.
+	 */
+	static class TimeExtractor extends ColumnExtractor {
+		private static final long serialVersionUID = -2616432011005081569L;
+		private static final int CACHE_SIZE = 64;
+		private final ToLongFunction<Object> step;
+		private final LongFunction<LocalDateTime> time;
+		private transient long[] steps;
+		private transient String[] texts;
+
+		TimeExtractor(ToLongFunction<Object> step, LongFunction<LocalDateTime> time) {
+			this.step = step;
+			this.time = time;
+		}
+
+		@Override
+		Object get(Object object) {
+			long value = step.applyAsLong(object);
+			return value < 0 ? null : time.apply(value);
+		}
+
+		@Override
+		void appendTo(StringBuilder sb, Object object) {
+			long value = step.applyAsLong(object);
+			if (value < 0) {
+				return;
+			}
+			if (steps == null) {
+				steps = new long[CACHE_SIZE];
+				texts = new String[CACHE_SIZE];
+			}
+			int slot = (int) (value % CACHE_SIZE);
+			if (texts[slot] == null || steps[slot] != value) {
+				steps[slot] = value;
+				texts[slot] = time.apply(value).toString(ISODateTimeFormat.dateTimeNoMillis());
+			}
+			sb.append(texts[slot]);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package pol.log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.Level;
+
+import sim.engine.SimState;
+
+/**
+ * General description_________________________________________________________
+ * Log scheduling class writing the rows of a table channel with
+ * ColumnarTableWriter instead of as text lines. The file is named after the
+ * channel (e.g. Poopin.polc) and the rows of each step are written as a
+ * batch.
+ */
+public class ColumnarLogSchedule extends LogSchedule {
+	private static final long serialVersionUID = -6118040447706185291L;
+	private final static ExtLogger logger = ExtLogger.create();
+
+	private TableMapper mapper;
+	private transient ColumnarTableWriter writer;
+
+	@SuppressWarnings("rawtypes")
+	public ColumnarLogSchedule(long startStep, long period, String level, Supplier<Collection> supplier,
+			TableMapper mapper, int priority) {
+		super(startStep, period, level, supplier, null, priority);
+		this.mapper = mapper;
+	}
+
+	public void step(SimState state) {
+		Collection<?> collection = (Collection<?>) supplier.get();
+		if (collection != null) {
+			try {
+				if (writer == null) {
+					writer = createWriter();
+				}
+				for (Object ele : collection) {
+					for (Object[] row : mapper.getRows(ele)) {
+						writer.addRow(row);
+					}
+				}
+				writer.writeBatch();
+			} catch (IOException e) {
+				logger.error("Error occured during writing " + level, e);
+			}
+		}
+
+		if (repeat) {
+			steps += period;
+		}
+	}
+
+	private ColumnarTableWriter createWriter() throws IOException {
+		File file = new File(ReservedLogChannels.get(Level.getLevel(level)).fileName(ColumnarTableWriter.SUFFIX));
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		String[] names = new String[mapper.getCodomainColumns().length];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = mapper.getCodomainColumns()[i].name;
+		}
+		return new ColumnarTableWriter(new FileOutputStream(file), names);
+	}
+
+	/**
+	 * Closes the file if it is open.
+	 */
+	public void close() {
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				logger.error("Error occured during closing " + level, e);
+			}
+			writer = null;
+		}
+	}
+}
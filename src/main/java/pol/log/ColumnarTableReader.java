@@ -0,0 +1,173 @@
+package pol.log;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * General description_________________________________________________________
+ * Reads tables written by ColumnarTableWriter batch by batch. Values are read
+ * as Long, Double, String or LocalDateTime, or null.
+ *
+ * Usage: ColumnarTableReader file.polc
+ *
+ * prints the table as TSV in the same format as TableValueFormatter writes.
+ */
+public class ColumnarTableReader implements Closeable {
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private final DataInputStream in;
+	private final String[] columnNames;
+	// dictionary per column, filled as batches are read
+	private final List<List<String>> dictionaries;
+
+	public ColumnarTableReader(InputStream stream) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+		if (in.readInt() != ColumnarTableWriter.MAGIC) {
+			throw new IOException("Not a columnar table.");
+		}
+		int version = in.readInt();
+		if (version != ColumnarTableWriter.VERSION) {
+			throw new IOException("Unsupported version: " + version);
+		}
+		columnNames = new String[in.readInt()];
+		dictionaries = new ArrayList<List<String>>();
+		for (int i = 0; i < columnNames.length; i++) {
+			columnNames[i] = in.readUTF();
+			dictionaries.add(new ArrayList<String>());
+		}
+	}
+
+	public String[] getColumnNames() {
+		return columnNames.clone();
+	}
+
+	/**
+	 * @return rows of the next batch, each in the order of columns, or null at
+	 *         the end of the file
+	 */
+	public List<Object[]> readBatch() throws IOException {
+		int numOfRows;
+		try {
+			numOfRows = in.readInt();
+		} catch (EOFException e) {
+			return null;
+		}
+		Object[][] rows = new Object[numOfRows][columnNames.length];
+		for (int column = 0; column < columnNames.length; column++) {
+			readColumn(column, rows);
+		}
+		List<Object[]> result = new ArrayList<Object[]>(numOfRows);
+		for (Object[] row : rows) {
+			result.add(row);
+		}
+		return result;
+	}
+
+	private void readColumn(int column, Object[][] rows) throws IOException {
+		int numOfRows = rows.length;
+		byte type = in.readByte();
+		if (type == ColumnarTableWriter.NULL) {
+			return;
+		}
+		byte[] bitmap = new byte[(numOfRows + 7) / 8];
+		in.readFully(bitmap);
+
+		switch (type) {
+		case ColumnarTableWriter.INT64:
+		case ColumnarTableWriter.TIMESTAMP:
+			long previous = 0;
+			for (int i = 0; i < numOfRows; i++) {
+				if (hasValue(bitmap, i)) {
+					long delta = readVarLong(in);
+					previous += (delta >>> 1) ^ -(delta & 1);
+					rows[i][column] = type == ColumnarTableWriter.INT64 ? (Object) previous
+							: new LocalDateTime(previous, DateTimeZone.UTC);
+				}
+			}
+			break;
+		case ColumnarTableWriter.FLOAT64:
+			for (int i = 0; i < numOfRows; i++) {
+				if (hasValue(bitmap, i)) {
+					rows[i][column] = in.readDouble();
+				}
+			}
+			break;
+		case ColumnarTableWriter.STRING:
+			List<String> dictionary = dictionaries.get(column);
+			long numOfNewEntries = readVarLong(in);
+			for (long i = 0; i < numOfNewEntries; i++) {
+				dictionary.add(in.readUTF());
+			}
+			for (int i = 0; i < numOfRows; i++) {
+				if (hasValue(bitmap, i)) {
+					rows[i][column] = dictionary.get((int) readVarLong(in));
+				}
+			}
+			break;
+		default:
+			throw new IOException("Unknown column type: " + type);
+		}
+	}
+
+	private static boolean hasValue(byte[] bitmap, int row) {
+		return (bitmap[row >> 3] & (1 << (row & 7))) != 0;
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0;; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: ColumnarTableReader file" + ColumnarTableWriter.SUFFIX);
+			return;
+		}
+		PrintStream out = new PrintStream(System.out, false, "UTF-8");
+		try (ColumnarTableReader reader = new ColumnarTableReader(new FileInputStream(args[0]))) {
+			out.println(String.join("\t", reader.getColumnNames()));
+			List<Object[]> rows;
+			StringBuilder sb = new StringBuilder();
+			while ((rows = reader.readBatch()) != null) {
+				for (Object[] row : rows) {
+					sb.setLength(0);
+					for (int i = 0; i < row.length; i++) {
+						if (i > 0) {
+							sb.append("\t");
+						}
+						if (row[i] instanceof LocalDateTime) {
+							sb.append(((LocalDateTime) row[i]).toString(ISODateTimeFormat.dateTimeNoMillis()));
+						} else if (row[i] != null) {
+							sb.append(row[i]);
+						}
+					}
+					out.println(sb);
+				}
+			}
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,218 @@
+package pol.log;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
+
+/**
+ * General description_________________________________________________________
+ * Writes rows of a table as typed columns in a binary file, so that numbers,
+ * coordinates and times are not converted to text. Rows are added one by one
+ * and written in batches, column after column. Files are read by
+ * ColumnarTableReader, which can also convert them to TSV.
+ *
+ * File: magic "POLC", version, number of columns and column names, followed by
+ * batches until the end of the file. Batch: number of rows, then for each
+ * column its type and, unless the column is empty in the batch, a bitmap of
+ * rows with a value followed by the values:
+ *
+ * INT64 and TIMESTAMP (milliseconds of the local time in UTC): differences
+ * from the previous value in the batch as zigzag varints, so sorted ids and
+ * times of a step take a byte or two.
+ *
+ * FLOAT64: 8 bytes each.
+ *
+ * STRING: dictionary encoded; strings not seen before in the file are listed
+ * first, followed by the dictionary code of each value as a varint.
+ *
+ * The type of a column is decided per batch from its values, e.g. an empty
+ * column is written as NULL until a value shows up. A column with values of
+ * different types is written as STRING.
+ */
+public class ColumnarTableWriter implements Closeable {
+	public static final String SUFFIX = ".polc";
+	static final int MAGIC = 0x504F4C43;
+	static final int VERSION = 1;
+	static final byte NULL = 0;
+	static final byte INT64 = 1;
+	static final byte FLOAT64 = 2;
+	static final byte STRING = 3;
+	static final byte TIMESTAMP = 4;
+	private static final int BUFFER_SIZE = 256 * 1024;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final DataOutputStream out;
+	private final int numOfColumns;
+	// dictionary per column, filled as strings show up
+	private final List<Map<String, Integer>> dictionaries;
+	// values of the rows not written yet, [column][row]
+	private Object[][] values;
+	private int numOfRows;
+
+	public ColumnarTableWriter(OutputStream stream, String[] columnNames) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+		this.numOfColumns = columnNames.length;
+		this.dictionaries = new ArrayList<Map<String, Integer>>();
+		this.values = new Object[numOfColumns][INITIAL_CAPACITY];
+		this.numOfRows = 0;
+		for (int i = 0; i < numOfColumns; i++) {
+			dictionaries.add(new HashMap<String, Integer>());
+		}
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(numOfColumns);
+		for (String name : columnNames) {
+			out.writeUTF(name);
+		}
+	}
+
+	/**
+	 * @param row
+	 *            values in the order of columns, null if there is no value
+	 */
+	public void addRow(Object[] row) {
+		if (numOfRows == values[0].length) {
+			for (int i = 0; i < numOfColumns; i++) {
+				values[i] = Arrays.copyOf(values[i], numOfRows * 2);
+			}
+		}
+		for (int i = 0; i < numOfColumns; i++) {
+			values[i][numOfRows] = row[i];
+		}
+		numOfRows++;
+	}
+
+	/**
+	 * Writes the rows added since the last batch as a batch and flushes the
+	 * file. Nothing is written if there are no rows.
+	 */
+	public void writeBatch() throws IOException {
+		if (numOfRows == 0) {
+			return;
+		}
+		out.writeInt(numOfRows);
+		for (int i = 0; i < numOfColumns; i++) {
+			writeColumn(i);
+			Arrays.fill(values[i], 0, numOfRows, null);
+		}
+		numOfRows = 0;
+		out.flush();
+	}
+
+	private void writeColumn(int column) throws IOException {
+		Object[] values = this.values[column];
+		byte type = getType(values, numOfRows);
+		out.writeByte(type);
+		if (type == NULL) {
+			return;
+		}
+		byte[] bitmap = new byte[(numOfRows + 7) / 8];
+		for (int i = 0; i < numOfRows; i++) {
+			if (values[i] != null) {
+				bitmap[i >> 3] |= 1 << (i & 7);
+			}
+		}
+		out.write(bitmap);
+
+		switch (type) {
+		case INT64:
+		case TIMESTAMP:
+			long previous = 0;
+			for (int i = 0; i < numOfRows; i++) {
+				if (values[i] != null) {
+					long value = type == INT64 ? ((Number) values[i]).longValue()
+							: ((LocalDateTime) values[i]).toDateTime(DateTimeZone.UTC).getMillis();
+					writeVarLong(out, (value - previous << 1) ^ (value - previous >> 63));
+					previous = value;
+				}
+			}
+			break;
+		case FLOAT64:
+			for (int i = 0; i < numOfRows; i++) {
+				if (values[i] != null) {
+					out.writeDouble(((Number) values[i]).doubleValue());
+				}
+			}
+			break;
+		default:
+			Map<String, Integer> dictionary = dictionaries.get(column);
+			List<String> newEntries = new ArrayList<String>();
+			int[] codes = new int[numOfRows];
+			for (int i = 0; i < numOfRows; i++) {
+				if (values[i] != null) {
+					String value = values[i].toString();
+					Integer code = dictionary.get(value);
+					if (code == null) {
+						code = dictionary.size();
+						dictionary.put(value, code);
+						newEntries.add(value);
+					}
+					codes[i] = code;
+				}
+			}
+			writeVarLong(out, newEntries.size());
+			for (String entry : newEntries) {
+				out.writeUTF(entry);
+			}
+			for (int i = 0; i < numOfRows; i++) {
+				if (values[i] != null) {
+					writeVarLong(out, codes[i]);
+				}
+			}
+			break;
+		}
+	}
+
+	private static byte getType(Object[] values, int numOfRows) {
+		byte type = NULL;
+		for (int i = 0; i < numOfRows; i++) {
+			Object value = values[i];
+			if (value == null) {
+				continue;
+			}
+			byte valueType;
+			if (value instanceof Long || value instanceof Integer || value instanceof Short
+					|| value instanceof Byte) {
+				valueType = INT64;
+			} else if (value instanceof Double || value instanceof Float) {
+				valueType = FLOAT64;
+			} else if (value instanceof LocalDateTime) {
+				valueType = TIMESTAMP;
+			} else {
+				return STRING;
+			}
+			if (type == NULL || type == valueType) {
+				type = valueType;
+			} else {
+				// e.g. integers and decimals, kept as text so that they are read
+				// back as written
+				return STRING;
+			}
+		}
+		return type;
+	}
+
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	@Override
+	public void close() throws IOException {
+		writeBatch();
+		out.close();
+	}
+}
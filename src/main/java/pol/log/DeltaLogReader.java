@@ -0,0 +1,125 @@
+package pol.log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Vector;
+
+/**
+ * General description_________________________________________________________
+ * Reads log files written as deltas by IterativeLogSchedule and rebuilds the
+ * full rows of each output, with the prefix, as they would be written without
+ * deltas. Rows of an output are in the order their elements first appeared
+ * since the last keyframe. Lines before the first output (e.g. the schema) are
+ * kept as the header.
+ *
+ * Usage: DeltaLogReader file [file ...]
+ *
+ * prints the header and the full rows of all outputs. Files of a rolling log
+ * are given in the order they were written.
+ */
+public class DeltaLogReader implements Closeable {
+	private final BufferedReader in;
+	private final List<String> header = new ArrayList<String>();
+	// id -> values of the row
+	private final Map<Integer, String[]> rows = new TreeMap<Integer, String[]>();
+	// first line of the next output
+	private String next;
+
+	public DeltaLogReader(InputStream stream) throws IOException {
+		this.in = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+		while ((next = in.readLine()) != null && isOutput(next) == false) {
+			header.add(next);
+		}
+	}
+
+	public List<String> getHeader() {
+		return Collections.unmodifiableList(header);
+	}
+
+	/**
+	 * @return full rows of the next output, or null at the end of the file
+	 */
+	public List<String> readOutput() throws IOException {
+		if (next == null) {
+			return null;
+		}
+		String[] line = next.split("\t", 2);
+		String prefix = line.length > 1 ? line[1] : "";
+		if (line[0].equals(IterativeLogSchedule.KEYFRAME)) {
+			rows.clear();
+		}
+
+		while ((next = in.readLine()) != null && isOutput(next) == false) {
+			String[] cells = next.split("\t", -1);
+			if (cells.length < 2) {
+				continue;
+			}
+			int id = Integer.parseInt(cells[1]);
+			if (cells[0].equals(IterativeLogSchedule.ROW)) {
+				rows.put(id, next.substring(cells[0].length() + cells[1].length() + 2).split("\t", -1));
+			} else if (cells[0].equals(IterativeLogSchedule.CHANGE)) {
+				String[] values = rows.get(id);
+				if (values == null) {
+					throw new IOException("Changes of an unknown row: " + next);
+				}
+				for (int i = 2; i + 1 < cells.length; i += 2) {
+					values[Integer.parseInt(cells[i])] = cells[i + 1];
+				}
+			} else if (cells[0].equals(IterativeLogSchedule.REMOVAL)) {
+				rows.remove(id);
+			}
+		}
+
+		List<String> output = new ArrayList<String>(rows.size());
+		for (String[] values : rows.values()) {
+			output.add(prefix + String.join("\t", values));
+		}
+		return output;
+	}
+
+	private static boolean isOutput(String line) {
+		return line.startsWith(IterativeLogSchedule.KEYFRAME + "\t")
+				|| line.startsWith(IterativeLogSchedule.DELTA + "\t");
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: DeltaLogReader file [file ...]");
+			return;
+		}
+		Vector<InputStream> streams = new Vector<InputStream>();
+		for (String arg : args) {
+			streams.add(new FileInputStream(arg));
+		}
+		PrintStream out = new PrintStream(System.out, false, "UTF-8");
+		try (DeltaLogReader reader = new DeltaLogReader(new SequenceInputStream(streams.elements()))) {
+			for (String line : reader.getHeader()) {
+				out.println(line);
+			}
+			List<String> output;
+			while ((output = reader.readOutput()) != null) {
+				for (String line : output) {
+					out.println(line);
+				}
+			}
+		}
+		out.flush();
+	}
+}
@@ -1,13 +1,14 @@
 package pol.log;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonElement;
 
 import pol.utils.JsonHelper;
 
 /**
  * General description_________________________________________________________
- * CSV schema formatter class
+ * CSV schema formatter class. Column names are written by GsonCsvSerializer,
+ * so they match the values of GsonCsvValueFormatter with the same Gson, or by
+ * JsonHelper from the JSON tree if the serializer is disabled.
  * 
  * @author Joon-Seok Kim (jkim258 at gmu.edu)
  * 
@@ -15,12 +16,23 @@ import pol.utils.JsonHelper;
 public class GsonCsvSchemaFormatter extends GsonFormatter {
 	private static final long serialVersionUID = 2623016863542230644L;
 
+	private transient GsonCsvSerializer serializer;
+	private transient boolean isTreeUsed;
+
 	public GsonCsvSchemaFormatter(Gson gson) {
 		super(gson);
 	}
 
 	protected String format(Object value) {
-		JsonElement element = getGson().toJsonTree(value);
-		return JsonHelper.getSchema(element);
+		if (serializer == null || serializer.getGson() != getGson()) {
+			serializer = new GsonCsvSerializer(getGson());
+			isTreeUsed = GsonCsvSerializer.isEnabled() == false;
+		}
+		if (isTreeUsed == true) {
+			return JsonHelper.getSchema(getGson().toJsonTree(value));
+		}
+		StringBuilder sb = new StringBuilder();
+		serializer.appendSchema(sb, value);
+		return sb.toString();
 	}
 }
@@ -0,0 +1,566 @@
+package pol.log;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.internal.$Gson$Types;
+import com.google.gson.internal.Excluder;
+import com.google.gson.internal.Primitives;
+import com.google.gson.internal.bind.JsonTreeWriter;
+import com.google.gson.internal.bind.ReflectiveTypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+import pol.utils.JsonHelper;
+
+/**
+ * General description_________________________________________________________
+ * Writes objects as tab separated values or column names exactly as
+ * JsonHelper does for the JSON tree of Gson.toJsonTree, without building the
+ * tree. For each class serialized reflectively by the Gson, the fields are
+ * looked up once with the same exclusion strategies (e.g. Exclusion with
+ * Skip, State and Characteristics), excluded modifiers, field naming and type
+ * adapters, and are read through method handles. Numbers, booleans and
+ * strings are appended directly, nested objects are written recursively and
+ * referenceable units are written by their keys. Values handled by other type
+ * adapters (e.g. geometries, times and collections) are written by the
+ * adapter into a small JSON tree.
+ *
+ * The serializer relies on internals of the Gson version it was written for
+ * (see GsonCsvSerializerTest). With -Dlog.csv.serializer=false the formatters
+ * go back to building the JSON tree.
+ */
+class GsonCsvSerializer {
+	// set to false to write values and column names with JsonHelper from the
+	// JSON tree of Gson.toJsonTree instead, e.g. if a Gson version is not
+	// supported
+	static final String PROPERTY_NAME = "log.csv.serializer";
+	// type adapters of primitives and strings built in Gson
+	private static final Gson BUILT_IN = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+
+	private final Gson gson;
+	private final Excluder excluder;
+	private final boolean serializeNulls;
+	// type -> fields, or NO_FIELDS if the type cannot be read by the serializer
+	private final Map<TypeToken<?>, FieldWriter[]> writers = new ConcurrentHashMap<TypeToken<?>, FieldWriter[]>();
+	private static final FieldWriter[] NO_FIELDS = new FieldWriter[0];
+
+	/**
+	 * @return false if the JSON tree is used instead of the serializer
+	 */
+	static boolean isEnabled() {
+		return "false".equalsIgnoreCase(System.getProperty(PROPERTY_NAME)) == false;
+	}
+
+	GsonCsvSerializer(Gson gson) {
+		this.gson = gson;
+		this.excluder = gson.excluder();
+		this.serializeNulls = gson.serializeNulls();
+	}
+
+	Gson getGson() {
+		return gson;
+	}
+
+	/**
+	 * Appends the values of the object, each followed by a tab, as
+	 * JsonHelper.getTabSeparateValue(gson.toJsonTree(value)).
+	 */
+	void appendValues(StringBuilder sb, Object value) {
+		write(sb, value, null);
+	}
+
+	/**
+	 * Appends the column names of the object, each followed by a tab, as
+	 * JsonHelper.getSchema(gson.toJsonTree(value)).
+	 */
+	void appendSchema(StringBuilder sb, Object value) {
+		write(sb, value, "");
+	}
+
+	/**
+	 * @param prefix
+	 *            prefix of column names, or null to write values
+	 */
+	private void write(StringBuilder sb, Object value, String prefix) {
+		if (value == null) {
+			return;
+		}
+		TypeToken<?> type = TypeToken.get(value.getClass());
+		TypeAdapter<?> adapter = gson.getAdapter(type);
+		if (adapter instanceof ReflectiveTypeAdapterFactory.Adapter) {
+			FieldWriter[] fields = getFields(type);
+			if (fields != NO_FIELDS) {
+				writeFields(sb, fields, value, prefix);
+				return;
+			}
+		}
+		JsonElement element = toJsonTree(adapter, value);
+		if (element.isJsonObject()) {
+			if (prefix == null) {
+				JsonHelper.appendTabSeparateValue(sb, element.getAsJsonObject());
+			} else {
+				JsonHelper.appendSchema(sb, element.getAsJsonObject(), prefix);
+			}
+		}
+	}
+
+	private static void writeFields(StringBuilder sb, FieldWriter[] fields, Object owner, String prefix) {
+		for (FieldWriter field : fields) {
+			if (prefix == null) {
+				field.appendValue(sb, owner);
+			} else {
+				field.appendSchema(sb, owner, prefix);
+			}
+		}
+	}
+
+	/**
+	 * Writes the value with the adapter as Gson does for a member.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private JsonElement toJsonTree(TypeAdapter adapter, Object value) {
+		JsonTreeWriter writer = new JsonTreeWriter();
+		writer.setLenient(true);
+		writer.setHtmlSafe(gson.htmlSafe());
+		writer.setSerializeNulls(serializeNulls);
+		try {
+			adapter.write(writer, value);
+		} catch (IOException e) {
+			throw new JsonIOException(e);
+		}
+		return writer.get();
+	}
+
+	/**
+	 * @return the fields of the type in the order of Gson, or NO_FIELDS if
+	 *         they cannot be read, in which case Gson writes the object
+	 */
+	private FieldWriter[] getFields(TypeToken<?> type) {
+		FieldWriter[] fields = writers.get(type);
+		if (fields == null) {
+			try {
+				fields = createFields(type);
+			} catch (RuntimeException | IllegalAccessException e) {
+				// e.g. fields that are not accessible
+				fields = NO_FIELDS;
+			}
+			writers.putIfAbsent(type, fields);
+		}
+		return fields;
+	}
+
+	// follows ReflectiveTypeAdapterFactory.getBoundFields()
+	private FieldWriter[] createFields(TypeToken<?> type) throws IllegalAccessException {
+		List<FieldWriter> fields = new ArrayList<FieldWriter>();
+		Class<?> raw = type.getRawType();
+		if (raw.isInterface()) {
+			return fields.toArray(new FieldWriter[0]);
+		}
+		Set<String> names = new HashSet<String>();
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		while (raw != Object.class) {
+			for (Field field : raw.getDeclaredFields()) {
+				boolean serialize = includes(field, true);
+				if (serialize == false && includes(field, false) == false) {
+					continue;
+				}
+				if (field.getAnnotation(JsonAdapter.class) != null) {
+					// field adapters are written by Gson
+					return NO_FIELDS;
+				}
+				for (String name : getFieldNames(field)) {
+					if (names.add(name) == false) {
+						// reported by Gson
+						return NO_FIELDS;
+					}
+				}
+				if (serialize == false) {
+					continue;
+				}
+				field.setAccessible(true);
+				MethodHandle getter = lookup.unreflectGetter(field);
+				Type fieldType = $Gson$Types.resolve(type.getType(), raw, field.getGenericType());
+				fields.add(createField(getFieldNames(field).get(0), getter, TypeToken.get(fieldType)));
+			}
+			type = TypeToken.get($Gson$Types.resolve(type.getType(), raw, raw.getGenericSuperclass()));
+			raw = type.getRawType();
+		}
+		return fields.toArray(new FieldWriter[0]);
+	}
+
+	private boolean includes(Field field, boolean serialize) {
+		return excluder.excludeClass(field.getType(), serialize) == false
+				&& excluder.excludeField(field, serialize) == false;
+	}
+
+	private List<String> getFieldNames(Field field) {
+		List<String> names = new ArrayList<String>();
+		SerializedName annotation = field.getAnnotation(SerializedName.class);
+		if (annotation == null) {
+			names.add(gson.fieldNamingStrategy().translateName(field));
+		} else {
+			names.add(annotation.value());
+			for (String alternate : annotation.alternate()) {
+				names.add(alternate);
+			}
+		}
+		return names;
+	}
+
+	private FieldWriter createField(String name, MethodHandle getter, TypeToken<?> type) {
+		Class<?> raw = type.getRawType();
+		if (isBuiltIn(raw)) {
+			if (raw == int.class || raw == long.class || raw == short.class || raw == byte.class) {
+				return new LongField(name, getter.asType(MethodType.methodType(long.class, Object.class)));
+			} else if (raw == double.class) {
+				return new DoubleField(name, getter.asType(MethodType.methodType(double.class, Object.class)));
+			} else if (raw == float.class) {
+				return new FloatField(name, getter.asType(MethodType.methodType(float.class, Object.class)));
+			} else if (raw == boolean.class) {
+				return new BooleanField(name, getter.asType(MethodType.methodType(boolean.class, Object.class)));
+			} else if (raw == char.class) {
+				return new CharField(name, getter.asType(MethodType.methodType(char.class, Object.class)));
+			}
+			// boxed primitives and strings
+			return new SimpleField(name, getter.asType(MethodType.methodType(Object.class, Object.class)));
+		}
+		return new ObjectField(name, getter.asType(MethodType.methodType(Object.class, Object.class)), type,
+				gson.getAdapter(type));
+	}
+
+	/**
+	 * @return true if the type is a primitive, boxed primitive or string
+	 *         written by the type adapters built in Gson
+	 */
+	private boolean isBuiltIn(Class<?> raw) {
+		if (Primitives.isPrimitive(raw) == false && Primitives.isWrapperType(raw) == false && raw != String.class) {
+			return false;
+		}
+		Class<?> wrapper = Primitives.wrap(raw);
+		return gson.getAdapter(raw) == BUILT_IN.getAdapter(raw)
+				&& gson.getAdapter(wrapper) == BUILT_IN.getAdapter(wrapper);
+	}
+
+	private static RuntimeException rethrow(Throwable e) {
+		if (e instanceof RuntimeException) {
+			return (RuntimeException) e;
+		} else if (e instanceof Error) {
+			throw (Error) e;
+		}
+		return new IllegalStateException(e);
+	}
+
+	private abstract static class FieldWriter {
+		final String name;
+
+		FieldWriter(String name) {
+			this.name = name;
+		}
+
+		abstract void appendValue(StringBuilder sb, Object owner);
+
+		void appendSchema(StringBuilder sb, Object owner, String prefix) {
+			sb.append(prefix).append(name).append('\t');
+		}
+	}
+
+	private static class LongField extends FieldWriter {
+		private final MethodHandle getter;
+
+		LongField(String name, MethodHandle getter) {
+			super(name);
+			this.getter = getter;
+		}
+
+		@Override
+		void appendValue(StringBuilder sb, Object owner) {
+			try {
+				sb.append((long) getter.invokeExact(owner)).append('\t');
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+	}
+
+	private static class DoubleField extends FieldWriter {
+		private final MethodHandle getter;
+
+		DoubleField(String name, MethodHandle getter) {
+			super(name);
+			this.getter = getter;
+		}
+
+		@Override
+		void appendValue(StringBuilder sb, Object owner) {
+			try {
+				sb.append((double) getter.invokeExact(owner)).append('\t');
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+	}
+
+	private static class FloatField extends FieldWriter {
+		private final MethodHandle getter;
+
+		FloatField(String name, MethodHandle getter) {
+			super(name);
+			this.getter = getter;
+		}
+
+		@Override
+		void appendValue(StringBuilder sb, Object owner) {
+			try {
+				sb.append((float) getter.invokeExact(owner)).append('\t');
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+	}
+
+	private static class BooleanField extends FieldWriter {
+		private final MethodHandle getter;
+
+		BooleanField(String name, MethodHandle getter) {
+			super(name);
+			this.getter = getter;
+		}
+
+		@Override
+		void appendValue(StringBuilder sb, Object owner) {
+			try {
+				sb.append((boolean) getter.invokeExact(owner)).append('\t');
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+	}
+
+	private static class CharField extends FieldWriter {
+		private final MethodHandle getter;
+
+		CharField(String name, MethodHandle getter) {
+			super(name);
+			this.getter = getter;
+		}
+
+		@Override
+		void appendValue(StringBuilder sb, Object owner) {
+			try {
+				sb.append((char) getter.invokeExact(owner)).append('\t');
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+	}
+
+	/**
+	 * Boxed primitives and strings, written as their strings.
+	 */
+	private class SimpleField extends FieldWriter {
+		private final MethodHandle getter;
+
+		SimpleField(String name, MethodHandle getter) {
+			super(name);
+			this.getter = getter;
+		}
+
+		private Object get(Object owner) {
+			try {
+				return (Object) getter.invokeExact(owner);
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		void appendValue(StringBuilder sb, Object owner) {
+			Object value = get(owner);
+			if (value != null) {
+				sb.append(value).append('\t');
+			} else if (serializeNulls) {
+				sb.append("null\t");
+			}
+		}
+
+		@Override
+		void appendSchema(StringBuilder sb, Object owner, String prefix) {
+			if (get(owner) != null || serializeNulls) {
+				super.appendSchema(sb, owner, prefix);
+			}
+		}
+	}
+
+	/**
+	 * Any other field. The type adapter is chosen from the declared and the
+	 * runtime type as TypeAdapterRuntimeTypeWrapper of Gson does.
+	 */
+	private class ObjectField extends FieldWriter {
+		private final MethodHandle getter;
+		private final TypeToken<?> declaredType;
+		private final TypeAdapter<?> declaredAdapter;
+		// runtime class -> chosen type adapter
+		private final Map<Class<?>, TypeAdapter<?>> adapters = new ConcurrentHashMap<Class<?>, TypeAdapter<?>>();
+		// enum constant -> JSON, written once
+		private final Map<Object, JsonElement> constants = new ConcurrentHashMap<Object, JsonElement>();
+		// runtime class -> key method of a referenceable
+		private final Map<Class<?>, MethodHandle> keys = new ConcurrentHashMap<Class<?>, MethodHandle>();
+
+		ObjectField(String name, MethodHandle getter, TypeToken<?> declaredType, TypeAdapter<?> declaredAdapter) {
+			super(name);
+			this.getter = getter;
+			this.declaredType = declaredType;
+			this.declaredAdapter = declaredAdapter;
+		}
+
+		@Override
+		void appendValue(StringBuilder sb, Object owner) {
+			write(sb, owner, null);
+		}
+
+		@Override
+		void appendSchema(StringBuilder sb, Object owner, String prefix) {
+			write(sb, owner, prefix);
+		}
+
+		private void write(StringBuilder sb, Object owner, String prefix) {
+			Object value;
+			try {
+				value = (Object) getter.invokeExact(owner);
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+			if (value == owner) {
+				// not written by Gson to avoid recursion
+				return;
+			}
+			if (value == null) {
+				if (declaredAdapter instanceof ReflectiveTypeAdapterFactory.Adapter) {
+					writeNull(sb, prefix);
+				} else {
+					writeElement(sb, toJsonTree(declaredAdapter, null), prefix);
+				}
+				return;
+			}
+
+			Class<?> runtimeClass = value.getClass();
+			TypeAdapter<?> adapter = adapters.get(runtimeClass);
+			if (adapter == null) {
+				adapter = chooseAdapter(runtimeClass);
+				adapters.put(runtimeClass, adapter);
+			}
+			if (adapter instanceof ReflectiveTypeAdapterFactory.Adapter) {
+				TypeToken<?> type = adapter == declaredAdapter ? declaredType : TypeToken.get(runtimeClass);
+				FieldWriter[] fields = getFields(type);
+				if (fields != NO_FIELDS) {
+					writeFields(sb, fields, value, prefix != null ? prefix + name + ":" : null);
+					return;
+				}
+			} else if (adapter instanceof ReferenceTypeAdapter) {
+				MethodHandle key = getKey(runtimeClass);
+				if (key != null) {
+					writeKey(sb, key, value, prefix);
+					return;
+				}
+			} else if (runtimeClass.isEnum()) {
+				JsonElement element = constants.get(value);
+				if (element == null) {
+					element = toJsonTree(adapter, value);
+					constants.put(value, element);
+				}
+				writeElement(sb, element, prefix);
+				return;
+			}
+			writeElement(sb, toJsonTree(adapter, value), prefix);
+		}
+
+		private TypeAdapter<?> chooseAdapter(Class<?> runtimeClass) {
+			Type type = declaredType.getType();
+			if ((type == Object.class || type instanceof TypeVariable<?> || type instanceof Class<?>)
+					&& runtimeClass != type) {
+				TypeAdapter<?> runtimeAdapter = gson.getAdapter(runtimeClass);
+				if (runtimeAdapter instanceof ReflectiveTypeAdapterFactory.Adapter == false) {
+					return runtimeAdapter;
+				} else if (declaredAdapter instanceof ReflectiveTypeAdapterFactory.Adapter == false) {
+					return declaredAdapter;
+				}
+				return runtimeAdapter;
+			}
+			return declaredAdapter;
+		}
+
+		// follows ReferenceTypeAdapter
+		private MethodHandle getKey(Class<?> runtimeClass) {
+			MethodHandle key = keys.get(runtimeClass);
+			if (key == null) {
+				Referenceable reference = runtimeClass.getAnnotation(Referenceable.class);
+				try {
+					Method method = runtimeClass.getMethod(reference.keyMethod());
+					key = MethodHandles.lookup().unreflect(method)
+							.asType(MethodType.methodType(Object.class, Object.class));
+					keys.put(runtimeClass, key);
+				} catch (RuntimeException | NoSuchMethodException | IllegalAccessException e) {
+					// written by ReferenceTypeAdapter
+					return null;
+				}
+			}
+			return key;
+		}
+
+		private void writeKey(StringBuilder sb, MethodHandle key, Object value, String prefix) {
+			if (prefix != null) {
+				super.appendSchema(sb, value, prefix);
+				return;
+			}
+			Object id;
+			try {
+				id = (Object) key.invokeExact(value);
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+			// numbers and other keys are both written as their strings
+			sb.append(id.toString()).append('\t');
+		}
+
+		private void writeNull(StringBuilder sb, String prefix) {
+			if (serializeNulls == false) {
+				return;
+			}
+			if (prefix != null) {
+				sb.append(prefix).append(name).append('\t');
+			} else {
+				sb.append("null\t");
+			}
+		}
+
+		private void writeElement(StringBuilder sb, JsonElement element, String prefix) {
+			if (element.isJsonNull() && serializeNulls == false) {
+				return;
+			}
+			if (prefix != null) {
+				JsonHelper.appendMemberSchema(sb, prefix + name, element);
+			} else {
+				JsonHelper.appendMemberValue(sb, element);
+			}
+		}
+	}
+}
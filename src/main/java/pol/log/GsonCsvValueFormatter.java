@@ -1,13 +1,15 @@
 package pol.log;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonElement;
 
 import pol.utils.JsonHelper;
 
 /**
  * General description_________________________________________________________
- * CSV value formatter class
+ * CSV value formatter class. Values are written by GsonCsvSerializer with the
+ * rules of the Gson, in the same order and format as the JSON tree of the
+ * object would be, or by JsonHelper from the JSON tree if the serializer is
+ * disabled (see GsonCsvSerializer.PROPERTY_NAME).
  * 
  * @author Joon-Seok Kim (jkim258 at gmu.edu)
  * 
@@ -15,12 +17,25 @@ import pol.utils.JsonHelper;
 public class GsonCsvValueFormatter extends GsonFormatter {
 	private static final long serialVersionUID = -5606533594380171367L;
 
+	private transient GsonCsvSerializer serializer;
+	private transient StringBuilder sb;
+	private transient boolean isTreeUsed;
+
 	public GsonCsvValueFormatter(Gson gson) {
 		super(gson);
 	}
 
 	protected String format(Object value) {
-		JsonElement element = getGson().toJsonTree(value);
-		return JsonHelper.getTabSeparateValue(element);
+		if (serializer == null || serializer.getGson() != getGson()) {
+			serializer = new GsonCsvSerializer(getGson());
+			sb = new StringBuilder();
+			isTreeUsed = GsonCsvSerializer.isEnabled() == false;
+		}
+		if (isTreeUsed == true) {
+			return JsonHelper.getTabSeparateValue(getGson().toJsonTree(value));
+		}
+		sb.setLength(0);
+		serializer.appendValues(sb, value);
+		return sb.toString();
 	}
 }
@@ -1,6 +1,9 @@
 package pol.log;
 
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.function.Supplier;
 
 import org.apache.logging.log4j.Level;
@@ -10,30 +13,78 @@ import sim.engine.SimState;
 /**
  * General description_________________________________________________________
  * Log scheduling class
- * 
+ *
+ * With a positive keyframe period, the elements are written as deltas: the
+ * full table is written every keyframe period outputs, and in between only the
+ * fields that changed since the previous output. The prefix of the formatter
+ * (e.g. step and time) is written once per output. Lines start with a type:
+ *
+ * F prefix: an output with all rows follows (keyframe)
+ *
+ * S prefix: an output with the rows that changed follows
+ *
+ * K id values: the row of an element, written as usual without the prefix
+ *
+ * D id column value [column value ...]: changed values of a row, columns
+ * counted from 0 after the prefix
+ *
+ * R id: the element is no longer in the collection
+ *
+ * where ids are numbers given to the elements in the order they appear. Lines
+ * are tab separated. DeltaLogReader rebuilds the full table.
+ *
  * @author Joon-Seok Kim (jkim258 at gmu.edu)
- * 
+ *
  */
 public class IterativeLogSchedule extends LogSchedule {
 	private static final long serialVersionUID = 7142990266125475300L;
 	private final static ExtLogger logger = ExtLogger.create();
+	static final String KEYFRAME = "F";
+	static final String DELTA = "S";
+	static final String ROW = "K";
+	static final String CHANGE = "D";
+	static final String REMOVAL = "R";
 
+	private int keyframePeriod = 0;
+	// element -> last written row, restarted at each keyframe
+	private transient Map<Object, Row> rows;
+	private transient int numOfRows;
+	private transient int outputsSinceKeyframe;
+
+	@SuppressWarnings("rawtypes")
 	public IterativeLogSchedule(long startStep, long period, String level, Supplier<Collection> supplier,
 			OutputFormatter format, int priority) {
 		super(startStep, period, level, supplier, format, priority);
 	}
 
+	@SuppressWarnings("rawtypes")
 	public IterativeLogSchedule(long startStep, String level, Supplier<Collection> supplier, OutputFormatter format,
 			int priority) {
 		super(startStep, level, supplier, format, priority);
 	}
 
+	/**
+	 * @param keyframePeriod
+	 *            if positive, elements are written as deltas with all rows
+	 *            every keyframePeriod outputs
+	 */
+	@SuppressWarnings("rawtypes")
+	public IterativeLogSchedule(long startStep, long period, String level, Supplier<Collection> supplier,
+			OutputFormatter format, int priority, int keyframePeriod) {
+		this(startStep, period, level, supplier, format, priority);
+		this.keyframePeriod = keyframePeriod;
+	}
+
 	public void step(SimState state) {
-		Collection collection = (Collection) supplier.get();
+		Collection<?> collection = (Collection<?>) supplier.get();
 		if (collection != null) {
-			for (Object ele : collection) {
-				String output = format.print(ele);
-				logger.log(Level.getLevel(level), output);
+			if (keyframePeriod > 0) {
+				logDeltas(collection);
+			} else {
+				for (Object ele : collection) {
+					String output = format.print(ele);
+					logger.log(Level.getLevel(level), output);
+				}
 			}
 		}
 
@@ -41,4 +92,76 @@ public class IterativeLogSchedule extends LogSchedule {
 			steps += period;
 		}
 	}
+
+	private void logDeltas(Collection<?> collection) {
+		Level lv = Level.getLevel(level);
+		boolean keyframe = rows == null || outputsSinceKeyframe >= keyframePeriod;
+		if (keyframe) {
+			rows = new IdentityHashMap<Object, Row>();
+			numOfRows = 0;
+			outputsSinceKeyframe = 0;
+		}
+		outputsSinceKeyframe++;
+
+		AbstractFormatter formatter = format instanceof AbstractFormatter ? (AbstractFormatter) format : null;
+		String prefix = formatter != null ? formatter.printPrefix() : "";
+		logger.log(lv, (keyframe ? KEYFRAME : DELTA) + "\t" + prefix);
+
+		StringBuilder sb = new StringBuilder();
+		for (Object ele : collection) {
+			String text = formatter != null ? formatter.printWithoutPrefix(ele) : format.print(ele);
+			String[] values = text.split("\t", -1);
+			Row row = rows.get(ele);
+			if (row == null) {
+				row = new Row(numOfRows++);
+				rows.put(ele, row);
+			} else if (row.values.length == values.length) {
+				boolean changed = false;
+				sb.setLength(0);
+				sb.append(CHANGE).append('\t').append(row.id);
+				for (int i = 0; i < values.length; i++) {
+					if (values[i].equals(row.values[i]) == false) {
+						sb.append('\t').append(i).append('\t').append(values[i]);
+						changed = true;
+					}
+				}
+				row.values = values;
+				row.outputs = outputsSinceKeyframe;
+				if (changed) {
+					logger.log(lv, sb.toString());
+				}
+				continue;
+			}
+			row.values = values;
+			row.outputs = outputsSinceKeyframe;
+			logger.log(lv, ROW + "\t" + row.id + "\t" + text);
+		}
+
+		for (Iterator<Row> it = rows.values().iterator(); it.hasNext();) {
+			Row row = it.next();
+			if (row.outputs != outputsSinceKeyframe) {
+				logger.log(lv, REMOVAL + "\t" + row.id);
+				it.remove();
+			}
+		}
+	}
+
+	public int getKeyframePeriod() {
+		return keyframePeriod;
+	}
+
+	public void setKeyframePeriod(int keyframePeriod) {
+		this.keyframePeriod = keyframePeriod;
+	}
+
+	private static class Row {
+		final int id;
+		String[] values;
+		// output in which the row was last written
+		int outputs;
+
+		Row(int id) {
+			this.id = id;
+		}
+	}
 }
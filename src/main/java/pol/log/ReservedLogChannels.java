@@ -7,17 +7,20 @@ import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Map;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongFunction;
 import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
 import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.ThreadContext;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.joda.time.LocalDateTime;
 import org.joda.time.LocalTime;
-import org.joda.time.format.ISODateTimeFormat;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -53,6 +56,12 @@ import sim.util.geo.MasonGeometry;
 public class ReservedLogChannels implements Serializable {
 	public static final String LOG_ROOT_DIRECTORY_PROPERTY_NAME = "log.rootDirectory";
 	public static final String TEST_PROPERTY_NAME = "simulation.test";
+	// if true, log files are written under the run directory of the logging
+	// thread so that models run concurrently in one JVM (see EnsembleRunner)
+	// do not share files
+	public static final String LOG_ROUTING_PROPERTY_NAME = "log.routing";
+	// thread context key of the run directory
+	public static final String LOG_RUN_DIRECTORY_KEY = "log.runDirectory";
 	private static final long serialVersionUID = 6956761501760484884L;
 	protected static final String DEFAULT_OUTPUT_TYPE = "File";
 	protected static final String DEFAULT_SUFFIX_TYPE = ".tsv";
@@ -89,6 +98,11 @@ public class ReservedLogChannels implements Serializable {
 
 	protected Collection<EventList> eventMovingHome;
 	protected Collection<EventList> eventChangingJob;
+	protected List<ColumnarLogSchedule> columnarSchedules = new ArrayList<ColumnarLogSchedule>();
+	// rows of pathogen loads per sewershed, also written when the simulation
+	// finishes for the last bin
+	protected LogSchedule sewershedLoadSchedule;
+	protected boolean isSewershedLoadScheduled;
 
 	protected WorldModel model;
 
@@ -175,6 +189,10 @@ public class ReservedLogChannels implements Serializable {
 					new Setting("QOI6Table", "QOI6", DEFAULT_OUTPUT_TYPE, "qois/"));
 			instance.putIfAbsent(Level.getLevel("AGENT5"), new Setting("Checkin", "Checkin", "RollingFile"));
 			instance.putIfAbsent(Level.getLevel("AGENT7"), new Setting("Poopin", "Poopin", "RollingFile"));
+			instance.putIfAbsent(Level.getLevel("AGENT9"),
+					new Setting("SewershedLoad", "SewershedLoad", "RollingFile"));
+			instance.putIfAbsent(Level.getLevel("ENV9"),
+					new Setting("SewerSampling", "SewerSampling", "RollingFile"));
 			instance.putIfAbsent(Level.getLevel("AGENT6"),
 					new Setting("SocialNetwork", "SocialNetwork", "RollingFile"));
 			instance.putIfAbsent(Level.getLevel("AGENT8"),
@@ -185,6 +203,10 @@ public class ReservedLogChannels implements Serializable {
 					new Setting("SocialNetwork", "SocialNetwork", "RollingFile"));
 			instance.putIfAbsent(Level.getLevel("AGENT"), new Setting("AgentStateTable", "AgentStates", "RollingFile"));
 			instance.putIfAbsent(Level.getLevel("AGENT7"), new Setting("Poopin", "Poopin", "RollingFile"));
+			instance.putIfAbsent(Level.getLevel("AGENT9"),
+					new Setting("SewershedLoad", "SewershedLoad", "RollingFile"));
+			instance.putIfAbsent(Level.getLevel("ENV9"),
+					new Setting("SewerSampling", "SewerSampling", "RollingFile"));
 			instance.putIfAbsent(Level.getLevel("AGENT8"),
 					new Setting("DiseasesStatus", "DiseasesStatus", "RollingFile"));
 
@@ -194,11 +216,19 @@ public class ReservedLogChannels implements Serializable {
 					new Setting("SocialNetwork", "SocialNetwork", "RollingFile"));
 			instance.putIfAbsent(Level.getLevel("AGENT"), new Setting("AgentStateTable", "AgentStates", "RollingFile"));
 			instance.putIfAbsent(Level.getLevel("AGENT7"), new Setting("Poopin", "Poopin", "RollingFile"));
+			instance.putIfAbsent(Level.getLevel("AGENT9"),
+					new Setting("SewershedLoad", "SewershedLoad", "RollingFile"));
+			instance.putIfAbsent(Level.getLevel("ENV9"),
+					new Setting("SewerSampling", "SewerSampling", "RollingFile"));
 			instance.putIfAbsent(Level.getLevel("AGENT8"),
 					new Setting("DiseasesStatus", "DiseasesStatus", "RollingFile"));
 
 		} else if (whatTest != null && whatTest.equals("c03")) {
 			instance.putIfAbsent(Level.getLevel("AGENT7"), new Setting("Poopin", "Poopin", "RollingFile"));
+			instance.putIfAbsent(Level.getLevel("AGENT9"),
+					new Setting("SewershedLoad", "SewershedLoad", "RollingFile"));
+			instance.putIfAbsent(Level.getLevel("ENV9"),
+					new Setting("SewerSampling", "SewerSampling", "RollingFile"));
 			instance.putIfAbsent(Level.getLevel("AGENT8"),
 					new Setting("DiseasesStatus", "DiseasesStatus", "RollingFile"));
 			instance.putIfAbsent(Level.getLevel("AGENT1"),
@@ -245,10 +275,31 @@ public class ReservedLogChannels implements Serializable {
 			Level lv = Level.getLevel((String) scheduleCandidates[i][0]);
 			if (RESERVED_LEVELS.containsKey(lv)) {
 				model.addLogSchedule((LogSchedule) scheduleCandidates[i][1]);
+				if (scheduleCandidates[i][1] instanceof ColumnarLogSchedule) {
+					columnarSchedules.add((ColumnarLogSchedule) scheduleCandidates[i][1]);
+				}
+				if (scheduleCandidates[i][1] == sewershedLoadSchedule) {
+					isSewershedLoadScheduled = true;
+				}
 			}
 		}
 	}
 
+	/**
+	 * Writes rows produced when the simulation finishes and closes files
+	 * written by log schedules themselves.
+	 */
+	public void finish() {
+		if (isSewershedLoadScheduled) {
+			// the last bin is closed by WorldModel.finish
+			sewershedLoadSchedule.step(model);
+		}
+		for (ColumnarLogSchedule schedule : columnarSchedules) {
+			schedule.close();
+		}
+		columnarSchedules.clear();
+	}
+
 	protected Object[][] getCandidates() {
 		CensusData censusData = new CensusData();
 
@@ -406,48 +457,51 @@ public class ReservedLogChannels implements Serializable {
 		OutputFormatter poopinTableSchema = new TableSchemaFormatter();
 		OutputFormatter diseasesStatusTableSchema = new TableSchemaFormatter();
 
+		// times are formatted by TableValueFormatter, ColumnarTableWriter keeps
+		// them as numbers. Numbers are appended to the line as primitives and
+		// times and labels are formatted once and reused.
+		ToLongFunction<Object> currentStep = (ToLongFunction<Object> & Serializable) (o) -> model.schedule.getSteps();
+		LongFunction<LocalDateTime> stepTime = (LongFunction<LocalDateTime> & Serializable) (
+				step) -> model.getSimulationTime(step);
+
 		TableMapper chekinTableMapper = new TableMapper(schema.CheckinDataset.CheckinTable);
 
 		col = new Column();
 		col.index = 0;
 		col.name = "UserId";
-		chekinTableMapper.addMap(schema.CheckinDataset.CheckinTable.UserId.name, col, (o) -> ((Person) o).getAgentId());
+		chekinTableMapper.addLongMap(schema.CheckinDataset.CheckinTable.UserId.name, col,
+				(o) -> ((Person) o).getAgentId());
 
 		col = new Column();
 		col.index = 1;
 		col.name = "CheckinTime";
-		chekinTableMapper.addMap(schema.CheckinDataset.CheckinTable.CheckinTime.name, col,
-				new SupplierExtractor((Supplier & Serializable) () -> model.getSimulationTime()
-						.toString(ISODateTimeFormat.dateTimeNoMillis())));
+		chekinTableMapper.addTimeMap(schema.CheckinDataset.CheckinTable.CheckinTime.name, col, currentStep, stepTime);
 
 		col = new Column();
 		col.index = 2;
 		col.name = "VenueId";
-		chekinTableMapper.addMap(schema.CheckinDataset.CheckinTable.VenueId.name, col, (o) -> {
-			if (((Person) o).getCurrentUnit() != null)
-				return ((Person) o).getCurrentUnit().getId();
-			return null;
-		});
+		chekinTableMapper.addLongMap(schema.CheckinDataset.CheckinTable.VenueId.name, col,
+				(o) -> ((Person) o).getCurrentUnit() != null, (o) -> ((Person) o).getCurrentUnit().getId());
 
 		col = new Column();
 		col.index = 3;
 		col.name = "VenueType";
-		chekinTableMapper.addMap(schema.CheckinDataset.CheckinTable.VenueType.name, col, (o) -> {
+		chekinTableMapper.addLabelMap(schema.CheckinDataset.CheckinTable.VenueType.name, col, (o) -> {
 			if (((Person) o).getCurrentUnit() != null)
-				return ((Person) o).getCurrentUnit().getClass().getSimpleName();
+				return ((Person) o).getCurrentUnit().getClass();
 			return null;
 		});
 
 		col = new Column();
 		col.index = 4;
 		col.name = "X";
-		chekinTableMapper.addMap(schema.CheckinDataset.CheckinTable.X.name, col,
+		chekinTableMapper.addDoubleMap(schema.CheckinDataset.CheckinTable.X.name, col,
 				(o) -> ((Person) o).getLocation().getGeometry().getCoordinate().x);
 
 		col = new Column();
 		col.index = 5;
 		col.name = "Y";
-		chekinTableMapper.addMap(schema.CheckinDataset.CheckinTable.Y.name, col,
+		chekinTableMapper.addDoubleMap(schema.CheckinDataset.CheckinTable.Y.name, col,
 				(o) -> ((Person) o).getLocation().getGeometry().getCoordinate().y);
 
 		OutputFormatter checkinData = new TableValueFormatter(chekinTableMapper);
@@ -457,55 +511,52 @@ public class ReservedLogChannels implements Serializable {
 		col = new Column();
 		col.index = 0;
 		col.name = "UserId";
-		poopinTableMapper.addMap(schema.CheckinDataset.PoopinTable.UserId.name, col, (o) -> ((Person) o).getAgentId());
+		poopinTableMapper.addLongMap(schema.CheckinDataset.PoopinTable.UserId.name, col,
+				(o) -> ((Person) o).getAgentId());
 
 		col = new Column();
 		col.index = 1;
 		col.name = "PoopinTime";
-		poopinTableMapper.addMap(schema.CheckinDataset.PoopinTable.PoopinTime.name, col,
-				new SupplierExtractor((Supplier & Serializable) () -> model.getSimulationTime()
-						.toString(ISODateTimeFormat.dateTimeNoMillis())));
+		poopinTableMapper.addTimeMap(schema.CheckinDataset.PoopinTable.PoopinTime.name, col, currentStep, stepTime);
 
 		col = new Column();
 		col.index = 2;
 		col.name = "VenueType";
-		poopinTableMapper.addMap(schema.CheckinDataset.PoopinTable.VenueType.name, col, (o) -> {
+		poopinTableMapper.addLabelMap(schema.CheckinDataset.PoopinTable.VenueType.name, col, (o) -> {
 			if (((Person) o).getCurrentUnit() != null)
-				return ((Person) o).getCurrentUnit().getClass().getSimpleName();
+				return ((Person) o).getCurrentUnit().getClass();
 			return null;
 		});
 
 		col = new Column();
 		col.index = 3;
 		col.name = "X";
-		poopinTableMapper.addMap(schema.CheckinDataset.PoopinTable.X.name, col,
+		poopinTableMapper.addDoubleMap(schema.CheckinDataset.PoopinTable.X.name, col,
 				(o) -> ((Person) o).getLocation().getGeometry().getCoordinate().x);
 
 		col = new Column();
 		col.index = 4;
 		col.name = "Y";
-		poopinTableMapper.addMap(schema.CheckinDataset.PoopinTable.Y.name, col,
+		poopinTableMapper.addDoubleMap(schema.CheckinDataset.PoopinTable.Y.name, col,
 				(o) -> ((Person) o).getLocation().getGeometry().getCoordinate().y);
 
 		col = new Column();
 		col.index = 5;
 		col.name = "PathogenLevel";
-		poopinTableMapper.addMap(schema.CheckinDataset.PoopinTable.PathogenLevel.name, col,
+		poopinTableMapper.addDoubleMap(schema.CheckinDataset.PoopinTable.PathogenLevel.name, col,
 				(o) -> ((Person) o).getInfectiousDisease().getPathogenLevel());
 
 		col = new Column();
 		col.index = 6;
 		col.name = "DiseaseStatus";
-		poopinTableMapper.addMap(schema.CheckinDataset.PoopinTable.DiseaseStatus.name, col,
-				(o) -> ((Person) o).getInfectiousDisease().getStatus().toString());
+		poopinTableMapper.addLabelMap(schema.CheckinDataset.PoopinTable.DiseaseStatus.name, col,
+				(o) -> ((Person) o).getInfectiousDisease().getStatus());
 
 		col = new Column();
 		col.index = 7;
 		col.name = "InfectiousStartedTime";
-		poopinTableMapper.addMap(schema.CheckinDataset.PoopinTable.InfectiousStartedTime.name, col,
-				(o) -> ((Person) o).getInfectiousDisease().getInfectiousStartedTime() == null ? null
-						: ((Person) o).getInfectiousDisease().getInfectiousStartedTime()
-								.toString(ISODateTimeFormat.dateTimeNoMillis()));
+		poopinTableMapper.addTimeMap(schema.CheckinDataset.PoopinTable.InfectiousStartedTime.name, col,
+				(o) -> ((Person) o).getInfectiousDisease().getInfectiousStartedStep(), stepTime);
 
 		OutputFormatter poopinData = new TableValueFormatter(poopinTableMapper);
 
@@ -513,67 +564,67 @@ public class ReservedLogChannels implements Serializable {
 		col = new Column();
 		col.index = 0;
 		col.name = "Time";
-		diseasesStatusTableMapper.addMap(schema.CheckinDataset.DiseasesStatusTable.Time.name, col,
-				new SupplierExtractor((Supplier & Serializable) () -> model.getSimulationTime()
-						.toString(ISODateTimeFormat.dateTimeNoMillis())));
+		diseasesStatusTableMapper.addTimeMap(schema.CheckinDataset.DiseasesStatusTable.Time.name, col, currentStep,
+				stepTime);
 
 		col = new Column();
 		col.index = 1;
 		col.name = "UserId";
-		diseasesStatusTableMapper.addMap(schema.CheckinDataset.DiseasesStatusTable.UserId.name, col,
+		diseasesStatusTableMapper.addLongMap(schema.CheckinDataset.DiseasesStatusTable.UserId.name, col,
 				(o) -> ((Person) o).getAgentId());
 
 		col = new Column();
 		col.index = 2;
 		col.name = "DiseaseStatus";
-		diseasesStatusTableMapper.addMap(schema.CheckinDataset.DiseasesStatusTable.DiseaseStatus.name, col,
-				(o) -> ((Person) o).getInfectiousDisease().getStatus().toString());
+		diseasesStatusTableMapper.addLabelMap(schema.CheckinDataset.DiseasesStatusTable.DiseaseStatus.name, col,
+				(o) -> ((Person) o).getInfectiousDisease().getStatus());
 
 		col = new Column();
 		col.index = 3;
 		col.name = "ExposedStartedTime";
-		diseasesStatusTableMapper.addMap(schema.CheckinDataset.DiseasesStatusTable.ExposedStartedTime.name, col,
-				(o) -> ((Person) o).getInfectiousDisease().getExposedStartedTime() == null ? null
-						: ((Person) o).getInfectiousDisease().getExposedStartedTime()
-								.toString(ISODateTimeFormat.dateTimeNoMillis()));
+		diseasesStatusTableMapper.addTimeMap(schema.CheckinDataset.DiseasesStatusTable.ExposedStartedTime.name, col,
+				(o) -> ((Person) o).getInfectiousDisease().getExposedStartedStep(), stepTime);
 		col = new Column();
 		col.index = 4;
 		col.name = "InfectiousStartedTime";
-		diseasesStatusTableMapper.addMap(schema.CheckinDataset.DiseasesStatusTable.InfectiousStartedTime.name, col,
-				(o) -> ((Person) o).getInfectiousDisease().getInfectiousStartedTime() == null ? null
-						: ((Person) o).getInfectiousDisease().getInfectiousStartedTime()
-								.toString(ISODateTimeFormat.dateTimeNoMillis()));
+		diseasesStatusTableMapper.addTimeMap(schema.CheckinDataset.DiseasesStatusTable.InfectiousStartedTime.name, col,
+				(o) -> ((Person) o).getInfectiousDisease().getInfectiousStartedStep(), stepTime);
 		col = new Column();
 		col.index = 5;
 		col.name = "PathogenLevel";
-		diseasesStatusTableMapper.addMap(schema.CheckinDataset.DiseasesStatusTable.PathogenLevel.name, col,
+		diseasesStatusTableMapper.addDoubleMap(schema.CheckinDataset.DiseasesStatusTable.PathogenLevel.name, col,
 				(o) -> ((Person) o).getInfectiousDisease().getPathogenLevel());
 
 		col = new Column();
 		col.index = 6;
 		col.name = "SourceAgentId";
-		diseasesStatusTableMapper.addMap(schema.CheckinDataset.DiseasesStatusTable.SourceAgentId.name, col,
+		diseasesStatusTableMapper.addLongMap(schema.CheckinDataset.DiseasesStatusTable.SourceAgentId.name, col,
 				(o) -> ((Person) o).getInfectiousDisease().getSourceAgentId());
 
 		col = new Column();
 		col.index = 7;
 		col.name = "HomeLocationX";
-		diseasesStatusTableMapper.addMap(schema.CheckinDataset.DiseasesStatusTable.HomeLocationX.name, col,
-				(o) -> ((Person) o).getHomeGeometry() == null ? null
-						: ((Person) o).getHomeGeometry().getGeometry().getCoordinate().x);
+		diseasesStatusTableMapper.addDoubleMap(schema.CheckinDataset.DiseasesStatusTable.HomeLocationX.name, col,
+				(o) -> ((Person) o).getHomeGeometry() != null,
+				(o) -> ((Person) o).getHomeGeometry().getGeometry().getCoordinate().x);
 
 		col = new Column();
 		col.index = 8;
 		col.name = "HomeLocationY";
-		diseasesStatusTableMapper.addMap(schema.CheckinDataset.DiseasesStatusTable.HomeLocationY.name, col,
-				(o) -> ((Person) o).getHomeGeometry() == null ? null
-						: ((Person) o).getHomeGeometry().getGeometry().getCoordinate().y);
+		diseasesStatusTableMapper.addDoubleMap(schema.CheckinDataset.DiseasesStatusTable.HomeLocationY.name, col,
+				(o) -> ((Person) o).getHomeGeometry() != null,
+				(o) -> ((Person) o).getHomeGeometry().getGeometry().getCoordinate().y);
 
 		OutputFormatter diseasesStatusData = new TableValueFormatter(diseasesStatusTableMapper);
 
 		OutputFormatter socialNetworkData = new TableFlatFormatterForRelation(
 				(Supplier<LocalDateTime> & Serializable) () -> model.getSimulationTime());
 
+		sewershedLoadSchedule = new IterativeLogSchedule(0, 1, "AGENT9",
+				(Supplier<Collection> & Serializable) () -> model.getSewershedAggregator() == null ? null
+						: model.getSewershedAggregator().pollRows(),
+				textFormatter, 1);
+
 		// Keep lambda function safe from serialization
 		Object[][] scheduleCandidates = {
 				{ "ENV1",
@@ -643,7 +694,8 @@ public class ReservedLogChannels implements Serializable {
 								stateSchema, 0) },
 				{ "AGENT",
 						new IterativeLogSchedule(0, 1, "AGENT",
-								(Supplier<Collection> & Serializable) () -> model.getAgents(), stateValue, 1) },
+								(Supplier<Collection> & Serializable) () -> model.getAgents(), stateValue, 1,
+								model.params.agentStateKeyframePeriod) },
 				{ "AGENT3",
 						new LogSchedule(0, "AGENT3", (Supplier & Serializable) () -> model.getAllJobs().get(0),
 								characteristicsSchema, 0) },
@@ -723,29 +775,58 @@ public class ReservedLogChannels implements Serializable {
 						(Supplier<Collection<EventList>> & Serializable) () -> eventChangingJob, eventFormatter, 1) },
 				// For checkin
 				{ "AGENT5",
-						new LogSchedule(0, "AGENT5", (Supplier & Serializable) () -> schema.CheckinDataset.CheckinTable,
+						new LogSchedule(0, "AGENT5",
+								(Supplier & Serializable) () -> model.params.writeColumnarTables ? null
+										: schema.CheckinDataset.CheckinTable,
 								checkinTableSchema, 0) },
-				{ "AGENT5",
-						new IterativeLogSchedule(1, 1, "AGENT5",
-								(Supplier & Serializable) () -> model.getAgentsCheckin(), checkinData, 1) },
+				{ "AGENT5", model.params.writeColumnarTables
+						? new ColumnarLogSchedule(1, 1, "AGENT5",
+								(Supplier<Collection> & Serializable) () -> model.getAgentsCheckin(), chekinTableMapper, 1)
+						: new IterativeLogSchedule(1, 1, "AGENT5",
+								(Supplier<Collection> & Serializable) () -> model.getAgentsCheckin(), checkinData, 1) },
 				{ "AGENT6",
 						new LogSchedule(0, "AGENT6", (Supplier & Serializable) () -> "time\tfrom\tto", textFormatter,
 								0) },
 				{ "AGENT6", new LogSchedule(0, STEPS_PER_DAY, "AGENT6",
 						(Supplier & Serializable) () -> model.getVisualFriendFamilyGraph(), socialNetworkData, 1) },
 				{ "AGENT7",
-						new LogSchedule(0, "AGENT7", (Supplier & Serializable) () -> schema.CheckinDataset.PoopinTable,
+						new LogSchedule(0, "AGENT7",
+								(Supplier & Serializable) () -> model.params.writeColumnarTables ? null
+										: schema.CheckinDataset.PoopinTable,
 								poopinTableSchema, 0) },
-				{ "AGENT7",
-						new IterativeLogSchedule(1, 1, "AGENT7",
-								(Supplier & Serializable) () -> model.getAgentsPoopin(), poopinData, 1) },
+				{ "AGENT7", model.params.writeColumnarTables
+						? new ColumnarLogSchedule(1, 1, "AGENT7",
+								(Supplier<Collection> & Serializable) () -> model.params.writePoopinEvents
+										? model.getAgentsPoopin()
+										: null,
+								poopinTableMapper, 1)
+						: new IterativeLogSchedule(1, 1, "AGENT7",
+								(Supplier<Collection> & Serializable) () -> model.params.writePoopinEvents
+										? model.getAgentsPoopin()
+										: null,
+								poopinData, 1) },
+				{ "AGENT9",
+						new LogSchedule(0, "AGENT9", (Supplier & Serializable) () -> model.getSewershedAggregator() == null
+								? null : model.getSewershedAggregator().getHeader(), textFormatter, 0) },
+				{ "AGENT9", sewershedLoadSchedule },
+				{ "ENV9",
+						new LogSchedule(0, "ENV9", (Supplier & Serializable) () -> model.getSewerTransport() == null
+								? null : model.getSewerTransport().getHeader(), textFormatter, 0) },
+				{ "ENV9",
+						new IterativeLogSchedule(0, 1, "ENV9",
+								(Supplier<Collection> & Serializable) () -> model.getSewerTransport() == null ? null
+										: model.getSewerTransport().pollRows(),
+								textFormatter, 1) },
 				{ "AGENT8",
 						new LogSchedule(0, "AGENT8",
-								(Supplier & Serializable) () -> schema.CheckinDataset.DiseasesStatusTable,
+								(Supplier & Serializable) () -> model.params.writeColumnarTables ? null
+										: schema.CheckinDataset.DiseasesStatusTable,
 								diseasesStatusTableSchema, 0) },
-				{ "AGENT8",
-						new IterativeLogSchedule(1, 1, "AGENT8",
-								(Supplier & Serializable) () -> model.getAgentsDiseases(), diseasesStatusData, 1) },
+				{ "AGENT8", model.params.writeColumnarTables
+						? new ColumnarLogSchedule(1, 1, "AGENT8",
+								(Supplier<Collection> & Serializable) () -> model.getAgentsDiseases(), diseasesStatusTableMapper, 1)
+						: new IterativeLogSchedule(1, 1, "AGENT8",
+								(Supplier<Collection> & Serializable) () -> model.getAgentsDiseases(), diseasesStatusData, 1) },
 
 		};
 
@@ -1007,12 +1088,23 @@ public class ReservedLogChannels implements Serializable {
 		return RESERVED_LEVELS.get(level);
 	}
 
+	public static boolean isRouting() {
+		return Boolean.parseBoolean(System.getProperty(LOG_ROUTING_PROPERTY_NAME));
+	}
+
 	public static String fullDirectory(String subDirectory) {
+		return fullDirectory(rootDirectory(), subDirectory);
+	}
+
+	private static String rootDirectory() {
 		// load from system property to decide root directory for logging
 		String root = System.getProperty(LOG_ROOT_DIRECTORY_PROPERTY_NAME);
 		if (root == null)
 			root = DEFAULT_ROOT_DIRECTORY;
+		return root;
+	}
 
+	private static String fullDirectory(String root, String subDirectory) {
 		if (subDirectory.startsWith("/") && root.endsWith("/")) {
 			return root.substring(root.lastIndexOf("/")) + subDirectory;
 		}
@@ -1029,6 +1121,7 @@ public class ReservedLogChannels implements Serializable {
 		String description;
 		String outputType;
 		String directory;
+		String subDirectory;
 		String suffix;
 		int size = 500;
 
@@ -1053,6 +1146,7 @@ public class ReservedLogChannels implements Serializable {
 			this.description = description;
 			this.outputType = outputType;
 			this.directory = fullDirectory(directory);
+			this.subDirectory = directory;
 			this.suffix = suffix;
 		}
 
@@ -1063,6 +1157,34 @@ public class ReservedLogChannels implements Serializable {
 		public String filePattern() {
 			return directory + "archive/" + name + "-%i" + suffix + ".zip";
 		}
+
+		/**
+		 * @return the file name in the run directory of the logging thread, or
+		 *         in the root directory if the thread has none
+		 */
+		public String routedFileName() {
+			return routedDirectory() + name + suffix;
+		}
+
+		public String routedFilePattern() {
+			return routedDirectory() + "archive/" + name + "-%i" + suffix + ".zip";
+		}
+
+		/**
+		 * @return the file name with the given suffix, in the run directory
+		 *         of the current thread if log files are routed
+		 */
+		public String fileName(String suffix) {
+			String runDirectory = isRouting() ? ThreadContext.get(LOG_RUN_DIRECTORY_KEY) : null;
+			if (runDirectory != null) {
+				return fullDirectory(runDirectory, subDirectory) + name + suffix;
+			}
+			return directory + name + suffix;
+		}
+
+		private String routedDirectory() {
+			return fullDirectory("${ctx:" + LOG_RUN_DIRECTORY_KEY + ":-" + rootDirectory() + "}", subDirectory);
+		}
 	}
 
 }
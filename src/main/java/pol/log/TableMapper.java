@@ -5,6 +5,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import org.joda.time.LocalDateTime;
 
 import pol.db.Column;
 import pol.db.Table;
@@ -20,13 +26,16 @@ public class TableMapper implements java.io.Serializable {
 	private Table table;
 	private Column[] codomainColumns;
 	private Map<String, List<Column>> map;
-	private Map<Column, Function<Object, Object>> extractor;
+	private Map<Column, ColumnExtractor> extractor;
+	// extractors of the domains of each codomain column, built on first use
+	private transient ColumnExtractor[][] compiled;
+	private transient int numOfRows;
 
 	public TableMapper(Table table) {
 		this.table = table;
 		codomainColumns = table.getColumns();
 		map = new HashMap<String, List<Column>>();
-		extractor = new HashMap<Column, Function<Object, Object>>();
+		extractor = new HashMap<Column, ColumnExtractor>();
 
 		for (int i = 0; i < codomainColumns.length; i++) {
 			map.put(codomainColumns[i].name, new ArrayList<Column>());
@@ -35,8 +44,63 @@ public class TableMapper implements java.io.Serializable {
 
 	public void addMap(String codomain, Column newDomain,
 			Function<Object, Object> function) {
+		addMap(codomain, newDomain, new ColumnExtractor.ObjectExtractor(function));
+	}
+
+	public void addLongMap(String codomain, Column newDomain,
+			ToLongFunction<Object> function) {
+		addLongMap(codomain, newDomain, null, function);
+	}
+
+	/**
+	 * @param hasValue
+	 *            false if the column is empty for an object
+	 */
+	public void addLongMap(String codomain, Column newDomain,
+			Predicate<Object> hasValue, ToLongFunction<Object> function) {
+		addMap(codomain, newDomain, new ColumnExtractor.LongExtractor(hasValue, function));
+	}
+
+	public void addDoubleMap(String codomain, Column newDomain,
+			ToDoubleFunction<Object> function) {
+		addDoubleMap(codomain, newDomain, null, function);
+	}
+
+	/**
+	 * @param hasValue
+	 *            false if the column is empty for an object
+	 */
+	public void addDoubleMap(String codomain, Column newDomain,
+			Predicate<Object> hasValue, ToDoubleFunction<Object> function) {
+		addMap(codomain, newDomain, new ColumnExtractor.DoubleExtractor(hasValue, function));
+	}
+
+	/**
+	 * Adds a column of a few distinct values, e.g. enums, written as their
+	 * names or as simple names for classes.
+	 */
+	public void addLabelMap(String codomain, Column newDomain,
+			Function<Object, Object> function) {
+		addMap(codomain, newDomain, new ColumnExtractor.LabelExtractor(function));
+	}
+
+	/**
+	 * Adds a column of times given as simulation steps.
+	 * 
+	 * @param step
+	 *            returns a negative number if there is no time
+	 * @param time
+	 *            time of a step
+	 */
+	public void addTimeMap(String codomain, Column newDomain,
+			ToLongFunction<Object> step, LongFunction<LocalDateTime> time) {
+		addMap(codomain, newDomain, new ColumnExtractor.TimeExtractor(step, time));
+	}
+
+	private void addMap(String codomain, Column newDomain, ColumnExtractor function) {
 		map.get(codomain).add(newDomain);
 		extractor.put(newDomain, function);
+		compiled = null;
 	}
 
 	public Table getTable() {
@@ -54,7 +118,57 @@ public class TableMapper implements java.io.Serializable {
 	}
 
 	public Object getDomainValue(Column domain, Object object) {
-		return extractor.get(domain).apply(object);
+		return extractor.get(domain).get(object);
+	}
+
+	/**
+	 * @return extractors of the domains of each codomain column in order
+	 */
+	ColumnExtractor[][] getExtractors() {
+		if (compiled == null) {
+			ColumnExtractor[][] extractors = new ColumnExtractor[codomainColumns.length][];
+			int rows = 1;
+			for (int i = 0; i < codomainColumns.length; i++) {
+				List<Column> domain = map.get(codomainColumns[i].name);
+				extractors[i] = new ColumnExtractor[domain.size()];
+				for (int j = 0; j < domain.size(); j++) {
+					extractors[i][j] = extractor.get(domain.get(j));
+				}
+				rows = Math.max(rows, domain.size());
+			}
+			numOfRows = rows;
+			compiled = extractors;
+		}
+		return compiled;
+	}
+
+	/**
+	 * @return the number of rows per object, i.e. the largest number of
+	 *         domains of a codomain column
+	 */
+	int getNumberOfRows() {
+		getExtractors();
+		return numOfRows;
+	}
+
+	/**
+	 * @return values of the codomain columns for the given object, one array
+	 *         per row as TableValueFormatter writes them
+	 */
+	public List<Object[]> getRows(Object object) {
+		ColumnExtractor[][] extractors = getExtractors();
+		List<Object[]> rows = new ArrayList<Object[]>(numOfRows);
+		Object[] currentValues = new Object[codomainColumns.length];
+		for (int row = 0; row < numOfRows; row++) {
+			for (int i = 0; i < codomainColumns.length; i++) {
+				// a column with fewer domains keeps its last value
+				if (row < extractors[i].length) {
+					currentValues[i] = extractors[i][row].get(object);
+				}
+			}
+			rows.add(currentValues.clone());
+		}
+		return rows;
 	}
 
-}
\ No newline at end of file
+}
@@ -1,11 +1,10 @@
 package pol.log;
 
-import java.util.List;
-import java.util.Map;
-
-import pol.db.Column;
-
 /**
+ * Writes the rows of an object as tab-separated lines. The extractors of the
+ * mapper are compiled once, and values are appended to a reused buffer
+ * without creating objects for numbers.
+ * 
  * @author Joon-Seok Kim (jkim258 at gmu.edu)
  * 
  */
@@ -13,6 +12,7 @@ public class TableValueFormatter extends AbstractFormatter {
 	private static final long serialVersionUID = 8904201239979616202L;
 
 	private TableMapper mapper;
+	private transient StringBuilder sb;
 
 	public TableValueFormatter(TableMapper mapper) {
 		this.mapper = mapper;
@@ -20,34 +20,28 @@ public class TableValueFormatter extends AbstractFormatter {
 
 	@Override
 	protected String format(Object value) {
-		StringBuilder sb = new StringBuilder();
-		Column[] columns = mapper.getCodomainColumns();
-		Map<String, List<Column>> map = mapper.getMap();
-		Object[] currentValues = new Object[columns.length];
-
-		boolean empty;
-		do {
-			empty = true;
-			for (int i = 0; i < columns.length; i++) {
-				List<Column> domain = map.get(columns[i].name);
-				if (domain != null && !domain.isEmpty()) {
-					currentValues[i] = mapper.getDomainValue(domain.remove(0),
-							value);
-					empty &= domain.isEmpty();
-				}
+		if (sb == null) {
+			sb = new StringBuilder();
+		}
+		sb.setLength(0);
+		ColumnExtractor[][] extractors = mapper.getExtractors();
+		int numOfRows = mapper.getNumberOfRows();
+		for (int row = 0; row < numOfRows; row++) {
+			if (row > 0) {
+				sb.append('\n');
 			}
-
-			for (int i = 0; i < columns.length; i++) {
-				if (currentValues[i] != null)
-					sb.append(currentValues[i]);
-				sb.append("\t");
+			for (int i = 0; i < extractors.length; i++) {
+				if (i > 0) {
+					sb.append('\t');
+				}
+				ColumnExtractor[] domain = extractors[i];
+				// a column with fewer domains repeats its last value
+				if (domain.length > 0) {
+					domain[Math.min(row, domain.length - 1)].appendTo(sb, value);
+				}
 			}
-			sb.deleteCharAt(sb.length() - 1);
-			sb.append("\n");
-		} while (!empty);
-		sb.deleteCharAt(sb.length() - 1);
-
+		}
 		return sb.toString();
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,707 @@
+package pol.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.planargraph.Node;
+
+import sim.util.geo.GeomPlanarGraphDirectedEdge;
+
+/**
+ * General description_________________________________________________________
+ * A contraction hierarchy built on top of an {@link IndexedAStar} graph. Nodes
+ * are contracted one by one (edge difference + contracted neighbors ordering)
+ * and shortcuts are added whenever a local witness search cannot find a path
+ * that is at least as short. Queries run a bidirectional Dijkstra on the upward
+ * graphs and unpack the shortcuts back to the original directed edges.
+ *
+ * The hierarchy reflects the edge weights at the time it was built. The index
+ * can be written to a file and read back; a signature of the graph (node
+ * coordinates, edges and weights) is stored with it so that an index built for
+ * another map or other weights is rejected.
+ *
+ */
+public class ContractionHierarchy {
+
+    private static final int MAGIC = 0x504f4c43; // "POLC"
+    private static final int VERSION = 1;
+    // maximum number of settled nodes in a witness search
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+
+    private final IndexedAStar graph;
+    private final long signature;
+    private final int[] rank;
+
+    // all edges of the hierarchy (original edges first, then shortcuts)
+    private int numOfEdges;
+    private int[] edgeFrom;
+    private int[] edgeTo;
+    private double[] edgeWeight;
+    // original edge index in the IndexedAStar graph, or -1 for a shortcut
+    private int[] edgeOriginal;
+    // the two edges a shortcut is made of
+    private int[] edgeFirst;
+    private int[] edgeSecond;
+
+    // upward graph of the forward search: edges a->b with rank[b] > rank[a]
+    private int[] upStart;
+    private int[] upEdges;
+    // upward graph of the backward search: edges a->b with rank[a] > rank[b],
+    // stored at b
+    private int[] downStart;
+    private int[] downEdges;
+
+    private final ThreadLocal<QueryState> queryState;
+
+    private ContractionHierarchy(IndexedAStar graph, long signature, int[] rank) {
+        this.graph = graph;
+        this.signature = signature;
+        this.rank = rank;
+        this.queryState = new ThreadLocal<QueryState>() {
+            @Override
+            protected QueryState initialValue() {
+                return new QueryState(graph.getNumberOfNodes());
+            }
+        };
+    }
+
+    /**
+     * Contracts all the nodes of the given graph using the current edge weights.
+     */
+    public static ContractionHierarchy build(IndexedAStar graph) {
+        int n = graph.getNumberOfNodes();
+        ContractionHierarchy ch = new ContractionHierarchy(graph, signature(graph), new int[n]);
+        ch.contract();
+        ch.createSearchGraphs();
+        return ch;
+    }
+
+    /**
+     * Reads the index from the given file if it exists and matches the graph,
+     * otherwise builds it and writes it to the file.
+     */
+    public static ContractionHierarchy loadOrBuild(IndexedAStar graph, File file) {
+        if (file != null && file.exists()) {
+            try {
+                ContractionHierarchy ch = read(graph, file);
+                if (ch != null) {
+                    System.out.println("Contraction hierarchy is loaded from " + file);
+                    return ch;
+                }
+                System.out.println("Contraction hierarchy at " + file + " does not match the map. Rebuilding.");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        long t = System.currentTimeMillis();
+        ContractionHierarchy ch = build(graph);
+        System.out.println("Contraction hierarchy is built in " + (System.currentTimeMillis() - t) + " ms ("
+                + graph.getNumberOfNodes() + " nodes, " + ch.getNumberOfShortcuts() + " shortcuts)");
+        if (file != null) {
+            try {
+                ch.write(file);
+                System.out.println("Contraction hierarchy is saved to " + file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return ch;
+    }
+
+    public int getNumberOfShortcuts() {
+        return numOfEdges - graph.getNumberOfEdges();
+    }
+
+    public ArrayList<GeomPlanarGraphDirectedEdge> shortestPath(Node start, Node goal) {
+        int startId = start == null ? -1 : graph.getNodeId(start);
+        int goalId = goal == null ? -1 : graph.getNodeId(goal);
+        if (startId < 0 || goalId < 0) {
+            System.out.println("Error: invalid node provided to ContractionHierarchy");
+            return new ArrayList<GeomPlanarGraphDirectedEdge>();
+        }
+        return shortestPath(startId, goalId);
+    }
+
+    public ArrayList<GeomPlanarGraphDirectedEdge> shortestPath(int start, int goal) {
+        ArrayList<GeomPlanarGraphDirectedEdge> result = new ArrayList<GeomPlanarGraphDirectedEdge>();
+        if (start == goal) {
+            return result;
+        }
+        QueryState s = queryState.get();
+        s.reset();
+        s.forward.relax(start, 0, -1);
+        s.backward.relax(goal, 0, -1);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meeting = -1;
+        boolean forwardTurn = true;
+        while (true) {
+            boolean forwardDone = s.forward.heap.isEmpty() || s.forward.heap.peekKey() >= best;
+            boolean backwardDone = s.backward.heap.isEmpty() || s.backward.heap.peekKey() >= best;
+            if (forwardDone && backwardDone) {
+                break;
+            }
+            boolean isForward = backwardDone || (!forwardDone && forwardTurn);
+            forwardTurn = !forwardTurn;
+
+            Search search = isForward ? s.forward : s.backward;
+            Search other = isForward ? s.backward : s.forward;
+            int[] start2 = isForward ? upStart : downStart;
+            int[] edges2 = isForward ? upEdges : downEdges;
+
+            double key = search.heap.peekKey();
+            int x = search.heap.poll();
+            if (key > search.dist(x)) {
+                continue; // outdated heap entry
+            }
+            if (other.isReached(x) && key + other.dist(x) < best) {
+                best = key + other.dist(x);
+                meeting = x;
+            }
+            for (int i = start2[x], end = start2[x + 1]; i < end; i++) {
+                int e = edges2[i];
+                int next = isForward ? edgeTo[e] : edgeFrom[e];
+                double cost = key + edgeWeight[e];
+                if (cost < search.dist(next)) {
+                    search.relax(next, cost, e);
+                }
+            }
+        }
+
+        if (meeting < 0) {
+            // the network is not a connected graph
+            return result;
+        }
+
+        // forward half: from the meeting node back to the start
+        int[] stack = s.stack;
+        int size = 0;
+        for (int x = meeting; s.forward.parent(x) >= 0; x = edgeFrom[s.forward.parent(x)]) {
+            stack = push(s, stack, size++, s.forward.parent(x));
+        }
+        while (size > 0) {
+            unpack(stack[--size], result, s);
+        }
+        // backward half: from the meeting node to the goal
+        for (int x = meeting; s.backward.parent(x) >= 0; x = edgeTo[s.backward.parent(x)]) {
+            unpack(s.backward.parent(x), result, s);
+        }
+        return result;
+    }
+
+    private int[] push(QueryState s, int[] stack, int index, int value) {
+        if (index == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+            s.stack = stack;
+        }
+        stack[index] = value;
+        return stack;
+    }
+
+    /**
+     * Appends the original edges of the given (shortcut) edge to the result.
+     */
+    private void unpack(int edge, ArrayList<GeomPlanarGraphDirectedEdge> result, QueryState s) {
+        int[] stack = s.unpackStack;
+        int size = 0;
+        stack[size++] = edge;
+        while (size > 0) {
+            int e = stack[--size];
+            if (edgeOriginal[e] >= 0) {
+                result.add(graph.getEdge(edgeOriginal[e]));
+            } else {
+                if (size + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                    s.unpackStack = stack;
+                }
+                stack[size++] = edgeSecond[e];
+                stack[size++] = edgeFirst[e];
+            }
+        }
+    }
+
+    // Preprocessing________________________________________________________
+
+    private void contract() {
+        int n = graph.getNumberOfNodes();
+        int m = graph.getNumberOfEdges();
+        edgeFrom = new int[m];
+        edgeTo = new int[m];
+        edgeWeight = new double[m];
+        edgeOriginal = new int[m];
+        edgeFirst = new int[m];
+        edgeSecond = new int[m];
+
+        IntList[] out = new IntList[n];
+        IntList[] in = new IntList[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = new IntList();
+            in[i] = new IntList();
+        }
+
+        // original edges, only the cheapest of parallel edges and no loops
+        Map<Long, Integer> pairs = new HashMap<Long, Integer>();
+        for (int u = 0; u < n; u++) {
+            for (int e = graph.getEdgeStart(u), end = graph.getEdgeStart(u + 1); e < end; e++) {
+                int v = graph.getEdgeTarget(e);
+                double w = graph.getEdgeWeight(e);
+                int id = addEdge(u, v, w, e, -1, -1);
+                if (u == v) {
+                    continue;
+                }
+                Long pair = ((long) u << 32) | v;
+                Integer existing = pairs.get(pair);
+                if (existing == null) {
+                    pairs.put(pair, id);
+                    out[u].add(id);
+                    in[v].add(id);
+                } else if (w < edgeWeight[existing]) {
+                    pairs.put(pair, id);
+                    out[u].replace(existing, id);
+                    in[v].replace(existing, id);
+                }
+            }
+        }
+
+        boolean[] contracted = new boolean[n];
+        int[] contractedNeighbors = new int[n];
+        WitnessSearch witness = new WitnessSearch(n);
+        MinHeap queue = new MinHeap(n);
+        for (int v = 0; v < n; v++) {
+            queue.add(priority(v, out, in, contracted, contractedNeighbors, witness, false), v);
+        }
+
+        int order = 0;
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            if (contracted[v]) {
+                continue;
+            }
+            // lazy update: contract only if it is still the best candidate
+            double p = priority(v, out, in, contracted, contractedNeighbors, witness, false);
+            if (!queue.isEmpty() && p > queue.peekKey()) {
+                queue.add(p, v);
+                continue;
+            }
+            priority(v, out, in, contracted, contractedNeighbors, witness, true);
+            contracted[v] = true;
+            rank[v] = order++;
+            for (int i = 0; i < out[v].size; i++) {
+                contractedNeighbors[edgeTo[out[v].values[i]]]++;
+            }
+            for (int i = 0; i < in[v].size; i++) {
+                contractedNeighbors[edgeFrom[in[v].values[i]]]++;
+            }
+        }
+    }
+
+    /**
+     * Simulates (or performs, if contract is true) the contraction of node v.
+     *
+     * @return edge difference plus the number of contracted neighbors
+     */
+    private double priority(int v, IntList[] out, IntList[] in, boolean[] contracted, int[] contractedNeighbors,
+            WitnessSearch witness, boolean contract) {
+        int shortcuts = 0;
+        int removed = 0;
+        for (int i = 0; i < out[v].size; i++) {
+            if (!contracted[edgeTo[out[v].values[i]]]) {
+                removed++;
+            }
+        }
+        for (int i = 0; i < in[v].size; i++) {
+            int uv = in[v].values[i];
+            int u = edgeFrom[uv];
+            if (contracted[u]) {
+                continue;
+            }
+            removed++;
+            double maxCost = 0;
+            for (int j = 0; j < out[v].size; j++) {
+                int vw = out[v].values[j];
+                int w = edgeTo[vw];
+                if (!contracted[w] && w != u) {
+                    maxCost = Math.max(maxCost, edgeWeight[uv] + edgeWeight[vw]);
+                }
+            }
+            witness.run(u, v, maxCost, out, contracted, edgeTo, edgeWeight);
+            for (int j = 0; j < out[v].size; j++) {
+                int vw = out[v].values[j];
+                int w = edgeTo[vw];
+                if (contracted[w] || w == u) {
+                    continue;
+                }
+                double cost = edgeWeight[uv] + edgeWeight[vw];
+                if (witness.dist(w) <= cost) {
+                    continue;
+                }
+                shortcuts++;
+                if (contract) {
+                    int id = addEdge(u, w, cost, -1, uv, vw);
+                    out[u].add(id);
+                    in[w].add(id);
+                }
+            }
+        }
+        return shortcuts - removed + contractedNeighbors[v];
+    }
+
+    private int addEdge(int from, int to, double weight, int original, int first, int second) {
+        if (numOfEdges == edgeFrom.length) {
+            int capacity = Math.max(16, edgeFrom.length * 3 / 2);
+            edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+            edgeTo = Arrays.copyOf(edgeTo, capacity);
+            edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+            edgeOriginal = Arrays.copyOf(edgeOriginal, capacity);
+            edgeFirst = Arrays.copyOf(edgeFirst, capacity);
+            edgeSecond = Arrays.copyOf(edgeSecond, capacity);
+        }
+        edgeFrom[numOfEdges] = from;
+        edgeTo[numOfEdges] = to;
+        edgeWeight[numOfEdges] = weight;
+        edgeOriginal[numOfEdges] = original;
+        edgeFirst[numOfEdges] = first;
+        edgeSecond[numOfEdges] = second;
+        return numOfEdges++;
+    }
+
+    private void createSearchGraphs() {
+        int n = rank.length;
+        upStart = new int[n + 1];
+        downStart = new int[n + 1];
+        for (int e = 0; e < numOfEdges; e++) {
+            int a = edgeFrom[e];
+            int b = edgeTo[e];
+            if (a == b) {
+                continue;
+            }
+            if (rank[b] > rank[a]) {
+                upStart[a + 1]++;
+            } else {
+                downStart[b + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            upStart[i + 1] += upStart[i];
+            downStart[i + 1] += downStart[i];
+        }
+        upEdges = new int[upStart[n]];
+        downEdges = new int[downStart[n]];
+        int[] upPosition = Arrays.copyOf(upStart, n);
+        int[] downPosition = Arrays.copyOf(downStart, n);
+        for (int e = 0; e < numOfEdges; e++) {
+            int a = edgeFrom[e];
+            int b = edgeTo[e];
+            if (a == b) {
+                continue;
+            }
+            if (rank[b] > rank[a]) {
+                upEdges[upPosition[a]++] = e;
+            } else {
+                downEdges[downPosition[b]++] = e;
+            }
+        }
+    }
+
+    private static long signature(IndexedAStar graph) {
+        long hash = 1125899906842597L;
+        hash = 31 * hash + graph.getNumberOfNodes();
+        hash = 31 * hash + graph.getNumberOfEdges();
+        for (int i = 0; i < graph.getNumberOfNodes(); i++) {
+            Coordinate coord = graph.getNode(i).getCoordinate();
+            hash = 31 * hash + Double.doubleToLongBits(coord.x);
+            hash = 31 * hash + Double.doubleToLongBits(coord.y);
+        }
+        for (int e = 0; e < graph.getNumberOfEdges(); e++) {
+            hash = 31 * hash + graph.getEdgeTarget(e);
+            hash = 31 * hash + Double.doubleToLongBits(graph.getEdgeWeight(e));
+        }
+        return hash;
+    }
+
+    // File I/O______________________________________________________________
+
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(signature);
+            out.writeInt(rank.length);
+            for (int i = 0; i < rank.length; i++) {
+                out.writeInt(rank[i]);
+            }
+            out.writeInt(numOfEdges);
+            for (int e = 0; e < numOfEdges; e++) {
+                out.writeInt(edgeFrom[e]);
+                out.writeInt(edgeTo[e]);
+                out.writeDouble(edgeWeight[e]);
+                out.writeInt(edgeOriginal[e]);
+                out.writeInt(edgeFirst[e]);
+                out.writeInt(edgeSecond[e]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the index stored in the file or null if it was built for another
+     *         graph
+     */
+    public static ContractionHierarchy read(IndexedAStar graph, File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long signature = in.readLong();
+            int n = in.readInt();
+            if (n != graph.getNumberOfNodes() || signature != signature(graph)) {
+                return null;
+            }
+            int[] rank = new int[n];
+            for (int i = 0; i < n; i++) {
+                rank[i] = in.readInt();
+            }
+            ContractionHierarchy ch = new ContractionHierarchy(graph, signature, rank);
+            int m = in.readInt();
+            ch.numOfEdges = m;
+            ch.edgeFrom = new int[m];
+            ch.edgeTo = new int[m];
+            ch.edgeWeight = new double[m];
+            ch.edgeOriginal = new int[m];
+            ch.edgeFirst = new int[m];
+            ch.edgeSecond = new int[m];
+            for (int e = 0; e < m; e++) {
+                ch.edgeFrom[e] = in.readInt();
+                ch.edgeTo[e] = in.readInt();
+                ch.edgeWeight[e] = in.readDouble();
+                ch.edgeOriginal[e] = in.readInt();
+                ch.edgeFirst[e] = in.readInt();
+                ch.edgeSecond[e] = in.readInt();
+            }
+            ch.createSearchGraphs();
+            return ch;
+        } finally {
+            in.close();
+        }
+    }
+
+    // Containers___________________________________________________________
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void replace(int oldValue, int newValue) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == oldValue) {
+                    values[i] = newValue;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A binary min-heap of (key, node) pairs. Decrease-key is done by adding a
+     * new entry; outdated entries are skipped by the caller.
+     */
+    private static final class MinHeap {
+        double[] keys;
+        int[] values;
+        int size;
+
+        MinHeap(int capacity) {
+            keys = new double[Math.max(capacity, 4)];
+            values = new int[Math.max(capacity, 4)];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        double peekKey() {
+            return keys[0];
+        }
+
+        void add(double key, int value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                values[i] = values[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        int poll() {
+            int result = values[0];
+            size--;
+            if (size > 0) {
+                double key = keys[size];
+                int value = values[size];
+                int i = 0;
+                int half = size >>> 1;
+                while (i < half) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < size && keys[child + 1] < keys[child]) {
+                        child++;
+                    }
+                    if (key <= keys[child]) {
+                        break;
+                    }
+                    keys[i] = keys[child];
+                    values[i] = values[child];
+                    i = child;
+                }
+                keys[i] = key;
+                values[i] = value;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Bounded Dijkstra used to check whether a shortcut is necessary.
+     */
+    private static final class WitnessSearch {
+        final double[] dist;
+        final int[] stamp;
+        final MinHeap heap;
+        int currentStamp;
+
+        WitnessSearch(int size) {
+            dist = new double[size];
+            stamp = new int[size];
+            heap = new MinHeap(64);
+        }
+
+        double dist(int node) {
+            return stamp[node] == currentStamp ? dist[node] : Double.POSITIVE_INFINITY;
+        }
+
+        void run(int source, int ignored, double maxCost, IntList[] out, boolean[] contracted, int[] edgeTo,
+                double[] edgeWeight) {
+            currentStamp++;
+            heap.clear();
+            stamp[source] = currentStamp;
+            dist[source] = 0;
+            heap.add(0, source);
+            int settled = 0;
+            while (!heap.isEmpty() && settled < WITNESS_SETTLE_LIMIT) {
+                double key = heap.peekKey();
+                int x = heap.poll();
+                if (key > dist(x)) {
+                    continue;
+                }
+                if (key > maxCost) {
+                    break;
+                }
+                settled++;
+                IntList edges = out[x];
+                for (int i = 0; i < edges.size; i++) {
+                    int e = edges.values[i];
+                    int next = edgeTo[e];
+                    if (next == ignored || contracted[next]) {
+                        continue;
+                    }
+                    double cost = key + edgeWeight[e];
+                    if (cost < dist(next)) {
+                        stamp[next] = currentStamp;
+                        dist[next] = cost;
+                        heap.add(cost, next);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Search {
+        final double[] dist;
+        final int[] parent;
+        final int[] stamp;
+        final MinHeap heap;
+        int currentStamp;
+
+        Search(int size) {
+            dist = new double[size];
+            parent = new int[size];
+            stamp = new int[size];
+            heap = new MinHeap(64);
+        }
+
+        void reset() {
+            currentStamp++;
+            heap.clear();
+        }
+
+        boolean isReached(int node) {
+            return stamp[node] == currentStamp;
+        }
+
+        double dist(int node) {
+            return stamp[node] == currentStamp ? dist[node] : Double.POSITIVE_INFINITY;
+        }
+
+        int parent(int node) {
+            return parent[node];
+        }
+
+        void relax(int node, double cost, int edge) {
+            stamp[node] = currentStamp;
+            dist[node] = cost;
+            parent[node] = edge;
+            heap.add(cost, node);
+        }
+    }
+
+    private static final class QueryState {
+        final Search forward;
+        final Search backward;
+        int[] stack = new int[64];
+        int[] unpackStack = new int[64];
+
+        QueryState(int size) {
+            forward = new Search(size);
+            backward = new Search(size);
+        }
+
+        void reset() {
+            forward.reset();
+            backward.reset();
+        }
+    }
+}
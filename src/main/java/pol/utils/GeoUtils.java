@@ -52,9 +52,36 @@ public class GeoUtils {
 		return findNearestGeometry(from, field, DEFAULT_DISTANCE);
 	}
 
+	/**
+	 * This method is to find the nearest geometry from a given geometry using a
+	 * prebuilt index (see {@link GeometryIndex#create(GeomVectorField)}).
+	 * 
+	 * @param from
+	 * @param index
+	 * @return
+	 */
+	public static MasonGeometry findNearestGeometry(MasonGeometry from, GeometryIndex<MasonGeometry> index) {
+		return index.nearest(from);
+	}
+
+	/**
+	 * This method is to find the k nearest geometries from a given geometry using
+	 * a prebuilt index. The result is ordered by distance.
+	 * 
+	 * @param from
+	 * @param index
+	 * @param k
+	 * @return
+	 */
+	public static List<MasonGeometry> findNearestGeometries(MasonGeometry from, GeometryIndex<MasonGeometry> index,
+			int k) {
+		return index.nearest(from, k);
+	}
+
 	/**
 	 * This method is to find the nearest geometry from a given geometry in a given
-	 * GeomVectorField.
+	 * GeomVectorField. It is used for fields that change over time, since the
+	 * static layers are queried through GeometryIndex.
 	 * 
 	 * @param from
 	 * @param field
@@ -64,8 +91,7 @@ public class GeoUtils {
 	public static MasonGeometry findNearestGeometry(MasonGeometry from, GeomVectorField field, double startDistance) {
 		// we assume the index of field is up-to-dated.
 
-		// TODO: we need to optimize NNQ later
-		// For now, we gradually increase a distance for the nearest neighbor query, and
+		// We gradually increase a distance for the nearest neighbor query, and
 		// then perform range query.
 		Bag candidates = field.getGeometries();
 		double dist = startDistance;
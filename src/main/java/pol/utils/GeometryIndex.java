@@ -0,0 +1,204 @@
+package pol.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.ToDoubleBiFunction;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.AbstractNode;
+import com.vividsolutions.jts.index.strtree.Boundable;
+import com.vividsolutions.jts.index.strtree.ItemBoundable;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+import sim.field.geo.GeomVectorField;
+import sim.util.geo.MasonGeometry;
+
+/**
+ * General description_________________________________________________________
+ * A static spatial index answering k nearest neighbor queries. Items are
+ * packed into an STR-tree once and queries visit the tree best-first: nodes
+ * are expanded in the order of the distance between their bounding box and
+ * the query geometry, so only the nodes that can hold one of the k nearest
+ * items are read.
+ *
+ * Items at the same distance are returned in the order they were given to the
+ * constructor. Items can be removed but not added after the index is built.
+ */
+public class GeometryIndex<T> implements java.io.Serializable {
+	private static final long serialVersionUID = -2420302003373637713L;
+	private static final int NODE_CAPACITY = 10;
+	// bounding box distances are shrunk a little so that they never exceed
+	// the distance of an item in the box due to rounding errors
+	private static final double BOUND_FACTOR = 1 - 1e-9;
+
+	public interface DistanceFunction<T> extends ToDoubleBiFunction<T, MasonGeometry>, java.io.Serializable {
+	}
+
+	private final STRtree tree;
+	private final List<T> items;
+	private final Map<T, Integer> indexes;
+	private final boolean[] removed;
+	private final DistanceFunction<? super T> distance;
+	private int size;
+
+	/**
+	 * @param items
+	 * @param geometry
+	 *            returns the geometry of an item
+	 * @param distance
+	 *            returns the distance between an item and the query geometry.
+	 *            It must not be shorter than the distance between the bounding
+	 *            box of the item and the query geometry.
+	 */
+	public GeometryIndex(Collection<? extends T> items, Function<? super T, Geometry> geometry,
+			DistanceFunction<? super T> distance) {
+		this.tree = new STRtree(NODE_CAPACITY);
+		this.items = new ArrayList<T>(items);
+		this.indexes = new IdentityHashMap<T, Integer>();
+		this.removed = new boolean[this.items.size()];
+		this.distance = distance;
+		this.size = this.items.size();
+		for (int i = 0; i < this.items.size(); i++) {
+			T item = this.items.get(i);
+			indexes.put(item, i);
+			tree.insert(geometry.apply(item).getEnvelopeInternal(), i);
+		}
+		tree.build();
+	}
+
+	/**
+	 * Creates an index of geometries in the given field. The distance is
+	 * measured between geometries as GeoUtils.findNearestGeometry does.
+	 */
+	public static GeometryIndex<MasonGeometry> create(GeomVectorField field) {
+		List<MasonGeometry> geometries = new ArrayList<MasonGeometry>(field.getGeometries().size());
+		for (Object obj : field.getGeometries()) {
+			geometries.add((MasonGeometry) obj);
+		}
+		return new GeometryIndex<MasonGeometry>(geometries, MasonGeometry::getGeometry,
+				(geo, from) -> geo.geometry.distance(from.geometry));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Excludes the given item from the results of later queries.
+	 *
+	 * @return false if the item is not in the index
+	 */
+	public boolean remove(T item) {
+		Integer index = indexes.get(item);
+		if (index == null || removed[index]) {
+			return false;
+		}
+		removed[index] = true;
+		size--;
+		return true;
+	}
+
+	/**
+	 * @return the nearest item or null if there is no item
+	 */
+	public T nearest(MasonGeometry from) {
+		List<T> result = nearest(from, 1, Double.POSITIVE_INFINITY);
+		return result.isEmpty() ? null : result.get(0);
+	}
+
+	/**
+	 * @return the nearest item whose distance is less than the given distance
+	 *         or null if there is no such item
+	 */
+	public T nearestWithin(MasonGeometry from, double maxDistance) {
+		List<T> result = nearest(from, 1, maxDistance);
+		return result.isEmpty() ? null : result.get(0);
+	}
+
+	/**
+	 * @return the k nearest items ordered by distance
+	 */
+	public List<T> nearest(MasonGeometry from, int k) {
+		return nearest(from, k, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * @return the k nearest items whose distances are less than maxDistance,
+	 *         ordered by distance
+	 */
+	public List<T> nearest(MasonGeometry from, int k, double maxDistance) {
+		List<T> result = new ArrayList<T>(Math.max(Math.min(k, size), 0));
+		if (k <= 0 || size == 0 || tree.getRoot() == null) {
+			return result;
+		}
+		Envelope envelope = from.getGeometry().getEnvelopeInternal();
+		PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+		queue.add(new Candidate(tree.getRoot(), bound(tree.getRoot(), envelope), -1));
+
+		while (queue.isEmpty() == false) {
+			Candidate candidate = queue.poll();
+			if (candidate.distance >= maxDistance) {
+				break;
+			}
+			if (candidate.index >= 0) {
+				// every item left in the queue or in the unvisited nodes is as
+				// far as this item or farther
+				result.add(items.get(candidate.index));
+				if (result.size() == k) {
+					break;
+				}
+				continue;
+			}
+			for (Object child : ((AbstractNode) candidate.boundable).getChildBoundables()) {
+				if (child instanceof AbstractNode) {
+					AbstractNode node = (AbstractNode) child;
+					queue.add(new Candidate(node, bound(node, envelope), -1));
+				} else {
+					int index = (Integer) ((ItemBoundable) child).getItem();
+					if (removed[index]) {
+						continue;
+					}
+					double dist = distance.applyAsDouble(items.get(index), from);
+					queue.add(new Candidate(null, dist, index));
+				}
+			}
+		}
+		return result;
+	}
+
+	private static double bound(Boundable boundable, Envelope envelope) {
+		return ((Envelope) boundable.getBounds()).distance(envelope) * BOUND_FACTOR;
+	}
+
+	/**
+	 * A node of the tree with the lower bound of distances of its items or an
+	 * item with its distance. On ties, nodes come first so that items are
+	 * ordered by index.
+	 */
+	private static final class Candidate implements Comparable<Candidate> {
+		final Boundable boundable;
+		final double distance;
+		final int index;
+
+		Candidate(Boundable boundable, double distance, int index) {
+			this.boundable = boundable;
+			this.distance = distance;
+			this.index = index;
+		}
+
+		@Override
+		public int compareTo(Candidate o) {
+			int result = Double.compare(distance, o.distance);
+			if (result != 0) {
+				return result;
+			}
+			return Integer.compare(index, o.index);
+		}
+	}
+}
@@ -0,0 +1,358 @@
+package pol.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.planargraph.Node;
+
+import sim.util.geo.GeomPlanarGraph;
+import sim.util.geo.GeomPlanarGraphDirectedEdge;
+import sim.util.geo.GeomPlanarGraphEdge;
+
+/**
+ * General description_________________________________________________________
+ * An A* implementation that works on a primitive copy of a planar graph. Every
+ * node of the graph is indexed once to an integer id and the outgoing edges are
+ * stored in flat arrays (compressed adjacency), so that a search only touches
+ * primitive arrays and an indexed binary heap. The search state is kept per
+ * thread and reused between queries.
+ *
+ * The returned paths are identical to the ones of {@link AStar}: the open set is
+ * ordered by fx and ties are broken by the order in which nodes were opened,
+ * which is the order the linear scan of {@link AStar#findMin} resolves them.
+ *
+ */
+public class IndexedAStar {
+
+    private static final byte UNSEEN = 0;
+    private static final byte OPEN = 1;
+    private static final byte CLOSED = 2;
+
+    private final Node[] nodes;
+    private final Map<Node, Integer> nodeIds;
+    private final double[] nodeX;
+    private final double[] nodeY;
+
+    // outgoing edges of node i are stored in [edgeStart[i], edgeStart[i + 1])
+    private final int[] edgeStart;
+    private final int[] edgeTarget;
+    private final double[] edgeLength;
+    private final GeomPlanarGraphDirectedEdge[] edges;
+    private final GeomPlanarGraphEdge[] weightedEdges;
+    private final Map<GeomPlanarGraphDirectedEdge, Integer> edgeIds;
+
+    private final ThreadLocal<SearchState> searchState;
+
+    public IndexedAStar(GeomPlanarGraph graph) {
+        int numOfNodes = graph.getNodes().size();
+        nodes = new Node[numOfNodes];
+        nodeIds = new HashMap<Node, Integer>(numOfNodes * 2);
+        nodeX = new double[numOfNodes];
+        nodeY = new double[numOfNodes];
+        edgeStart = new int[numOfNodes + 1];
+
+        int index = 0;
+        int numOfEdges = 0;
+        for (Iterator<?> it = graph.nodeIterator(); it.hasNext();) {
+            Node node = (Node) it.next();
+            Coordinate coord = node.getCoordinate();
+            nodes[index] = node;
+            nodeIds.put(node, index);
+            nodeX[index] = coord.x;
+            nodeY[index] = coord.y;
+            numOfEdges += node.getOutEdges().getDegree();
+            index++;
+        }
+
+        edgeTarget = new int[numOfEdges];
+        edgeLength = new double[numOfEdges];
+        edges = new GeomPlanarGraphDirectedEdge[numOfEdges];
+        weightedEdges = new GeomPlanarGraphEdge[numOfEdges];
+        edgeIds = new HashMap<GeomPlanarGraphDirectedEdge, Integer>(numOfEdges * 2);
+
+        int position = 0;
+        for (int i = 0; i < numOfNodes; i++) {
+            edgeStart[i] = position;
+            // same (angular) order as DirectedEdgeStar.getEdges() used by AStar
+            for (Object o : nodes[i].getOutEdges().getEdges()) {
+                GeomPlanarGraphDirectedEdge l = (GeomPlanarGraphDirectedEdge) o;
+                edges[position] = l;
+                edgeIds.put(l, position);
+                edgeTarget[position] = nodeIds.get(l.getToNode());
+                edgeLength[position] = AStar.length(l);
+                if (l.getEdge() instanceof GeomPlanarGraphEdge) {
+                    weightedEdges[position] = (GeomPlanarGraphEdge) l.getEdge();
+                }
+                position++;
+            }
+        }
+        edgeStart[numOfNodes] = position;
+
+        searchState = new ThreadLocal<SearchState>() {
+            @Override
+            protected SearchState initialValue() {
+                return new SearchState(nodes.length);
+            }
+        };
+    }
+
+    /**
+     * @param node
+     * @return the integer id of the given node or -1 if it is not part of the
+     *         indexed graph
+     */
+    public int getNodeId(Node node) {
+        Integer id = nodeIds.get(node);
+        return id == null ? -1 : id;
+    }
+
+    public Node getNode(int id) {
+        return nodes[id];
+    }
+
+    public int getNumberOfNodes() {
+        return nodes.length;
+    }
+
+    public int getNumberOfEdges() {
+        return edges.length;
+    }
+
+    /**
+     * @param node
+     * @return index of the first outgoing edge of the node. The outgoing edges
+     *         of node i are [getEdgeStart(i), getEdgeStart(i + 1)).
+     */
+    public int getEdgeStart(int node) {
+        return edgeStart[node];
+    }
+
+    public int getEdgeTarget(int e) {
+        return edgeTarget[e];
+    }
+
+    /**
+     * @param edge
+     * @return the integer id of the given directed edge or -1 if it is not
+     *         part of the indexed graph
+     */
+    public int getEdgeId(GeomPlanarGraphDirectedEdge edge) {
+        Integer id = edgeIds.get(edge);
+        return id == null ? -1 : id;
+    }
+
+    public GeomPlanarGraphDirectedEdge getEdge(int e) {
+        return edges[e];
+    }
+
+    public double getEdgeWeight(int e) {
+        return weight(e);
+    }
+
+    public ArrayList<GeomPlanarGraphDirectedEdge> astarPath(Node start, Node goal) {
+        int startId = start == null ? -1 : getNodeId(start);
+        int goalId = goal == null ? -1 : getNodeId(goal);
+        // initial check
+        if (startId < 0 || goalId < 0) {
+            System.out.println("Error: invalid node provided to AStar");
+            return new ArrayList<GeomPlanarGraphDirectedEdge>();
+        }
+        return astarPath(startId, goalId);
+    }
+
+    public ArrayList<GeomPlanarGraphDirectedEdge> astarPath(int start, int goal) {
+        SearchState s = searchState.get();
+        s.reset();
+
+        s.cameFrom[start] = -1;
+        s.open(start, 0, heuristic(start, goal));
+
+        while (s.heapSize > 0) {
+            int x = s.heap[0]; // find the shortest path so far
+            if (x == goal) {
+                return reconstructPath(s, goal);
+            }
+            s.poll();
+
+            for (int e = edgeStart[x], end = edgeStart[x + 1]; e < end; e++) {
+                int next = edgeTarget[e];
+                byte state = s.state(next);
+                if (state == CLOSED) {
+                    continue;
+                }
+                double tentativeCost = s.gx[x] + weight(e);
+                if (state == UNSEEN) {
+                    s.cameFrom[next] = x;
+                    s.edgeFrom[next] = e;
+                    s.open(next, tentativeCost, heuristic(next, goal));
+                } else if (tentativeCost < s.gx[next]) {
+                    s.cameFrom[next] = x;
+                    s.edgeFrom[next] = e;
+                    s.decrease(next, tentativeCost);
+                }
+            }
+        }
+
+        // we couldn't find the shortest path
+        return new ArrayList<GeomPlanarGraphDirectedEdge>();
+    }
+
+    private ArrayList<GeomPlanarGraphDirectedEdge> reconstructPath(SearchState s, int goal) {
+        int count = 0;
+        for (int x = goal; s.cameFrom[x] >= 0; x = s.cameFrom[x]) {
+            count++;
+        }
+        GeomPlanarGraphDirectedEdge[] reversed = new GeomPlanarGraphDirectedEdge[count];
+        int i = count;
+        for (int x = goal; s.cameFrom[x] >= 0; x = s.cameFrom[x]) {
+            reversed[--i] = edges[s.edgeFrom[x]];
+        }
+        ArrayList<GeomPlanarGraphDirectedEdge> result = new ArrayList<GeomPlanarGraphDirectedEdge>(count);
+        for (GeomPlanarGraphDirectedEdge edge : reversed) {
+            result.add(edge);
+        }
+        return result;
+    }
+
+    private double heuristic(int x, int y) {
+        return Math.sqrt(Math.pow(nodeX[x] - nodeX[y], 2)
+                + Math.pow(nodeY[x] - nodeY[y], 2));
+    }
+
+    /**
+     * Same value as {@link AStar#weight}. The weight attribute is read at query
+     * time because it can be changed by manipulations during the simulation.
+     */
+    private double weight(int e) {
+        double weight = 1;
+        GeomPlanarGraphEdge edge = weightedEdges[e];
+        if (edge != null && edge.hasAttribute("weight")) {
+            weight = edge.getDoubleAttribute("weight");
+        }
+        return edgeLength[e] * weight;
+    }
+
+    /**
+     * Reusable per-thread search containers. Instead of clearing the arrays
+     * after each query, a node is considered unseen unless its stamp equals the
+     * stamp of the current query.
+     */
+    private static final class SearchState {
+        final double[] gx;
+        final double[] hx;
+        final double[] fx;
+        final int[] cameFrom;
+        final int[] edgeFrom;
+        final int[] stamp;
+        final byte[] status;
+        // order in which nodes were opened, used for breaking ties of fx
+        final int[] openOrder;
+        final int[] heap;
+        final int[] heapIndex;
+        int heapSize;
+        int currentStamp;
+        int openCount;
+
+        SearchState(int size) {
+            gx = new double[size];
+            hx = new double[size];
+            fx = new double[size];
+            cameFrom = new int[size];
+            edgeFrom = new int[size];
+            stamp = new int[size];
+            status = new byte[size];
+            openOrder = new int[size];
+            heap = new int[size];
+            heapIndex = new int[size];
+        }
+
+        void reset() {
+            heapSize = 0;
+            openCount = 0;
+            currentStamp++;
+            if (currentStamp == Integer.MAX_VALUE) {
+                java.util.Arrays.fill(stamp, 0);
+                currentStamp = 1;
+            }
+        }
+
+        byte state(int node) {
+            return stamp[node] == currentStamp ? status[node] : UNSEEN;
+        }
+
+        void open(int node, double g, double h) {
+            stamp[node] = currentStamp;
+            status[node] = OPEN;
+            gx[node] = g;
+            hx[node] = h;
+            fx[node] = g + h;
+            openOrder[node] = openCount++;
+            heap[heapSize] = node;
+            heapIndex[node] = heapSize;
+            heapSize++;
+            siftUp(heapIndex[node]);
+        }
+
+        void decrease(int node, double g) {
+            gx[node] = g;
+            fx[node] = g + hx[node];
+            siftUp(heapIndex[node]);
+        }
+
+        void poll() {
+            int node = heap[0];
+            status[node] = CLOSED;
+            heapSize--;
+            if (heapSize > 0) {
+                heap[0] = heap[heapSize];
+                heapIndex[heap[0]] = 0;
+                siftDown(0);
+            }
+        }
+
+        private boolean less(int a, int b) {
+            if (fx[a] != fx[b]) {
+                return fx[a] < fx[b];
+            }
+            return openOrder[a] < openOrder[b];
+        }
+
+        private void siftUp(int i) {
+            int node = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!less(node, heap[parent])) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                heapIndex[heap[i]] = i;
+                i = parent;
+            }
+            heap[i] = node;
+            heapIndex[node] = i;
+        }
+
+        private void siftDown(int i) {
+            int node = heap[i];
+            int half = heapSize >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < heapSize && less(heap[right], heap[child])) {
+                    child = right;
+                }
+                if (!less(heap[child], node)) {
+                    break;
+                }
+                heap[i] = heap[child];
+                heapIndex[heap[i]] = i;
+                i = child;
+            }
+            heap[i] = node;
+            heapIndex[node] = i;
+        }
+    }
+}
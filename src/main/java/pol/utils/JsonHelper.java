@@ -1,6 +1,6 @@
 package pol.utils;
 
-import java.util.Set;
+import java.util.Map;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -16,61 +16,76 @@ import com.google.gson.JsonObject;
 public class JsonHelper {
 	public static String getSchema(JsonElement element) {
 		if (element.isJsonObject()) {
-			return recursiveSchema(element.getAsJsonObject(), "");
+			StringBuilder builder = new StringBuilder();
+			appendSchema(builder, element.getAsJsonObject(), "");
+			return builder.toString();
 		}
 		return "";
 	}
 
-	private static String recursiveSchema(JsonObject jObj, String prefix) {
-		StringBuffer builder = new StringBuffer();
+	/**
+	 * Appends the column names of the members of the object, nested objects
+	 * being flattened as prefix:key:member.
+	 */
+	public static void appendSchema(StringBuilder builder, JsonObject jObj, String prefix) {
+		for (Map.Entry<String, JsonElement> entry : jObj.entrySet()) {
+			appendMemberSchema(builder, prefix + entry.getKey(), entry.getValue());
+		}
+	}
 
-		Set<String> set = jObj.keySet();
-		for (String key : set) {
-			JsonElement element = jObj.get(key);
-			if (element.isJsonObject())
-				builder.append(recursiveSchema(element.getAsJsonObject(),
-						prefix + key + ":"));
-			else {
-				builder.append(prefix + key);
-				builder.append("\t");
-			}
+	/**
+	 * Appends the column names of an element named name.
+	 */
+	public static void appendMemberSchema(StringBuilder builder, String name, JsonElement element) {
+		if (element.isJsonObject())
+			appendSchema(builder, element.getAsJsonObject(), name + ":");
+		else {
+			builder.append(name);
+			builder.append("\t");
 		}
-		return builder.toString();
 	}
 
 	public static String getTabSeparateValue(JsonElement element) {
 		if (element.isJsonObject()) {
-			return recursiveValue(element.getAsJsonObject());
+			StringBuilder builder = new StringBuilder();
+			appendTabSeparateValue(builder, element.getAsJsonObject());
+			return builder.toString();
 		}
 		return "";
 	}
 
-	private static String recursiveValue(JsonObject jObj) {
-		StringBuffer builder = new StringBuffer();
+	/**
+	 * Appends the values of the members of the object, each followed by a tab.
+	 */
+	public static void appendTabSeparateValue(StringBuilder builder, JsonObject jObj) {
+		for (Map.Entry<String, JsonElement> entry : jObj.entrySet()) {
+			appendMemberValue(builder, entry.getValue());
+		}
+	}
 
-		Set<String> set = jObj.keySet();
-		for (String key : set) {
-			JsonElement element = jObj.get(key);
-			if (element.isJsonObject())
-				builder.append(recursiveValue(element.getAsJsonObject()));
-			else if (element.isJsonArray()) {
-				JsonArray array = element.getAsJsonArray();
-				builder.append("[");
-				for (JsonElement jsonElement : array) {
-					builder.append(jsonElement.getAsString());
-					builder.append(",");
-				}
-				if (array.size() > 0)
-					builder.deleteCharAt(builder.length() - 1);
-				builder.append("]\t");
-			} else if (element.isJsonNull()) {
-				builder.append(element.getAsJsonNull().toString());
-				builder.append("\t");
-			} else {
-				builder.append(element.getAsString());
-				builder.append("\t");
+	/**
+	 * Appends the value of an element, or the values of its members if it is
+	 * an object, each followed by a tab.
+	 */
+	public static void appendMemberValue(StringBuilder builder, JsonElement element) {
+		if (element.isJsonObject())
+			appendTabSeparateValue(builder, element.getAsJsonObject());
+		else if (element.isJsonArray()) {
+			JsonArray array = element.getAsJsonArray();
+			builder.append("[");
+			for (JsonElement jsonElement : array) {
+				builder.append(jsonElement.getAsString());
+				builder.append(",");
 			}
+			if (array.size() > 0)
+				builder.deleteCharAt(builder.length() - 1);
+			builder.append("]\t");
+		} else if (element.isJsonNull()) {
+			builder.append(element.getAsJsonNull().toString());
+			builder.append("\t");
+		} else {
+			builder.append(element.getAsString());
+			builder.append("\t");
 		}
-		return builder.toString();
 	}
 }
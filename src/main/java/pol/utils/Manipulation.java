@@ -41,6 +41,7 @@ public class Manipulation implements Schedulable {
 	public void step(SimState state) {
 		WorldModel model = (WorldModel) state;
 		Object target = null;
+		GeomPlanarGraphEdge road = null;
 		try {
 			// select * from actor where id
 			if (actor.equalsIgnoreCase(PERSON)) {
@@ -54,6 +55,7 @@ public class Manipulation implements Schedulable {
 							.getAttribute("id");
 					if (attribute.getValue().equals(Integer.parseInt(id))) {
 						target = edge;
+						road = edge;
 						break;
 					}
 				}
@@ -181,6 +183,14 @@ public class Manipulation implements Schedulable {
 			}
 
 			field.set(target, result);
+			if (actor.equalsIgnoreCase(PERSON)) {
+				// the agent might have been idle assuming its state is unchanged
+				model.getAgent(Long.parseLong(id)).stopIdling();
+			}
+			if (road != null) {
+				// paths passing the road are no longer valid
+				model.getSpatialNetwork().update(road);
+			}
 		} catch (Exception e) {
 			logger.error("Error occured during manipulation", e);
 		}
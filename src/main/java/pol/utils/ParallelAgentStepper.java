@@ -0,0 +1,287 @@
+package pol.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ec.util.MersenneTwisterFast;
+import pol.Person;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim.engine.Stoppable;
+
+/**
+ * General description_________________________________________________________
+ * Steps all agents at once using a fork-join pool instead of scheduling each
+ * agent separately. A step is done in three phases:
+ *
+ * 1) agents execute their instructions one by one,
+ *
+ * 2) agents update their needs and move in parallel
+ * ({@link Person#stepLocally()}) while their effects on other objects (e.g.,
+ * arriving at a place or writing a trajectory) are postponed,
+ *
+ * 3) the postponed effects are applied and agents that are not in transport
+ * satisfy their needs ({@link Person#stepSerially()}) one by one.
+ *
+ * Agents are always visited in the order they were added and every agent has
+ * its own random number stream derived from the simulation seed and its id, so
+ * the result does not depend on the number of threads. With one thread, agents
+ * are stepped locally in the calling thread.
+ *
+ * Agents that are idle for the next steps (see
+ * {@link Person#getNumberOfIdleSteps()}) are parked in a list of the step they
+ * have to be stepped again at and are not visited until then. When they are
+ * stepped again, they first catch up the steps they missed
+ * ({@link Person#unpark()}). Agents whose state is changed by others while
+ * parked are stepped again from the next step on ({@link #wake(Person)}).
+ */
+public class ParallelAgentStepper implements Steppable {
+	private static final long serialVersionUID = -1624883526372525418L;
+	// number of agents stepped by a task without splitting it further
+	private static final int GRANULARITY = 256;
+	private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry a, Entry b) {
+			return Long.compare(a.order, b.order);
+		}
+	};
+
+	private final int numOfThreads;
+	private final long seed;
+	// agents that are not parked, in the order they were added
+	private List<Entry> entries;
+	// step -> agents parked until the step
+	private final Map<Long, List<Entry>> parkedEntries;
+	// parked agents to be stepped again before their step
+	private final List<Entry> wokenEntries;
+	// agent id -> agent, parked or not
+	private final Map<Long, Entry> entriesById;
+	private long numOfAddedAgents;
+	private transient ForkJoinPool pool;
+	private transient boolean[] isDone;
+
+	public ParallelAgentStepper(long seed, int numOfThreads) {
+		this.seed = seed;
+		this.numOfThreads = numOfThreads;
+		this.entries = new ArrayList<Entry>();
+		this.parkedEntries = new HashMap<Long, List<Entry>>();
+		this.wokenEntries = new ArrayList<Entry>();
+		this.entriesById = new HashMap<Long, Entry>();
+		this.numOfAddedAgents = 0;
+	}
+
+	/**
+	 * Adds an agent to be stepped and gives the agent its own random number
+	 * stream.
+	 *
+	 * @param agent
+	 * @return used to stop stepping the agent
+	 */
+	public Stoppable add(Person agent) {
+		long id = agent.getAgentId();
+		agent.setRandom(new MersenneTwisterFast(
+				new int[] { (int) seed, (int) (seed >>> 32), (int) id, (int) (id >>> 32) }));
+		final Entry entry = new Entry(agent, numOfAddedAgents++);
+		entries.add(entry);
+		entriesById.put(id, entry);
+		return new Stoppable() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void stop() {
+				entry.isStopped = true;
+			}
+		};
+	}
+
+	public int getNumberOfAgents() {
+		return entriesById.size();
+	}
+
+	/**
+	 * Steps the given parked agent again from the next step on, since its
+	 * state was changed by others.
+	 *
+	 * @param agent
+	 */
+	public void wake(Person agent) {
+		Entry entry = entriesById.get(agent.getAgentId());
+		if (entry != null && entry.wakeStep >= 0) {
+			entry.wakeStep = -1;
+			wokenEntries.add(entry);
+		}
+	}
+
+	@Override
+	public void step(SimState state) {
+		long steps = state.schedule.getSteps();
+		List<Entry> parked = parkedEntries.remove(steps);
+		if (parked != null) {
+			for (Entry entry : parked) {
+				if (entry.wakeStep == steps) {
+					entry.wakeStep = -1;
+					wokenEntries.add(entry);
+				}
+			}
+		}
+		unparkWokenAgents();
+		removeStoppedAgents();
+
+		// instructions can change jobs and apartments
+		for (int i = 0; i < entries.size(); i++) {
+			if (entries.get(i).isStopped == false) {
+				entries.get(i).agent.processInstructions();
+			}
+		}
+		unparkWokenAgents();
+
+		final int size = entries.size();
+		if (isDone == null || isDone.length < size) {
+			isDone = new boolean[size];
+		}
+		for (int i = 0; i < size; i++) {
+			entries.get(i).agent.setDeferring(true);
+		}
+		if (numOfThreads == 1) {
+			stepLocally(0, size);
+		} else {
+			if (pool == null) {
+				pool = new ForkJoinPool(numOfThreads);
+			}
+			pool.invoke(new LocalStep(0, size));
+		}
+
+		// postponed actions are run in the order of agents and of actions
+		for (int i = 0; i < size; i++) {
+			entries.get(i).agent.setDeferring(false);
+		}
+
+		for (int i = 0; i < size; i++) {
+			if (isDone[i] == false && entries.get(i).isStopped == false) {
+				entries.get(i).agent.stepSerially();
+			}
+		}
+		parkIdleAgents(steps);
+	}
+
+	private void parkIdleAgents(long steps) {
+		int j = 0;
+		for (int i = 0; i < entries.size(); i++) {
+			Entry entry = entries.get(i);
+			long idleSteps = entry.isStopped == false ? entry.agent.getNumberOfIdleSteps() : 0;
+			if (idleSteps > 0) {
+				entry.agent.park();
+				entry.wakeStep = steps + idleSteps + 1;
+				List<Entry> parked = parkedEntries.get(entry.wakeStep);
+				if (parked == null) {
+					parked = new ArrayList<Entry>();
+					parkedEntries.put(entry.wakeStep, parked);
+				}
+				parked.add(entry);
+			} else {
+				entries.set(j++, entry);
+			}
+		}
+		while (entries.size() > j) {
+			entries.remove(entries.size() - 1);
+		}
+	}
+
+	/**
+	 * Puts woken agents back in the order they were added after they catch up
+	 * the steps they were parked.
+	 */
+	private void unparkWokenAgents() {
+		if (wokenEntries.isEmpty() == true) {
+			return;
+		}
+		Collections.sort(wokenEntries, ORDER);
+		List<Entry> merged = new ArrayList<Entry>(entries.size() + wokenEntries.size());
+		int i = 0;
+		for (Entry entry : wokenEntries) {
+			while (i < entries.size() && entries.get(i).order < entry.order) {
+				merged.add(entries.get(i++));
+			}
+			if (entry.isStopped == true) {
+				entriesById.remove(entry.agent.getAgentId());
+				continue;
+			}
+			entry.agent.unpark();
+			merged.add(entry);
+		}
+		while (i < entries.size()) {
+			merged.add(entries.get(i++));
+		}
+		wokenEntries.clear();
+		entries = merged;
+	}
+
+	private void stepLocally(int from, int to) {
+		for (int i = from; i < to; i++) {
+			isDone[i] = entries.get(i).isStopped == false && entries.get(i).agent.stepLocally();
+		}
+	}
+
+	private void removeStoppedAgents() {
+		int j = 0;
+		for (int i = 0; i < entries.size(); i++) {
+			if (entries.get(i).isStopped == false) {
+				entries.set(j++, entries.get(i));
+			} else {
+				entriesById.remove(entries.get(i).agent.getAgentId());
+			}
+		}
+		while (entries.size() > j) {
+			entries.remove(entries.size() - 1);
+		}
+	}
+
+	/**
+	 * An agent with the position it was added at.
+	 */
+	private static class Entry implements java.io.Serializable {
+		private static final long serialVersionUID = 1L;
+		private final Person agent;
+		private final long order;
+		private boolean isStopped;
+		// the step the agent is parked until, or -1 if it is not parked
+		private long wakeStep;
+
+		Entry(Person agent, long order) {
+			this.agent = agent;
+			this.order = order;
+			this.isStopped = false;
+			this.wakeStep = -1;
+		}
+	}
+
+	/**
+	 * Steps agents in [from, to) locally, splitting the range into tasks.
+	 */
+	private class LocalStep extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+
+		LocalStep(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= GRANULARITY) {
+				stepLocally(from, to);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new LocalStep(from, middle), new LocalStep(middle, to));
+		}
+	}
+}
@@ -0,0 +1,257 @@
+package pol.log;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+import org.joda.time.LocalTime;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import pol.AgentGeometry;
+import pol.Person;
+import pol.WorldModel;
+import pol.environment.Apartment;
+import pol.environment.Building;
+import pol.environment.Classroom;
+import pol.environment.Job;
+import pol.environment.Pub;
+import pol.environment.Restaurant;
+import pol.environment.Workplace;
+import pol.utils.Exclusion;
+import sim.util.geo.MasonGeometry;
+
+/**
+ * General description_________________________________________________________
+ * Checks that GsonCsvSerializer writes the same values and column names as
+ * JsonHelper does for the JSON tree of Gson.toJsonTree. The serializer uses
+ * internals of Gson, so this has to pass again whenever Gson is upgraded.
+ *
+ * Objects of the logged classes are created without constructors and filled
+ * with random values, and are written with the combinations of Gson settings
+ * used by the log channels. When both ways fail, they have to fail with the
+ * same exception.
+ */
+public class GsonCsvSerializerTest {
+	private static final int NUM_OF_RANDOM_OBJECTS = 100;
+
+	enum Color {
+		RED, GREEN {
+			@Override
+			public String toString() {
+				return "g";
+			}
+		}
+	}
+
+	static class Base<T> {
+		T generic;
+		protected int baseInt = 3;
+		Object anything;
+	}
+
+	static class Inner {
+		double d = 1.5;
+		String s;
+		Integer boxed;
+		Inner self;
+	}
+
+	static class Sample extends Base<String> {
+		static int st = 1;
+		transient int tr = 2;
+		volatile int vo = 3;
+		byte b = 1;
+		short sh = 2;
+		int i = -3;
+		long l = Long.MIN_VALUE;
+		float f = 0.1f;
+		double d = Double.NaN;
+		boolean bo = true;
+		char c = '\t';
+		Integer nul;
+		Double dd = 2.0;
+		String str = "a\tb";
+		Character ch = 'x';
+		Color color = Color.RED;
+		Color color2 = Color.GREEN;
+		Color color3;
+		Inner inner = new Inner();
+		Inner innerNull;
+		List<Integer> list = Arrays.asList(1, 2);
+		int[] arr = { 4, 5 };
+		Map<String, Integer> map = new TreeMap<String, Integer>();
+		@Skip
+		int skipped = 9;
+		@State
+		int state = 10;
+		@Characteristics
+		int chars = 11;
+		WorldModel model;
+		Object self;
+		LocalDateTime time = new LocalDateTime(2020, 1, 2, 3, 4);
+		Object holder;
+		Number num = 5L;
+	}
+
+	private final Random random = new Random(3);
+
+	@After
+	public void enableSerializer() {
+		System.clearProperty(GsonCsvSerializer.PROPERTY_NAME);
+	}
+
+	@Test
+	public void writesSampleAsJsonTree() {
+		Object[] holders = { null, 1, "x", Color.GREEN, new Inner(), new int[] { 1 },
+				new ArrayList<String>(Arrays.asList("p", "q")), new HashMap<String, String>() };
+		for (Gson gson : createGsons()) {
+			for (Object holder : holders) {
+				Sample sample = new Sample();
+				sample.self = sample;
+				sample.holder = holder;
+				sample.anything = holder;
+				sample.generic = "generic";
+				sample.map.put("k", 1);
+				check(gson, sample);
+			}
+		}
+	}
+
+	@Test
+	public void writesLoggedClassesAsJsonTree() throws Exception {
+		Class<?>[] classes = { Person.class, Apartment.class, Pub.class, Restaurant.class, Workplace.class,
+				Classroom.class, Building.class, Job.class };
+		List<Gson> gsons = createGsons();
+		for (int k = 0; k < NUM_OF_RANDOM_OBJECTS; k++) {
+			for (Class<?> type : classes) {
+				for (Gson gson : gsons) {
+					check(gson, fill(type, 0));
+				}
+			}
+		}
+	}
+
+	private static void check(Gson gson, Object value) {
+		System.setProperty(GsonCsvSerializer.PROPERTY_NAME, "false");
+		String expected = write(gson, value);
+		System.clearProperty(GsonCsvSerializer.PROPERTY_NAME);
+		assertEquals(value.getClass().getName(), expected, write(gson, value));
+	}
+
+	private static String write(Gson gson, Object value) {
+		try {
+			return new GsonCsvSchemaFormatter(gson).format(value) + "\n"
+					+ new GsonCsvValueFormatter(gson).format(value);
+		} catch (RuntimeException e) {
+			return e.getClass().getName();
+		}
+	}
+
+	private static List<Gson> createGsons() {
+		List<Gson> gsons = new ArrayList<Gson>();
+		for (boolean serializeNulls : new boolean[] { true, false }) {
+			for (boolean excludeTransient : new boolean[] { true, false }) {
+				for (Class<?> skipped : new Class<?>[] { State.class, Characteristics.class }) {
+					gsons.add(createGson(serializeNulls, excludeTransient, skipped));
+				}
+			}
+		}
+		return gsons;
+	}
+
+	private static Gson createGson(boolean serializeNulls, boolean excludeTransient, Class<?> skipped) {
+		Exclusion exclusion = new Exclusion(Building.class, WorldModel.class);
+		exclusion.addSkipField(Skip.class);
+		exclusion.addSkipField(skipped);
+		GsonBuilder builder = new GsonBuilder().setExclusionStrategies(exclusion)
+				.serializeSpecialFloatingPointValues();
+		if (serializeNulls == true) {
+			builder.serializeNulls();
+		}
+		if (excludeTransient == true) {
+			builder.excludeFieldsWithModifiers(Modifier.STATIC, Modifier.TRANSIENT, Modifier.VOLATILE);
+		} else {
+			builder.excludeFieldsWithModifiers(Modifier.STATIC, Modifier.VOLATILE);
+		}
+		return builder.registerTypeAdapter(AgentGeometry.class, new MasonGeometryTypeAdapter())
+				.registerTypeAdapter(MasonGeometry.class, new MasonGeometryTypeAdapter())
+				.registerTypeAdapter(Apartment.class, new ReferenceTypeAdapter())
+				.registerTypeAdapter(Classroom.class, new ReferenceTypeAdapter())
+				.registerTypeAdapter(Pub.class, new ReferenceTypeAdapter())
+				.registerTypeAdapter(Restaurant.class, new ReferenceTypeAdapter())
+				.registerTypeAdapter(Workplace.class, new ReferenceTypeAdapter())
+				.registerTypeAdapter(DateTime.class, new DateTimeTypeAdapter())
+				.registerTypeAdapter(LocalTime.class, new LocalTimeTypeAdapter())
+				.registerTypeAdapter(LocalDate.class, new LocalDateTypeAdapter())
+				.registerTypeAdapter(LocalDateTime.class, new LocalDateTimeTypeAdapter()).create();
+	}
+
+	/**
+	 * @return an object of the given class created without a constructor, with
+	 *         random values in its fields and in the fields of objects it
+	 *         refers to up to two levels down
+	 */
+	private Object fill(Class<?> type, int depth) throws Exception {
+		Object object = getUnsafe().allocateInstance(type);
+		for (Class<?> c = type; c != Object.class && c != null; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers())) {
+					continue;
+				}
+				try {
+					field.setAccessible(true);
+				} catch (RuntimeException e) {
+					// fields of JDK classes in modules that are not open
+					continue;
+				}
+				Class<?> fieldType = field.getType();
+				if (fieldType == int.class) {
+					field.setInt(object, random.nextInt());
+				} else if (fieldType == long.class) {
+					field.setLong(object, random.nextLong());
+				} else if (fieldType == double.class) {
+					field.setDouble(object, random.nextGaussian() * 1e3);
+				} else if (fieldType == boolean.class) {
+					field.setBoolean(object, random.nextBoolean());
+				} else if (fieldType == float.class) {
+					field.setFloat(object, random.nextFloat());
+				} else if (fieldType == String.class && random.nextBoolean()) {
+					field.set(object, "s" + random.nextInt(100));
+				} else if (fieldType.isEnum() && fieldType.getEnumConstants().length > 0 && random.nextBoolean()) {
+					Object[] constants = fieldType.getEnumConstants();
+					field.set(object, constants[random.nextInt(constants.length)]);
+				} else if (fieldType == Integer.class && random.nextBoolean()) {
+					field.set(object, random.nextInt());
+				} else if (fieldType == LocalDateTime.class && random.nextBoolean()) {
+					field.set(object, new LocalDateTime(random.nextInt(1000000) * 1000L));
+				} else if (depth < 2 && fieldType.getName().startsWith("pol") && fieldType.isInterface() == false
+						&& Modifier.isAbstract(fieldType.getModifiers()) == false && fieldType.isEnum() == false
+						&& random.nextBoolean()) {
+					field.set(object, fill(fieldType, depth + 1));
+				}
+			}
+		}
+		return object;
+	}
+
+	private static sun.misc.Unsafe getUnsafe() throws Exception {
+		Field field = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+		field.setAccessible(true);
+		return (sun.misc.Unsafe) field.get(null);
+	}
+}
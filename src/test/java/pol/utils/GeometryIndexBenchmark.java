@@ -0,0 +1,103 @@
+package pol.utils;
+
+import java.io.File;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+import ec.util.MersenneTwisterFast;
+import sim.field.geo.GeomVectorField;
+import sim.io.geo.ShapeFileImporter;
+import sim.util.geo.MasonGeometry;
+
+/**
+ * General description_________________________________________________________
+ * Compares the nearest neighbor query of GeometryIndex with the range query
+ * probing of GeoUtils.findNearestGeometry on a walkway layer. The layer is
+ * read from the shapefile given as the first argument (e.g.
+ * src/main/resources/campus_data/walkways.shp) or random line segments are
+ * generated if no argument is given. The benchmark exits with status 1 if the
+ * two queries return geometries at different distances for any point. It is
+ * kept in the test sources so that it is not packaged with the model.
+ *
+ * Usage: GeometryIndexBenchmark [shapefile] [number of queries]
+ */
+public class GeometryIndexBenchmark {
+	private static final double START_DISTANCE = 60.0;
+
+	public static void main(String[] args) throws Exception {
+		GeomVectorField field = new GeomVectorField();
+		if (args.length > 0) {
+			ShapeFileImporter.read(new File(args[0]).toURI().toURL(), field);
+		} else {
+			generateSegments(field, 50000, 10000);
+		}
+		int numOfQueries = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		Envelope mbr = field.getMBR();
+		MersenneTwisterFast random = new MersenneTwisterFast(1);
+		GeometryFactory factory = new GeometryFactory();
+		MasonGeometry[] queries = new MasonGeometry[numOfQueries];
+		for (int i = 0; i < numOfQueries; i++) {
+			double x = mbr.getMinX() + random.nextDouble() * mbr.getWidth();
+			double y = mbr.getMinY() + random.nextDouble() * mbr.getHeight();
+			queries[i] = new MasonGeometry(factory.createPoint(new Coordinate(x, y)));
+		}
+
+		long time = System.nanoTime();
+		GeometryIndex<MasonGeometry> index = GeometryIndex.create(field);
+		long buildTime = System.nanoTime() - time;
+
+		// warm up
+		for (int i = 0; i < Math.min(1000, numOfQueries); i++) {
+			GeoUtils.findNearestGeometry(queries[i], field, START_DISTANCE);
+			GeoUtils.findNearestGeometry(queries[i], index);
+		}
+
+		MasonGeometry[] probed = new MasonGeometry[numOfQueries];
+		time = System.nanoTime();
+		for (int i = 0; i < numOfQueries; i++) {
+			probed[i] = GeoUtils.findNearestGeometry(queries[i], field, START_DISTANCE);
+		}
+		long probeTime = System.nanoTime() - time;
+
+		MasonGeometry[] indexed = new MasonGeometry[numOfQueries];
+		time = System.nanoTime();
+		for (int i = 0; i < numOfQueries; i++) {
+			indexed[i] = GeoUtils.findNearestGeometry(queries[i], index);
+		}
+		long indexTime = System.nanoTime() - time;
+
+		// the nearest geometries can differ only when they are equally far
+		int mismatches = 0;
+		for (int i = 0; i < numOfQueries; i++) {
+			double a = probed[i].geometry.distance(queries[i].geometry);
+			double b = indexed[i].geometry.distance(queries[i].geometry);
+			if (a != b) {
+				mismatches++;
+			}
+		}
+
+		System.out.println("geometries: " + field.getGeometries().size() + ", queries: " + numOfQueries);
+		System.out.println("index build: " + buildTime / 1e6 + " ms");
+		System.out.println("probe loop: " + probeTime / 1e6 + " ms (" + probeTime / numOfQueries + " ns/query)");
+		System.out.println("best-first: " + indexTime / 1e6 + " ms (" + indexTime / numOfQueries + " ns/query)");
+		System.out.println("distance mismatches: " + mismatches);
+		if (mismatches > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static void generateSegments(GeomVectorField field, int numOfSegments, double extent) {
+		MersenneTwisterFast random = new MersenneTwisterFast(0);
+		GeometryFactory factory = new GeometryFactory();
+		for (int i = 0; i < numOfSegments; i++) {
+			double x = random.nextDouble() * extent;
+			double y = random.nextDouble() * extent;
+			double dx = (random.nextDouble() - 0.5) * 100;
+			double dy = (random.nextDouble() - 0.5) * 100;
+			Coordinate[] line = new Coordinate[] { new Coordinate(x, y), new Coordinate(x + dx, y + dy) };
+			field.addGeometry(new MasonGeometry(factory.createLineString(line)));
+		}
+	}
+}